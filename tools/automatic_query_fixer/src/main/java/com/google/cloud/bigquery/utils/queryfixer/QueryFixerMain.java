@@ -1,19 +1,90 @@
 package com.google.cloud.bigquery.utils.queryfixer;
 
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixOption;
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixResult;
+import com.google.cloud.bigquery.utils.queryfixer.errors.BigQuerySqlError;
+import com.google.cloud.bigquery.utils.queryfixer.errors.SqlErrorFactory;
+import com.google.cloud.bigquery.utils.queryfixer.fixer.FixerFactory;
+import com.google.cloud.bigquery.utils.queryfixer.fixer.IFixer;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.CandidateScorer;
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+import com.google.cloud.bigquery.utils.queryfixer.tokenizer.CalciteTokenizer;
+import com.google.cloud.bigquery.utils.queryfixer.tokenizer.QueryTokenProcessor;
 import com.google.common.flogger.FluentLogger;
 
+/**
+ * The command line of the query fixer: {@code QueryFixerMain <project ID> <query>}. It dry runs the
+ * query in the project and prints the options to fix its error.
+ *
+ * <p>The fixer starts in the warm-start mode of {@link WarmStarter}: the parser and the BigQuery
+ * client are prepared in the background while the arguments are processed, and the time to the
+ * first result is logged once the options are printed.
+ */
 public class QueryFixerMain {
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   public static void main(String[] args) {
 
-    if (args.length == 0) {
-      // TODO: provide a more actionable info. This will be done once we finalize the input parameters.
-      logger.atInfo().log("not enough arguments");
+    if (args.length < 2) {
+      logger.atInfo().log("Usage: QueryFixerMain <project ID> <query>");
       return;
     }
 
-    // TODO: this should act as a command line, which will be developed after the fixer component is ready.
+    WarmStarter warmStarter = new WarmStarter().start(args[0]);
+    String query = args[1];
+
+    FixResult result = fix(query, warmStarter);
+    print(result);
+    warmStarter.recordFirstResult();
+  }
+
+  private static FixResult fix(String query, WarmStarter warmStarter) {
+    BigQueryService bigQueryService = warmStarter.getBigQueryService();
+    BigQueryException exception = bigQueryService.catchExceptionFromDryRun(query);
+    if (exception == null) {
+      return FixResult.noError();
+    }
+
+    BigQuerySqlError error = new SqlErrorFactory().getError(exception);
+    if (error == null) {
+      return FixResult.builder()
+          .status(FixResult.Status.FAILURE)
+          .error(exception.getMessage())
+          .build();
+    }
+
+    BigQueryParserFactory parserFactory = warmStarter.getParserFactory();
+    FixerFactory fixerFactory =
+        new FixerFactory(
+            new QueryTokenProcessor(new CalciteTokenizer(parserFactory)),
+            bigQueryService,
+            new TableIdentifierLocator(parserFactory),
+            /* tableNameIndex= */ null,
+            CandidateScorer.defaultScorer());
+    IFixer fixer = fixerFactory.getFixer(query, error);
+    if (fixer == null) {
+      return FixResult.failure(error);
+    }
+    return fixer.fix();
+  }
+
+  private static void print(FixResult result) {
+    System.out.println("Status: " + result.getStatus());
+    if (result.getError() != null) {
+      System.out.println("Error: " + result.getError());
+    }
+    if (result.getApproach() != null) {
+      System.out.println("Approach: " + result.getApproach());
+    }
+    if (result.getOptions() == null) {
+      return;
+    }
+    for (int i = 0; i < result.getOptions().size(); i++) {
+      FixOption option = result.getOptions().get(i);
+      System.out.printf(
+          "Option %d: %s%n%s%n", i + 1, option.getDescription(), option.getFixedQuery());
+    }
   }
 }
@@ -0,0 +1,198 @@
+package com.google.cloud.bigquery.utils.queryfixer;
+
+import com.google.cloud.bigquery.utils.queryfixer.entity.Position;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+import org.apache.calcite.sql.SqlCall;
+import org.apache.calcite.sql.SqlDelete;
+import org.apache.calcite.sql.SqlIdentifier;
+import org.apache.calcite.sql.SqlInsert;
+import org.apache.calcite.sql.SqlJoin;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.SqlMerge;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.SqlSelect;
+import org.apache.calcite.sql.SqlUpdate;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParserPos;
+import org.apache.calcite.sql.util.SqlBasicVisitor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A class used to locate the table references of a query through its parse tree. Unlike searching
+ * the table name in the query string, it only finds the identifiers used as tables (in FROM and
+ * JOIN clauses, including sub-queries, and the target tables of INSERT, UPDATE, DELETE and MERGE),
+ * so string literals, comments and columns sharing the same name are never matched. All the
+ * occurrences are found in a single parse.
+ */
+@AllArgsConstructor
+public class TableIdentifierLocator {
+
+  private final BigQueryParserFactory parserFactory;
+
+  /**
+   * Find all the table references of a query whose full name equals the given table name. The
+   * table name should be in the form of standardSQL, i.e. project.dataset.table or dataset.table.
+   * Both `project.dataset.table` and `project`.dataset.table are matched by project.dataset.table.
+   *
+   * @param query the query to search
+   * @param tableName the table name to find
+   * @return the spans of the table references in the order of their occurrences
+   * @throws SqlParseException if the query can not be parsed.
+   */
+  public List<TableSpan> locate(@NonNull String query, @NonNull String tableName)
+      throws SqlParseException {
+    SqlNode root = parserFactory.getParser(query).parseStmt();
+    QueryPositionConverter converter = new QueryPositionConverter(query);
+
+    TableCollector collector = new TableCollector();
+    root.accept(collector);
+
+    List<TableSpan> spans = new ArrayList<>();
+    for (SqlIdentifier identifier : collector.tables) {
+      if (!String.join(".", identifier.names).equals(tableName)) {
+        continue;
+      }
+      SqlParserPos pos = identifier.getParserPosition();
+      int startIndex = converter.posToIndex(pos.getLineNum(), pos.getColumnNum());
+      int endIndex = converter.posToIndex(pos.getEndLineNum(), pos.getEndColumnNum());
+      if (startIndex == -1 || endIndex == -1) {
+        continue;
+      }
+      spans.add(
+          new TableSpan(
+              new Position(pos.getLineNum(), pos.getColumnNum()),
+              startIndex,
+              // The end column of the parser position is inclusive.
+              endIndex + 1,
+              query.charAt(startIndex) == '`'));
+    }
+    spans.sort(Comparator.comparingInt(TableSpan::getStartIndex));
+
+    // The WHEN clauses of a MERGE share its target table, so a reference may be collected twice.
+    List<TableSpan> distinctSpans = new ArrayList<>();
+    for (TableSpan span : spans) {
+      if (distinctSpans.isEmpty()
+          || distinctSpans.get(distinctSpans.size() - 1).getEndIndex() <= span.getStartIndex()) {
+        distinctSpans.add(span);
+      }
+    }
+    return distinctSpans;
+  }
+
+  /**
+   * Replace all the given table references of a query with a new table in one pass. A quoted
+   * reference is replaced by a quoted table.
+   *
+   * @param query the query to modify
+   * @param spans spans of the table references, sorted by their start indices
+   * @param newTable the new table name
+   * @return the modified query
+   */
+  public static String replaceAll(String query, List<TableSpan> spans, String newTable) {
+    StringBuilder builder = new StringBuilder(query.length() + spans.size() * newTable.length());
+    int copiedIndex = 0;
+    for (TableSpan span : spans) {
+      builder.append(query, copiedIndex, span.startIndex);
+      builder.append(span.quoted ? "`" + newTable + "`" : newTable);
+      copiedIndex = span.endIndex;
+    }
+    builder.append(query, copiedIndex, query.length());
+    return builder.toString();
+  }
+
+  /** The location of a table reference in a query. */
+  @Value
+  public static class TableSpan {
+    /** The starting position of the reference. */
+    Position position;
+    /** The inclusive start index of the reference in the query. */
+    int startIndex;
+    /** The exclusive end index of the reference in the query. */
+    int endIndex;
+    /** Whether the reference starts with a back tick. */
+    boolean quoted;
+  }
+
+  /** A visitor collecting the identifiers that appear as tables in the parse tree. */
+  private static class TableCollector extends SqlBasicVisitor<Void> {
+
+    private final List<SqlIdentifier> tables = new ArrayList<>();
+
+    @Override
+    public Void visit(SqlCall call) {
+      if (call instanceof SqlInsert
+          || call instanceof SqlUpdate
+          || call instanceof SqlDelete
+          || call instanceof SqlMerge) {
+        visitDml(call);
+        return null;
+      }
+      if (!(call instanceof SqlSelect)) {
+        return super.visit(call);
+      }
+
+      SqlSelect select = (SqlSelect) call;
+      for (SqlNode operand : select.getOperandList()) {
+        if (operand == null) {
+          continue;
+        }
+        if (operand == select.getFrom()) {
+          visitFromItem(operand);
+        } else {
+          operand.accept(this);
+        }
+      }
+      return null;
+    }
+
+    /** Visit a DML statement, whose target table (and the source table of a MERGE) are tables. */
+    private void visitDml(SqlCall call) {
+      SqlNode targetTable;
+      SqlNode sourceTable = null;
+      if (call instanceof SqlInsert) {
+        targetTable = ((SqlInsert) call).getTargetTable();
+      } else if (call instanceof SqlUpdate) {
+        targetTable = ((SqlUpdate) call).getTargetTable();
+      } else if (call instanceof SqlDelete) {
+        targetTable = ((SqlDelete) call).getTargetTable();
+      } else {
+        targetTable = ((SqlMerge) call).getTargetTable();
+        sourceTable = ((SqlMerge) call).getSourceTableRef();
+      }
+
+      for (SqlNode operand : call.getOperandList()) {
+        if (operand == null) {
+          continue;
+        }
+        if (operand == targetTable || operand == sourceTable) {
+          visitFromItem(operand);
+        } else {
+          operand.accept(this);
+        }
+      }
+    }
+
+    private void visitFromItem(SqlNode node) {
+      if (node instanceof SqlIdentifier) {
+        tables.add((SqlIdentifier) node);
+      } else if (node instanceof SqlJoin) {
+        SqlJoin join = (SqlJoin) node;
+        visitFromItem(join.getLeft());
+        visitFromItem(join.getRight());
+        if (join.getCondition() != null) {
+          join.getCondition().accept(this);
+        }
+      } else if (node.getKind() == SqlKind.AS) {
+        SqlCall alias = (SqlCall) node;
+        visitFromItem(alias.operand(0));
+      } else {
+        node.accept(this);
+      }
+    }
+  }
+}
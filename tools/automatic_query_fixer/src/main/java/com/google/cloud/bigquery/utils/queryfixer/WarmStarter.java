@@ -0,0 +1,175 @@
+package com.google.cloud.bigquery.utils.queryfixer;
+
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+import com.google.cloud.bigquery.utils.queryfixer.tokenizer.CalciteTokenizer;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * A startup mode that moves the expensive initialization of the query fixer off the request path.
+ * Loading the Babel parser classes and creating the BigQuery client both take a noticeable amount
+ * of time, so they are started on background threads as soon as the fixer launches. While they are
+ * being prepared, the caller can read the first request's input. The prepared components are
+ * retrieved through {@link #getParserFactory()} and {@link #getBigQueryService()}, which block only
+ * if the warm-up has not finished yet.
+ *
+ * <p>The parser warm-up also tokenizes a throwaway query, so the lexer has been class-loaded and
+ * exercised before the first real query arrives.
+ */
+public class WarmStarter {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** A small query covering the common token kinds, used to warm up the lexer. */
+  private static final String WARM_UP_QUERY =
+      "SELECT a, COUNT(*) AS c FROM `project.dataset.table` WHERE b > 'x' GROUP BY a LIMIT 10";
+
+  private final ExecutorService executor;
+  private final long startNanos;
+
+  private CompletableFuture<BigQueryParserFactory> parserFactoryFuture;
+  private CompletableFuture<BigQueryService> bigQueryServiceFuture;
+
+  private volatile long parserReadyNanos = -1;
+  private volatile long serviceReadyNanos = -1;
+  private Metrics metrics;
+
+  public WarmStarter() {
+    this.executor =
+        Executors.newFixedThreadPool(
+            /* nThreads= */ 2,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("warm-start-%d").build());
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Start warming up the parser and creating the BigQuery client for a project in the background.
+   *
+   * @param projectId project ID used to create the BigQuery client
+   * @return this warm starter
+   */
+  public WarmStarter start(@NonNull String projectId) {
+    return start(() -> new BigQueryService(projectId));
+  }
+
+  /**
+   * Start warming up the parser and creating the BigQuery service in the background. The service is
+   * created by the given supplier, so customized services can also be initialized ahead of time.
+   *
+   * @param serviceSupplier supplier creating the BigQuery service
+   * @return this warm starter
+   */
+  public WarmStarter start(@NonNull Supplier<BigQueryService> serviceSupplier) {
+    if (parserFactoryFuture != null) {
+      throw new IllegalStateException("The warm starter has already been started.");
+    }
+
+    parserFactoryFuture =
+        CompletableFuture.supplyAsync(
+            () -> {
+              BigQueryParserFactory factory = new BigQueryParserFactory();
+              // The tokens are dropped on purpose; only the side effect of loading and running the
+              // lexer matters here.
+              new CalciteTokenizer(factory).tokenize(WARM_UP_QUERY);
+              parserReadyNanos = System.nanoTime();
+              return factory;
+            },
+            executor);
+
+    bigQueryServiceFuture =
+        CompletableFuture.supplyAsync(
+            () -> {
+              BigQueryService service = serviceSupplier.get();
+              serviceReadyNanos = System.nanoTime();
+              return service;
+            },
+            executor);
+
+    // Both tasks have been submitted, so the threads can be released once they finish.
+    executor.shutdown();
+    return this;
+  }
+
+  /**
+   * Get the warmed-up parser factory. This call blocks until the warm-up is finished.
+   *
+   * @return the parser factory
+   */
+  public BigQueryParserFactory getParserFactory() {
+    return await(parserFactoryFuture);
+  }
+
+  /**
+   * Get the BigQuery service created in the background. This call blocks until the service is
+   * created. If the creation failed, the original exception is rethrown.
+   *
+   * @return the BigQuery service
+   */
+  public BigQueryService getBigQueryService() {
+    return await(bigQueryServiceFuture);
+  }
+
+  /**
+   * Record that the first result has been produced, and log the startup metrics. Only the first
+   * call takes effect; later calls return the metrics recorded before.
+   *
+   * @return the startup metrics
+   */
+  public synchronized Metrics recordFirstResult() {
+    if (metrics == null) {
+      metrics =
+          new Metrics(
+              toMillis(parserReadyNanos), toMillis(serviceReadyNanos), toMillis(System.nanoTime()));
+      logger.atInfo().log(
+          "Time to first result: %d ms "
+              + "(parser ready after %d ms, BigQuery client ready after %d ms)",
+          metrics.getTimeToFirstResultMillis(),
+          metrics.getParserReadyMillis(),
+          metrics.getServiceReadyMillis());
+    }
+    return metrics;
+  }
+
+  private long toMillis(long nanos) {
+    if (nanos < 0) {
+      return -1;
+    }
+    return (nanos - startNanos) / 1_000_000;
+  }
+
+  private <T> T await(CompletableFuture<T> future) {
+    if (future == null) {
+      throw new IllegalStateException("The warm starter has not been started.");
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the warm-up.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("The warm-up failed.", e.getCause());
+    }
+  }
+
+  /**
+   * Startup metrics measured from the creation of the warm starter. A value of -1 means the
+   * component was not ready when the metrics were recorded.
+   */
+  @Value
+  public static class Metrics {
+    long parserReadyMillis;
+    long serviceReadyMillis;
+    long timeToFirstResultMillis;
+  }
+}
@@ -15,6 +15,8 @@ public class SqlErrorFactory {
 
   public static final String TableNotFoundRegex = "^Not found: Table (.*?) was not found";
 
+  public static final String TableSuggestionRegex = "; Did you mean (.*?)\\?";
+
   public static final String UnrecognizedNameRegex =
       "^Unrecognized name: (.*?)(; Did you mean (.*?)\\?)? at (.*?)$";
 
@@ -50,8 +52,9 @@ public class SqlErrorFactory {
    * Try to convert the {@link BigQueryException} to {@link TableNotFoundError}. If it fails, a null
    * point will be returned.
    *
-   * <p>The regex to extract information is `^Not found: Table (.*?) was not found`. Please see
-   * {@link TableNotFoundError} for details on what information the regex extracts.
+   * <p>The regex to extract information is `^Not found: Table (.*?) was not found`, and the
+   * optional suggestion is extracted by `; Did you mean (.*?)\?`. Please see {@link
+   * TableNotFoundError} for details on what information the regexes extract.
    *
    * @param exception BigQueryException
    * @return TableNotFoundError and null
@@ -67,7 +70,15 @@ public class SqlErrorFactory {
     // "^Not found: Table (0) was not found"
     // There is no need to check size, because the size of extracted substrings has been determined by the pattern.
     String incorrectTable = contents.get(0);
-    return new TableNotFoundError(incorrectTable, /*errPos= */ null, exception);
+
+    // The suggestion is optional, so it is extracted separately: "; Did you mean (0)\\?"
+    List<String> suggestion =
+        PatternMatcher.extract(exception.getError().getMessage(), TableSuggestionRegex);
+    return new TableNotFoundError(
+        incorrectTable,
+        /*errPos= */ null,
+        suggestion == null ? null : suggestion.get(0),
+        exception);
   }
 
   /**
@@ -6,17 +6,37 @@ import com.google.cloud.bigquery.utils.queryfixer.entity.Position;
 import lombok.Getter;
 
 /**
- * A class to represent the "Table Not Found" errors from BigQuery. The errors are presented in this
- * form: "Not found: Table [TableName] was not found", where [TableName] is the incorrect table
- * name.
+ * A class to represent the "Table Not Found" errors from BigQuery. The errors look like one of the
+ * two forms:
+ *
+ * <ol>
+ *   <li>Not found: Table [TableName] was not found in location [Location]
+ *   <li>Not found: Table [TableName] was not found in location [Location]; Did you mean
+ *       [suggestion]?
+ * </ol>
+ *
+ * where [TableName] is the incorrect table name, and [suggestion] is a table that BigQuery
+ * suggests instead.
  */
 @Getter
 public class TableNotFoundError extends BigQuerySemanticError {
 
   private final String tableName;
+  private final String suggestion;
 
-  public TableNotFoundError(String tableName, Position errorPosition, BigQueryException errorSource) {
+  public TableNotFoundError(
+      String tableName, Position errorPosition, String suggestion, BigQueryException errorSource) {
     super(errorPosition, errorSource);
     this.tableName = tableName;
+    this.suggestion = suggestion;
+  }
+
+  public TableNotFoundError(
+      String tableName, Position errorPosition, BigQueryException errorSource) {
+    this(tableName, errorPosition, /* suggestion= */ null, errorSource);
+  }
+
+  public boolean hasSuggestion() {
+    return suggestion != null;
   }
 }
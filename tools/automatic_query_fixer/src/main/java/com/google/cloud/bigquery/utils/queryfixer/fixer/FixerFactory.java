@@ -1,7 +1,12 @@
 package com.google.cloud.bigquery.utils.queryfixer.fixer;
 
+import com.google.cloud.bigquery.utils.queryfixer.BigQueryParserFactory;
+import com.google.cloud.bigquery.utils.queryfixer.TableIdentifierLocator;
 import com.google.cloud.bigquery.utils.queryfixer.errors.BigQuerySqlError;
 import com.google.cloud.bigquery.utils.queryfixer.errors.TableNotFoundError;
+import com.google.cloud.bigquery.utils.queryfixer.index.TableNameIndex;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.CandidateScorer;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.TableUsageHistory;
 import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
 import com.google.cloud.bigquery.utils.queryfixer.tokenizer.QueryTokenProcessor;
 import lombok.AllArgsConstructor;
@@ -12,6 +17,41 @@ public class FixerFactory {
 
   private final QueryTokenProcessor queryTokenProcessor;
   private final BigQueryService bigQueryService;
+  private final TableIdentifierLocator tableLocator;
+
+  /**
+   * An optional index of all the tables visible to the service account. If it is null, the fixers
+   * only search similar tables in the dataset of the incorrect table.
+   */
+  private final TableNameIndex tableNameIndex;
+
+  /** The scorer ranking the candidates of fix options. */
+  private final CandidateScorer candidateScorer;
+
+  public FixerFactory(QueryTokenProcessor queryTokenProcessor, BigQueryService bigQueryService) {
+    this(
+        queryTokenProcessor,
+        bigQueryService,
+        new TableIdentifierLocator(new BigQueryParserFactory()),
+        /* tableNameIndex= */ null,
+        CandidateScorer.defaultScorer());
+  }
+
+  /**
+   * Create a factory whose fixers rank the recently used identifiers higher. The usage history is
+   * updated by the caller, e.g. when a user chooses a fix option.
+   */
+  public FixerFactory(
+      QueryTokenProcessor queryTokenProcessor,
+      BigQueryService bigQueryService,
+      TableUsageHistory usageHistory) {
+    this(
+        queryTokenProcessor,
+        bigQueryService,
+        new TableIdentifierLocator(new BigQueryParserFactory()),
+        /* tableNameIndex= */ null,
+        CandidateScorer.builder().usageHistory(usageHistory).build());
+  }
 
   /**
    * Get the corresponding fixer based on the type of {@link BigQuerySqlError}. If an error does not
@@ -24,7 +64,13 @@ public class FixerFactory {
   public IFixer getFixer(String query, BigQuerySqlError error) {
 
     if (error instanceof TableNotFoundError) {
-      return new TableNotFoundFixer(query, (TableNotFoundError) error, bigQueryService);
+      return new TableNotFoundFixer(
+          query,
+          (TableNotFoundError) error,
+          bigQueryService,
+          tableLocator,
+          tableNameIndex,
+          candidateScorer);
     }
 
     return null;
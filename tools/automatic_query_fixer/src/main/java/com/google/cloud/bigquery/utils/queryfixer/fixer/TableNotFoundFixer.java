@@ -1,76 +1,127 @@
 package com.google.cloud.bigquery.utils.queryfixer.fixer;
 
+import com.google.cloud.bigquery.BigQueryException;
 import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.utils.queryfixer.BigQueryParserFactory;
 import com.google.cloud.bigquery.utils.queryfixer.QueryPositionConverter;
+import com.google.cloud.bigquery.utils.queryfixer.TableIdentifierLocator;
 import com.google.cloud.bigquery.utils.queryfixer.entity.FixOption;
 import com.google.cloud.bigquery.utils.queryfixer.entity.FixResult;
 import com.google.cloud.bigquery.utils.queryfixer.entity.Position;
 import com.google.cloud.bigquery.utils.queryfixer.errors.TableNotFoundError;
+import com.google.cloud.bigquery.utils.queryfixer.index.TableNameIndex;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.CandidateScorer;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.FixCandidate;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.TopKRanker;
 import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
 import com.google.cloud.bigquery.utils.queryfixer.util.PatternMatcher;
 import com.google.cloud.bigquery.utils.queryfixer.util.StringUtil;
 
+import org.apache.calcite.sql.parser.SqlParseException;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
  * The fixer class responsible for "table not found" error. It fixes the error by (1) find the
- * similar table under the same project and dataset as the incorrect one, and (2) replace the
- * incorrect one with the most similar table.
+ * similar tables under the same project and dataset as the incorrect one, (2) rank them with a
+ * {@link CandidateScorer} and keep the best few, and (3) replace the incorrect one with each of
+ * them. Every reference to the incorrect table is located through the parse tree of the query and
+ * replaced in the same fix.
  *
- * <p>If no similar tables are found in the dataset, the fixer will directly return the error
- * without providing any fix options.
+ * <p>If a {@link TableNameIndex} is provided, the similar tables in the other datasets of the
+ * project are ranked as well, which helps when the dataset itself is incorrect. If the error
+ * message suggests a table ("Did you mean ...?"), that table is ranked higher among the similar
+ * ones. If no similar tables are found, the fixer will directly return the error without providing
+ * any fix options.
  */
 public class TableNotFoundFixer implements IFixer {
 
   /** This regex is able to parse both project:dataset.table and dataset.table. */
   private static final String tableIdRegex = "^((.*?):)?(.*?)\\.(.*?)$";
 
+  /** The maximum number of candidates fetched from the table index. */
+  private static final int MAX_INDEX_CANDIDATES = 10;
+
+  /** The maximum number of fix options to return. */
+  private static final int MAX_FIX_OPTIONS = 5;
+
   private final String query;
   private final TableNotFoundError err;
   private final BigQueryService bigQueryService;
+  private final TableIdentifierLocator tableLocator;
+  private final TableNameIndex tableNameIndex;
+  private final CandidateScorer candidateScorer;
   private final QueryPositionConverter queryPositionConverter;
 
   public TableNotFoundFixer(String query, TableNotFoundError err, BigQueryService bigQueryService) {
+    this(
+        query,
+        err,
+        bigQueryService,
+        new TableIdentifierLocator(new BigQueryParserFactory()),
+        /* tableNameIndex= */ null,
+        CandidateScorer.defaultScorer());
+  }
+
+  /**
+   * Create a fixer with a customized locator, an optional table index and a scorer. If the index is
+   * provided, similar tables in other datasets of the same project will also be suggested. The
+   * scorer ranks the similar tables to decide the fix options.
+   */
+  public TableNotFoundFixer(
+      String query,
+      TableNotFoundError err,
+      BigQueryService bigQueryService,
+      TableIdentifierLocator tableLocator,
+      TableNameIndex tableNameIndex,
+      CandidateScorer candidateScorer) {
     this.query = query;
     this.err = err;
     this.bigQueryService = bigQueryService;
+    this.tableLocator = tableLocator;
+    this.tableNameIndex = tableNameIndex;
+    this.candidateScorer = candidateScorer;
     this.queryPositionConverter = new QueryPositionConverter(query);
   }
 
   @Override
   public FixResult fix() {
     TableId fullTableId = constructTableId(err.getTableName());
-    List<String> tableNames =
-        bigQueryService.listTableNames(fullTableId.getProject(), fullTableId.getDataset());
-
-    StringUtil.SimilarStrings similarTables =
-        StringUtil.findSimilarWords(tableNames, fullTableId.getTable());
 
     // This is an arbitrary standard. It requires the candidate table should share at least 50%
     // similarity as the incorrect table typo.
     // TODO: this could be user configurable in future.
     int editDistanceThreshold = (fullTableId.getTable().length() + 1) / 2;
 
-    if (similarTables.getStrings().isEmpty()
-        || similarTables.getDistance() > editDistanceThreshold) {
+    // Candidates are streamed into a bounded ranker, so only the best few are kept in memory.
+    TopKRanker<String> ranker = new TopKRanker<>(MAX_FIX_OPTIONS, candidateScorer);
+    String suggestedTable = getSuggestedFullTableName();
+    offerTablesInDataset(fullTableId, editDistanceThreshold, suggestedTable, ranker);
+    if (tableNameIndex != null) {
+      offerTablesInProject(fullTableId, editDistanceThreshold, suggestedTable, ranker);
+    }
+
+    if (ranker.isEmpty()) {
       return FixResult.failure(err);
     }
+    List<String> fullTableNames = ranker.getTopK();
 
-    // This method only finds the first occurrence of the incorrect table. It is possible that this
-    // table exists in multiple positions of this query. What is worse, it is possible that the
-    // table name is also part of a literal, then this auto fixing may have problem. The ultimate
-    // solution for this issue is to use Parser to find the correct position of this table.
-    int tableStartIndex = findTheIndexOfIncorrectTable();
+    // The table may be referenced in multiple positions of this query, so all of them are
+    // replaced at once. Then the fixed query only needs one more dry run to be verified.
+    List<TableIdentifierLocator.TableSpan> tableSpans = locateIncorrectTable();
+    if (tableSpans.isEmpty()) {
+      // Without a reference to replace, every option would be the original query.
+      return FixResult.failure(err);
+    }
 
     List<FixOption> fixOptions =
-        similarTables.getStrings().stream()
+        fullTableNames.stream()
             .map(
-                table -> {
-                  String fullTableName =
-                      constructFullTableName(
-                          fullTableId.getProject(), fullTableId.getDataset(), table);
-                  String fixedQuery = replaceTable(fullTableName, tableStartIndex);
+                fullTableName -> {
+                  String fixedQuery =
+                      TableIdentifierLocator.replaceAll(query, tableSpans, fullTableName);
                   return FixOption.of(fullTableName, fixedQuery);
                 })
             .collect(Collectors.toList());
@@ -78,6 +129,94 @@ public class TableNotFoundFixer implements IFixer {
     return FixResult.success(/*approach= */ "Replace the table name.", fixOptions, err);
   }
 
+  /**
+   * Offer the tables similar to the incorrect one in its own dataset to the ranker. If the dataset
+   * does not exist, no tables are offered.
+   */
+  private void offerTablesInDataset(
+      TableId fullTableId,
+      int editDistanceThreshold,
+      String suggestedTable,
+      TopKRanker<String> ranker) {
+    List<String> tableNames;
+    try {
+      tableNames =
+          bigQueryService.listTableNames(fullTableId.getProject(), fullTableId.getDataset());
+    } catch (BigQueryException e) {
+      // The dataset itself may be incorrect, so there is no table to list.
+      return;
+    }
+
+    for (String table : tableNames) {
+      int distance =
+          StringUtil.boundedEditDistance(table, fullTableId.getTable(), editDistanceThreshold);
+      if (distance > editDistanceThreshold) {
+        continue;
+      }
+      String fullTableName =
+          constructFullTableName(fullTableId.getProject(), fullTableId.getDataset(), table);
+      ranker.offer(
+          fullTableName,
+          FixCandidate.builder()
+              .identifier(fullTableName)
+              .editDistance(distance)
+              .locality(FixCandidate.Locality.SAME_DATASET)
+              .suggestedByBigQuery(fullTableName.equals(suggestedTable))
+              .build());
+    }
+  }
+
+  /**
+   * Offer the tables similar to the incorrect one in the other datasets to the ranker, through the
+   * {@link TableNameIndex}. The tables of the incorrect table's own dataset have been listed by
+   * {@link #offerTablesInDataset}, so they are skipped by the search itself and do not take the
+   * place of the tables in other datasets.
+   */
+  private void offerTablesInProject(
+      TableId fullTableId,
+      int editDistanceThreshold,
+      String suggestedTable,
+      TopKRanker<String> ranker) {
+    try {
+      tableNameIndex.refresh(bigQueryService, fullTableId.getProject());
+    } catch (BigQueryException e) {
+      // The project can not be listed, but the tables indexed before can still be searched.
+    }
+
+    String projectPrefix = fullTableId.getProject() + ".";
+    String datasetPrefix = projectPrefix + fullTableId.getDataset() + ".";
+    String target = datasetPrefix + fullTableId.getTable();
+    for (TableNameIndex.Candidate candidate :
+        tableNameIndex.search(target, editDistanceThreshold, MAX_INDEX_CANDIDATES, datasetPrefix)) {
+      String fullTableName = candidate.getTableName();
+      FixCandidate.Locality locality =
+          fullTableName.startsWith(projectPrefix)
+              ? FixCandidate.Locality.SAME_PROJECT
+              : FixCandidate.Locality.OTHER;
+      ranker.offer(
+          fullTableName,
+          FixCandidate.builder()
+              .identifier(fullTableName)
+              .editDistance(candidate.getDistance())
+              .locality(locality)
+              .suggestedByBigQuery(fullTableName.equals(suggestedTable))
+              .build());
+    }
+  }
+
+  /**
+   * Get the full name (project.dataset.table) of the table suggested by the error message, or null
+   * if the message does not suggest a table.
+   */
+  private String getSuggestedFullTableName() {
+    if (!err.hasSuggestion() || !PatternMatcher.isMatched(err.getSuggestion(), tableIdRegex)) {
+      return null;
+    }
+    TableId suggestedTableId = constructTableId(err.getSuggestion());
+    return constructFullTableName(
+        suggestedTableId.getProject(), suggestedTableId.getDataset(), suggestedTableId.getTable());
+  }
+
   private TableId constructTableId(String fullTableName) {
     List<String> contents = PatternMatcher.extract(fullTableName, tableIdRegex);
     String projectId;
@@ -99,24 +238,37 @@ public class TableNotFoundFixer implements IFixer {
     return String.format("%s.%s.%s", projectId, datasetId, tableName);
   }
 
-  private int findTheIndexOfIncorrectTable() {
+  private List<TableIdentifierLocator.TableSpan> locateIncorrectTable() {
     // The table in the error message is presented in the legacySQL mode, but this fixer is used to
-    // fix the
-    // standardSQL. Thus, the table name needs to be converted to the one consistent with
-    // standardSQL.
-    // The change is from project:dataset.table to project.dataset.table.
+    // fix the standardSQL. Thus, the table name needs to be converted to the one consistent with
+    // standardSQL. The change is from project:dataset.table to project.dataset.table.
     String tableName = err.getTableName().replace(':', '.');
-    int index = query.indexOf(tableName);
 
-    // Since the TableNotFound error has no position info, this method will convert the index to the
-    // position and assign to the `err`.
-    Position position = queryPositionConverter.indexToPos(index);
-    this.err.setErrorPosition(position);
-    return index;
-  }
+    List<TableIdentifierLocator.TableSpan> spans;
+    try {
+      spans = tableLocator.locate(query, tableName);
+    } catch (SqlParseException e) {
+      // The parser does not support every BigQuery syntax (e.g. unquoted project IDs with dashes).
+      spans = new ArrayList<>();
+    }
+    if (spans.isEmpty()) {
+      // The table is not found in the parse tree, so fall back to the first occurrence of the
+      // table name in the query string.
+      int index = query.indexOf(tableName);
+      if (index != -1) {
+        spans.add(
+            new TableIdentifierLocator.TableSpan(
+                queryPositionConverter.indexToPos(index),
+                index,
+                index + tableName.length(),
+                /* quoted= */ false));
+      }
+    }
 
-  private String replaceTable(String newTable, int startIndex) {
-    return StringUtil.replaceStringBetweenIndex(
-        query, startIndex, startIndex + err.getTableName().length(), newTable);
+    // Since the TableNotFound error has no position info, this method will assign the position of
+    // the first occurrence to the `err`.
+    Position position = spans.isEmpty() ? Position.invalid() : spans.get(0).getPosition();
+    this.err.setErrorPosition(position);
+    return spans;
   }
 }
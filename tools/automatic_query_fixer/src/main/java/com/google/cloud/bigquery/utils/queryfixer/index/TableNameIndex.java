@@ -0,0 +1,326 @@
+package com.google.cloud.bigquery.utils.queryfixer.index;
+
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+import com.google.cloud.bigquery.utils.queryfixer.util.StringUtil;
+import com.google.common.flogger.FluentLogger;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A trigram inverted index over the full names (project.dataset.table) of the tables visible to the
+ * service account. It is used to find tables similar to an incorrect table even when the incorrect
+ * part is the dataset, without listing every dataset on every request.
+ *
+ * <p>A search works in two steps. First, the posting lists of the target's trigrams are merged to
+ * count how many trigrams each table shares with the target. Since one edit changes at most three
+ * trigrams, a table within edit distance d shares at least (number of target trigrams - 3d) of
+ * them, so every other table is skipped without computing its edit distance. Then the remaining
+ * candidates are re-ranked by their bounded edit distance to the target.
+ *
+ * <p>The index is built incrementally: each dataset is listed once, and the datasets already
+ * indexed are skipped by {@link #refresh}. It can be persisted to a local file through {@link
+ * #save} and restored by {@link #load}.
+ */
+public class TableNameIndex {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int GRAM_SIZE = 3;
+  // Padding the names lets the first and last characters form their own trigrams.
+  private static final String PADDING = "$$";
+
+  // Markers of the lines in the persisted file.
+  private static final String DATASET_MARKER = "D\t";
+  private static final String TABLE_MARKER = "T\t";
+
+  /** Table names, where the index of a name in the list is its ID in the posting lists. */
+  private final List<String> tableNames = new ArrayList<>();
+
+  private final Map<String, Integer> tableIds = new HashMap<>();
+
+  /** Posting lists from a trigram to the IDs of the tables containing it, in increasing order. */
+  private final Map<String, IdList> postings = new HashMap<>();
+
+  /** Datasets (project.dataset) whose tables have been indexed. */
+  private final Set<String> indexedDatasets = new LinkedHashSet<>();
+
+  /** Projects whose datasets have been listed by this instance. */
+  private final Set<String> refreshedProjects = new HashSet<>();
+
+  /**
+   * Scratch space of the searches holding the number of trigrams each table shares with the
+   * target. Only the entries touched by a search are reset, so a search never scans all tables.
+   */
+  private int[] sharedGrams = new int[0];
+
+  /**
+   * Add a table to the index. Adding a table that has been indexed has no effect.
+   *
+   * @param fullTableName the table name in the form of project.dataset.table
+   */
+  public synchronized void addTable(@NonNull String fullTableName) {
+    if (tableIds.containsKey(fullTableName)) {
+      return;
+    }
+    int id = tableNames.size();
+    tableNames.add(fullTableName);
+    tableIds.put(fullTableName, id);
+    // Each table appears at most once in a posting list, even if it contains a trigram twice.
+    for (String gram : new LinkedHashSet<>(toGrams(fullTableName))) {
+      postings.computeIfAbsent(gram, key -> new IdList()).add(id);
+    }
+  }
+
+  /**
+   * Add all the tables of a dataset to the index and mark the dataset as indexed.
+   *
+   * @param projectId project of the dataset
+   * @param datasetId dataset of the tables
+   * @param tables table names without project and dataset
+   */
+  public synchronized void addDataset(String projectId, String datasetId, List<String> tables) {
+    for (String table : tables) {
+      addTable(String.format("%s.%s.%s", projectId, datasetId, table));
+    }
+    indexedDatasets.add(String.format("%s.%s", projectId, datasetId));
+  }
+
+  public synchronized boolean isDatasetIndexed(String projectId, String datasetId) {
+    return indexedDatasets.contains(String.format("%s.%s", projectId, datasetId));
+  }
+
+  public synchronized int size() {
+    return tableNames.size();
+  }
+
+  /**
+   * Index the datasets of a project that have not been indexed yet. The datasets of a project are
+   * only listed once per instance, so calling this method on every request is cheap. Datasets that
+   * can not be listed are skipped, and will be tried again in the next refresh of a new instance.
+   *
+   * @param service the service to list datasets and tables
+   * @param projectId the project to index
+   * @throws BigQueryException if the datasets of the project can not be listed.
+   */
+  public void refresh(@NonNull BigQueryService service, @NonNull String projectId)
+      throws BigQueryException {
+    synchronized (this) {
+      if (refreshedProjects.contains(projectId)) {
+        return;
+      }
+    }
+
+    for (String datasetId : service.listDatasetNames(projectId)) {
+      if (isDatasetIndexed(projectId, datasetId)) {
+        continue;
+      }
+      try {
+        addDataset(projectId, datasetId, service.listTableNames(projectId, datasetId));
+      } catch (BigQueryException e) {
+        logger.atWarning().withCause(e).log(
+            "Unable to list the tables of %s.%s", projectId, datasetId);
+      }
+    }
+
+    synchronized (this) {
+      refreshedProjects.add(projectId);
+    }
+  }
+
+  /**
+   * Find the indexed tables within an edit distance of a target name. The results are sorted by
+   * their distances, and tables with the same distance keep the order in which they were indexed.
+   *
+   * @param target the full name of the target table
+   * @param maxDistance the largest edit distance of the results
+   * @param limit the maximum number of results
+   * @return the similar tables and their distances to the target
+   */
+  public List<Candidate> search(@NonNull String target, int maxDistance, int limit) {
+    return search(target, maxDistance, limit, /* excludedPrefix= */ null);
+  }
+
+  /**
+   * Find the indexed tables within an edit distance of a target name, skipping the tables whose
+   * names start with a prefix, e.g. the tables of a dataset that has been searched in another way.
+   * The skipped tables do not count towards the limit.
+   *
+   * @param target the full name of the target table
+   * @param maxDistance the largest edit distance of the results
+   * @param limit the maximum number of results
+   * @param excludedPrefix the prefix of the tables to skip, or null to skip none
+   * @return the similar tables and their distances to the target
+   */
+  public synchronized List<Candidate> search(
+      @NonNull String target, int maxDistance, int limit, String excludedPrefix) {
+    List<String> grams = toGrams(target);
+    int minSharedGrams = grams.size() - GRAM_SIZE * maxDistance;
+
+    // Count the shared trigrams of each table. Only the touched tables are visited afterwards.
+    if (sharedGrams.length < tableNames.size()) {
+      sharedGrams = new int[tableNames.size()];
+    }
+    IdList touched = new IdList();
+    for (String gram : new LinkedHashSet<>(grams)) {
+      IdList ids = postings.get(gram);
+      if (ids == null) {
+        continue;
+      }
+      int occurrences = countOccurrences(grams, gram);
+      for (int i = 0; i < ids.size; i++) {
+        int id = ids.values[i];
+        if (sharedGrams[id] == 0) {
+          touched.add(id);
+        }
+        sharedGrams[id] += occurrences;
+      }
+    }
+
+    List<Candidate> candidates = new ArrayList<>();
+    if (minSharedGrams <= 0) {
+      // The count filter is not selective for such a loose bound, so every table is a candidate.
+      for (int id = 0; id < tableNames.size(); id++) {
+        addIfSimilar(candidates, tableNames.get(id), target, maxDistance, excludedPrefix);
+      }
+    } else {
+      int[] ids = Arrays.copyOf(touched.values, touched.size);
+      Arrays.sort(ids);
+      for (int id : ids) {
+        if (sharedGrams[id] >= minSharedGrams) {
+          addIfSimilar(candidates, tableNames.get(id), target, maxDistance, excludedPrefix);
+        }
+      }
+    }
+    for (int i = 0; i < touched.size; i++) {
+      sharedGrams[touched.values[i]] = 0;
+    }
+
+    // The sort is stable, so ties are kept in the indexed order.
+    candidates.sort((left, right) -> Integer.compare(left.getDistance(), right.getDistance()));
+    if (candidates.size() > limit) {
+      return new ArrayList<>(candidates.subList(0, limit));
+    }
+    return candidates;
+  }
+
+  /**
+   * Save the index to a local file. The file is written to a temporary file first and then moved,
+   * so a crash never leaves a partially written index behind.
+   *
+   * @param path the path of the file
+   * @throws IOException if the file can not be written.
+   */
+  public synchronized void save(@NonNull Path path) throws IOException {
+    Path absolutePath = path.toAbsolutePath();
+    Path temp = Files.createTempFile(absolutePath.getParent(), "table-index", ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      for (String dataset : indexedDatasets) {
+        writer.write(DATASET_MARKER + dataset);
+        writer.newLine();
+      }
+      for (String table : tableNames) {
+        writer.write(TABLE_MARKER + table);
+        writer.newLine();
+      }
+    }
+    Files.move(temp, absolutePath, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Load an index saved by {@link #save}. If the file does not exist, an empty index is returned.
+   *
+   * @param path the path of the file
+   * @return the loaded index
+   * @throws IOException if the file can not be read.
+   */
+  public static TableNameIndex load(@NonNull Path path) throws IOException {
+    TableNameIndex index = new TableNameIndex();
+    if (!Files.exists(path)) {
+      return index;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(DATASET_MARKER)) {
+          index.indexedDatasets.add(line.substring(DATASET_MARKER.length()));
+        } else if (line.startsWith(TABLE_MARKER)) {
+          index.addTable(line.substring(TABLE_MARKER.length()));
+        }
+      }
+    }
+    return index;
+  }
+
+  private static void addIfSimilar(
+      List<Candidate> candidates,
+      String tableName,
+      String target,
+      int maxDistance,
+      String excludedPrefix) {
+    if (excludedPrefix != null && tableName.startsWith(excludedPrefix)) {
+      return;
+    }
+    int distance = StringUtil.boundedEditDistance(tableName, target, maxDistance);
+    if (distance <= maxDistance) {
+      candidates.add(new Candidate(tableName, distance));
+    }
+  }
+
+  private static int countOccurrences(List<String> grams, String gram) {
+    int count = 0;
+    for (String other : grams) {
+      if (other.equals(gram)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Split a name into its trigrams, keeping the duplicates. */
+  private static List<String> toGrams(String name) {
+    String padded = PADDING + name + PADDING;
+    List<String> grams = new ArrayList<>(padded.length());
+    for (int i = 0; i + GRAM_SIZE <= padded.length(); i++) {
+      grams.add(padded.substring(i, i + GRAM_SIZE));
+    }
+    return grams;
+  }
+
+  /** A table similar to the searched target. */
+  @Value
+  public static class Candidate {
+    String tableName;
+    int distance;
+  }
+
+  /** A growable list of primitive IDs, which avoids boxing every entry of the posting lists. */
+  private static class IdList {
+    private int[] values = new int[4];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+}
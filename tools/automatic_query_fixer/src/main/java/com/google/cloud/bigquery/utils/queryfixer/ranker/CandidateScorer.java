@@ -0,0 +1,73 @@
+package com.google.cloud.bigquery.utils.queryfixer.ranker;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A scorer combining the features of a {@link FixCandidate} into a single score. A higher score
+ * means a better candidate. The score is a weighted sum of:
+ *
+ * <ol>
+ *   <li>the edit distance to the incorrect identifier (a penalty per edit),
+ *   <li>the locality of the candidate (a bonus for the same dataset or the same project),
+ *   <li>the recency of the candidate's last use, decaying exponentially with its age,
+ *   <li>whether BigQuery itself suggests the candidate.
+ * </ol>
+ *
+ * <p>The default weights make edit distance dominant: one edit outweighs any locality or recency
+ * bonus, so these features mainly order candidates with similar distances.
+ */
+@Builder
+@Value
+public class CandidateScorer {
+
+  @Builder.Default double editDistanceWeight = 1.0;
+  @Builder.Default double sameDatasetWeight = 0.5;
+  @Builder.Default double sameProjectWeight = 0.25;
+  @Builder.Default double recencyWeight = 0.5;
+  @Builder.Default double suggestionWeight = 2.0;
+
+  /** The age at which the recency bonus drops to half. */
+  @Builder.Default long recencyHalfLifeMillis = 24 * 60 * 60 * 1000L;
+
+  /** The usage history for the recency feature. If it is null, the feature is ignored. */
+  TableUsageHistory usageHistory;
+
+  /** Create a scorer with the default weights and without usage history. */
+  public static CandidateScorer defaultScorer() {
+    return CandidateScorer.builder().build();
+  }
+
+  /**
+   * Score a candidate.
+   *
+   * @param candidate the candidate to score
+   * @return the score, the higher the better.
+   */
+  public double score(FixCandidate candidate) {
+    double score = -editDistanceWeight * candidate.getEditDistance();
+
+    switch (candidate.getLocality()) {
+      case SAME_DATASET:
+        score += sameDatasetWeight;
+        break;
+      case SAME_PROJECT:
+        score += sameProjectWeight;
+        break;
+      default:
+        break;
+    }
+
+    if (usageHistory != null) {
+      long age = usageHistory.getMillisSinceLastUse(candidate.getIdentifier());
+      if (age >= 0) {
+        score += recencyWeight * Math.pow(0.5, (double) age / recencyHalfLifeMillis);
+      }
+    }
+
+    if (candidate.isSuggestedByBigQuery()) {
+      score += suggestionWeight;
+    }
+    return score;
+  }
+}
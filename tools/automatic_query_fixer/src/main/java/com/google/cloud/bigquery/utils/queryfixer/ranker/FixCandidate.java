@@ -0,0 +1,31 @@
+package com.google.cloud.bigquery.utils.queryfixer.ranker;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A candidate identifier to fix an error, e.g. a table to replace an incorrect table. It carries
+ * the features used by {@link CandidateScorer} to rank the candidates.
+ */
+@Builder
+@Value
+public class FixCandidate {
+
+  /** The identifier to replace the incorrect one. */
+  String identifier;
+
+  /** The edit distance between the candidate and the incorrect identifier. */
+  int editDistance;
+
+  /** How close the candidate is to the incorrect identifier in the resource hierarchy. */
+  @Builder.Default Locality locality = Locality.SAME_DATASET;
+
+  /** Whether BigQuery suggests this candidate in its error message ("Did you mean ...?"). */
+  boolean suggestedByBigQuery;
+
+  public enum Locality {
+    SAME_DATASET,
+    SAME_PROJECT,
+    OTHER
+  }
+}
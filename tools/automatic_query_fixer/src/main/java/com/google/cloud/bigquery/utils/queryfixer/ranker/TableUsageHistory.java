@@ -0,0 +1,48 @@
+package com.google.cloud.bigquery.utils.queryfixer.ranker;
+
+import lombok.NonNull;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A record of when identifiers (e.g. tables) were last used. Recently used tables are more likely
+ * to be the ones a user meant, so {@link CandidateScorer} ranks them higher.
+ */
+public class TableUsageHistory {
+
+  private final Clock clock;
+  private final Map<String, Long> lastUsedMillis = new ConcurrentHashMap<>();
+
+  public TableUsageHistory() {
+    this(Clock.systemUTC());
+  }
+
+  public TableUsageHistory(@NonNull Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Record that an identifier is used now, e.g. when a user accepts a fix option using it.
+   *
+   * @param identifier the used identifier
+   */
+  public void recordUse(@NonNull String identifier) {
+    lastUsedMillis.put(identifier, clock.millis());
+  }
+
+  /**
+   * Get how long ago an identifier was last used.
+   *
+   * @param identifier the identifier to check
+   * @return the age in milliseconds, or -1 if the identifier has never been used.
+   */
+  public long getMillisSinceLastUse(String identifier) {
+    Long millis = lastUsedMillis.get(identifier);
+    if (millis == null) {
+      return -1;
+    }
+    return Math.max(0, clock.millis() - millis);
+  }
+}
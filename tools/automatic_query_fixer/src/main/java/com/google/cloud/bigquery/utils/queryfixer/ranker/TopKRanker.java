@@ -0,0 +1,87 @@
+package com.google.cloud.bigquery.utils.queryfixer.ranker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A ranker keeping the k best candidates of a stream. Candidates are offered one by one, and only
+ * k of them are held in a bounded heap, so the memory does not grow with the number of candidates.
+ * Candidates with equal scores are ranked by their offering order, so the ranking is deterministic.
+ *
+ * @param <T> the type of the candidates
+ */
+public class TopKRanker<T> {
+
+  private final int k;
+  private final CandidateScorer scorer;
+
+  // A lower score is worse. With the same score, a later candidate is worse.
+  private final Comparator<Entry<T>> worstFirst =
+      Comparator.<Entry<T>>comparingDouble(entry -> entry.score)
+          .thenComparingLong(entry -> -entry.order);
+
+  /** A min-heap whose head is the worst kept candidate. */
+  private final PriorityQueue<Entry<T>> heap;
+
+  private long offered = 0;
+
+  public TopKRanker(int k, CandidateScorer scorer) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("k should be positive.");
+    }
+    this.k = k;
+    this.scorer = scorer;
+    this.heap = new PriorityQueue<>(k + 1, worstFirst);
+  }
+
+  /**
+   * Offer a candidate to the ranker. It is kept if it is among the k best candidates so far.
+   *
+   * @param item the item the candidate stands for
+   * @param candidate the features of the candidate
+   */
+  public void offer(T item, FixCandidate candidate) {
+    Entry<T> entry = new Entry<>(item, scorer.score(candidate), offered++);
+    if (heap.size() < k) {
+      heap.add(entry);
+    } else if (worstFirst.compare(entry, heap.peek()) > 0) {
+      heap.poll();
+      heap.add(entry);
+    }
+  }
+
+  public boolean isEmpty() {
+    return heap.isEmpty();
+  }
+
+  /**
+   * Get the kept candidates, from the best to the worst.
+   *
+   * @return the best k candidates
+   */
+  public List<T> getTopK() {
+    List<Entry<T>> entries = new ArrayList<>(heap);
+    entries.sort(Collections.reverseOrder(worstFirst));
+
+    List<T> items = new ArrayList<>(entries.size());
+    for (Entry<T> entry : entries) {
+      items.add(entry.item);
+    }
+    return items;
+  }
+
+  private static class Entry<T> {
+    private final T item;
+    private final double score;
+    private final long order;
+
+    private Entry(T item, double score, long order) {
+      this.item = item;
+      this.score = score;
+      this.order = order;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.google.cloud.bigquery.utils.queryfixer.replay;
+
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixOption;
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A value class representing one recorded fixing session: the input query, the error returned by
+ * the dry run, the metadata the fixer fetched from BigQuery, the options it produced, the option
+ * the user chose, and the timings of each step. The metadata is enough to replay the session
+ * offline with {@link ReplayBigQueryService}.
+ */
+@Builder(toBuilder = true)
+@Value
+public class FixSession {
+
+  /** Unique ID of the session, used to attach the user's choice later. */
+  String id;
+
+  /** The project ID of the BigQuery client, used for tables without a project. */
+  String projectId;
+
+  /** The query to fix. */
+  String query;
+
+  /** The message of the dry-run error, or null if the query has no error. */
+  String dryRunError;
+
+  /**
+   * The metadata fetched by the fixer, keyed by {@link #tablesKey} and {@link #datasetsKey}. A null
+   * value means the request failed, e.g. the dataset was not found.
+   */
+  @Singular("metadataEntry")
+  Map<String, List<String>> metadata;
+
+  /** The options produced by the fixer. */
+  @Singular List<FixOption> options;
+
+  /** The index of the option chosen by the user, or -1 if none was chosen. */
+  @Builder.Default int chosenOption = -1;
+
+  long dryRunNanos;
+  long fixNanos;
+
+  public static String tablesKey(String projectId, String datasetId) {
+    return String.format("tables/%s.%s", projectId, datasetId);
+  }
+
+  public static String datasetsKey(String projectId) {
+    return String.format("datasets/%s", projectId);
+  }
+}
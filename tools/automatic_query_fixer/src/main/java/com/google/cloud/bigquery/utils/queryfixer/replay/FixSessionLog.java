@@ -0,0 +1,214 @@
+package com.google.cloud.bigquery.utils.queryfixer.replay;
+
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixOption;
+import lombok.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only binary log of {@link FixSession}s. Every record is written and flushed as a
+ * whole, so the log can be appended by a running fixer and copied at any time. A record cut off by
+ * a crash is ignored when the log is read.
+ *
+ * <p>There are two kinds of records: a session record holding a whole session, and a choice
+ * record attaching the option chosen by the user to a session logged before. Strings are stored as
+ * a length followed by UTF-8 bytes, and a length of -1 stands for null.
+ */
+public class FixSessionLog implements Closeable {
+
+  private static final int MAGIC = 0x46584c47; // "FXLG"
+  private static final int VERSION = 1;
+
+  private static final byte SESSION_RECORD = 1;
+  private static final byte CHOICE_RECORD = 2;
+
+  private final DataOutputStream output;
+
+  /**
+   * Open a log for appending. The file is created if it does not exist.
+   *
+   * @param path the path of the log
+   * @throws IOException if the file can not be opened.
+   */
+  public FixSessionLog(@NonNull Path path) throws IOException {
+    boolean isNew = !Files.exists(path) || Files.size(path) == 0;
+    this.output =
+        new DataOutputStream(
+            new BufferedOutputStream(
+                Files.newOutputStream(
+                    path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    if (isNew) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.flush();
+    }
+  }
+
+  /**
+   * Append a session to the log.
+   *
+   * @param session the session to append
+   * @throws IOException if the record can not be written.
+   */
+  public synchronized void append(@NonNull FixSession session) throws IOException {
+    output.writeByte(SESSION_RECORD);
+    writeString(session.getId());
+    writeString(session.getProjectId());
+    writeString(session.getQuery());
+    writeString(session.getDryRunError());
+
+    output.writeInt(session.getMetadata().size());
+    for (Map.Entry<String, List<String>> entry : session.getMetadata().entrySet()) {
+      writeString(entry.getKey());
+      List<String> names = entry.getValue();
+      output.writeInt(names == null ? -1 : names.size());
+      if (names != null) {
+        for (String name : names) {
+          writeString(name);
+        }
+      }
+    }
+
+    output.writeInt(session.getOptions().size());
+    for (FixOption option : session.getOptions()) {
+      writeString(option.getDescription());
+      writeString(option.getFixedQuery());
+    }
+
+    output.writeInt(session.getChosenOption());
+    output.writeLong(session.getDryRunNanos());
+    output.writeLong(session.getFixNanos());
+    output.flush();
+  }
+
+  /**
+   * Append the option chosen by the user for a session logged before.
+   *
+   * @param sessionId the ID of the session
+   * @param chosenOption the index of the chosen option
+   * @throws IOException if the record can not be written.
+   */
+  public synchronized void appendChoice(@NonNull String sessionId, int chosenOption)
+      throws IOException {
+    output.writeByte(CHOICE_RECORD);
+    writeString(sessionId);
+    output.writeInt(chosenOption);
+    output.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    output.close();
+  }
+
+  /**
+   * Read all the sessions of a log in their logged order, with the choices attached.
+   *
+   * @param path the path of the log
+   * @return the logged sessions
+   * @throws IOException if the file can not be read or is not a session log.
+   */
+  public static List<FixSession> readAll(@NonNull Path path) throws IOException {
+    Map<String, FixSession> sessions = new LinkedHashMap<>();
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        throw new IOException("Not a fix session log: " + path);
+      }
+
+      while (true) {
+        int recordType = input.read();
+        if (recordType == -1) {
+          break;
+        }
+        try {
+          if (recordType == SESSION_RECORD) {
+            FixSession session = readSession(input);
+            sessions.put(session.getId(), session);
+          } else if (recordType == CHOICE_RECORD) {
+            String sessionId = readString(input);
+            int chosenOption = input.readInt();
+            FixSession session = sessions.get(sessionId);
+            if (session != null) {
+              sessions.put(sessionId, session.toBuilder().chosenOption(chosenOption).build());
+            }
+          } else {
+            throw new IOException("Unknown record type " + recordType + " in " + path);
+          }
+        } catch (EOFException e) {
+          // The last record was cut off, e.g. by a crash while it was written.
+          break;
+        }
+      }
+    }
+    return new ArrayList<>(sessions.values());
+  }
+
+  private static FixSession readSession(DataInputStream input) throws IOException {
+    FixSession.FixSessionBuilder builder =
+        FixSession.builder()
+            .id(readString(input))
+            .projectId(readString(input))
+            .query(readString(input))
+            .dryRunError(readString(input));
+
+    int metadataSize = input.readInt();
+    for (int i = 0; i < metadataSize; i++) {
+      String key = readString(input);
+      int size = input.readInt();
+      List<String> names = null;
+      if (size >= 0) {
+        names = new ArrayList<>(size);
+        for (int j = 0; j < size; j++) {
+          names.add(readString(input));
+        }
+      }
+      builder.metadataEntry(key, names);
+    }
+
+    int optionSize = input.readInt();
+    for (int i = 0; i < optionSize; i++) {
+      builder.option(FixOption.of(readString(input), readString(input)));
+    }
+
+    return builder
+        .chosenOption(input.readInt())
+        .dryRunNanos(input.readLong())
+        .fixNanos(input.readLong())
+        .build();
+  }
+
+  private void writeString(String value) throws IOException {
+    if (value == null) {
+      output.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length == -1) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
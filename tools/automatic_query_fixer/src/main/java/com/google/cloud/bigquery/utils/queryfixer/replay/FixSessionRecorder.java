@@ -0,0 +1,134 @@
+package com.google.cloud.bigquery.utils.queryfixer.replay;
+
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixOption;
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixResult;
+import com.google.cloud.bigquery.utils.queryfixer.errors.BigQuerySqlError;
+import com.google.cloud.bigquery.utils.queryfixer.errors.SqlErrorFactory;
+import com.google.cloud.bigquery.utils.queryfixer.fixer.FixerFactory;
+import com.google.cloud.bigquery.utils.queryfixer.fixer.IFixer;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.TableUsageHistory;
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+import com.google.common.flogger.FluentLogger;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * A runner that fixes a query and records the whole session into a {@link FixSessionLog}. It dry
+ * runs the query, resolves the error, fixes it with the fixer from {@link FixerFactory}, and logs
+ * the input, the error, the fetched metadata, the options and the timings. Failing to write the log
+ * never fails the fixing itself.
+ *
+ * <p>If a {@link TableUsageHistory} is given, the identifier of every option chosen by the user is
+ * recorded as used, so the fixers sharing the history rank it higher next time.
+ */
+@AllArgsConstructor
+public class FixSessionRecorder {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final BigQueryService bigQueryService;
+  private final Function<BigQueryService, FixerFactory> fixerFactoryProvider;
+  private final SqlErrorFactory errorFactory;
+  private final FixSessionLog log;
+
+  /** The usage history updated by the user's choices. If it is null, choices are only logged. */
+  private final TableUsageHistory usageHistory;
+
+  public FixSessionRecorder(
+      BigQueryService bigQueryService,
+      Function<BigQueryService, FixerFactory> fixerFactoryProvider,
+      SqlErrorFactory errorFactory,
+      FixSessionLog log) {
+    this(bigQueryService, fixerFactoryProvider, errorFactory, log, /* usageHistory= */ null);
+  }
+
+  /**
+   * Fix a query and record the session.
+   *
+   * @param query the query to fix
+   * @return the ID of the recorded session and the fix result
+   */
+  public RecordedFix fixAndRecord(String query) {
+    RecordingBigQueryService recordingService = new RecordingBigQueryService(bigQueryService);
+    FixSession.FixSessionBuilder session =
+        FixSession.builder()
+            .id(UUID.randomUUID().toString())
+            .projectId(bigQueryService.getBigQueryOptions().getProjectId())
+            .query(query);
+
+    long start = System.nanoTime();
+    BigQueryException exception = recordingService.catchExceptionFromDryRun(query);
+    session.dryRunNanos(System.nanoTime() - start);
+
+    FixResult result;
+    if (exception == null) {
+      result = FixResult.noError();
+    } else {
+      session.dryRunError(exception.getError().getMessage());
+      start = System.nanoTime();
+      result = fix(query, exception, recordingService);
+      session.fixNanos(System.nanoTime() - start);
+    }
+
+    if (result.getOptions() != null) {
+      session.options(result.getOptions());
+    }
+    FixSession recorded = session.metadata(recordingService.getMetadata()).build();
+    try {
+      log.append(recorded);
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Unable to record the fix session %s", recorded.getId());
+    }
+    return new RecordedFix(recorded.getId(), result);
+  }
+
+  /**
+   * Record the option chosen by the user for a session. The description of the option is the
+   * identifier it uses, e.g. the table replacing the incorrect one, and it is recorded as used.
+   *
+   * @param recorded the fix returned by {@link #fixAndRecord}
+   * @param chosenOption the index of the chosen option
+   */
+  public void recordChoice(RecordedFix recorded, int chosenOption) {
+    List<FixOption> options = recorded.getResult().getOptions();
+    boolean isOption = options != null && chosenOption >= 0 && chosenOption < options.size();
+    if (usageHistory != null && isOption) {
+      usageHistory.recordUse(options.get(chosenOption).getDescription());
+    }
+
+    String sessionId = recorded.getSessionId();
+    try {
+      log.appendChoice(sessionId, chosenOption);
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Unable to record the choice of session %s", sessionId);
+    }
+  }
+
+  private FixResult fix(String query, BigQueryException exception, BigQueryService service) {
+    BigQuerySqlError error = errorFactory.getError(exception);
+    if (error == null) {
+      return FixResult.builder()
+          .status(FixResult.Status.FAILURE)
+          .error(exception.getMessage())
+          .build();
+    }
+    IFixer fixer = fixerFactoryProvider.apply(service).getFixer(query, error);
+    if (fixer == null) {
+      return FixResult.failure(error);
+    }
+    return fixer.fix();
+  }
+
+  /** The result of a recorded fix. */
+  @Value
+  public static class RecordedFix {
+    String sessionId;
+    FixResult result;
+  }
+}
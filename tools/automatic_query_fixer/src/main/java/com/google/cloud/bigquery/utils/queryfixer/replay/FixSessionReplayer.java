@@ -0,0 +1,104 @@
+package com.google.cloud.bigquery.utils.queryfixer.replay;
+
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixOption;
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixResult;
+import com.google.cloud.bigquery.utils.queryfixer.errors.BigQuerySqlError;
+import com.google.cloud.bigquery.utils.queryfixer.errors.SqlErrorFactory;
+import com.google.cloud.bigquery.utils.queryfixer.fixer.FixerFactory;
+import com.google.cloud.bigquery.utils.queryfixer.fixer.IFixer;
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A replayer driving the fixers over recorded {@link FixSession}s. Each session is replayed
+ * against a {@link ReplayBigQueryService} loaded with its recorded metadata, so no network access
+ * is needed and the results are deterministic. The replayer reports whether the replayed options
+ * match the recorded ones and how long each fix took, so a log of production sessions can serve as
+ * a benchmark corpus for performance changes.
+ */
+@AllArgsConstructor
+public class FixSessionReplayer {
+
+  private final Function<BigQueryService, FixerFactory> fixerFactoryProvider;
+  private final SqlErrorFactory errorFactory;
+
+  /**
+   * Replay a list of sessions in order.
+   *
+   * @param sessions the sessions to replay
+   * @param rounds the number of times each session is fixed; the fastest round is reported.
+   * @return the replay report
+   */
+  public Report replay(List<FixSession> sessions, int rounds) {
+    List<SessionResult> results = new ArrayList<>();
+    for (FixSession session : sessions) {
+      if (session.getDryRunError() == null) {
+        continue;
+      }
+      results.add(replay(session, Math.max(1, rounds)));
+    }
+    return new Report(Collections.unmodifiableList(results));
+  }
+
+  private SessionResult replay(FixSession session, int rounds) {
+    ReplayBigQueryService service = new ReplayBigQueryService(session);
+    BigQueryException exception = service.catchExceptionFromDryRun(session.getQuery());
+
+    long fastest = Long.MAX_VALUE;
+    FixResult result = null;
+    for (int i = 0; i < rounds; i++) {
+      long start = System.nanoTime();
+      result = fix(session.getQuery(), exception, service);
+      fastest = Math.min(fastest, System.nanoTime() - start);
+    }
+
+    List<FixOption> options =
+        result == null || result.getOptions() == null ? new ArrayList<>() : result.getOptions();
+    return new SessionResult(
+        session.getId(), options.equals(session.getOptions()), session.getFixNanos(), fastest);
+  }
+
+  private FixResult fix(String query, BigQueryException exception, BigQueryService service) {
+    BigQuerySqlError error = errorFactory.getError(exception);
+    if (error == null) {
+      return null;
+    }
+    IFixer fixer = fixerFactoryProvider.apply(service).getFixer(query, error);
+    return fixer == null ? null : fixer.fix();
+  }
+
+  /** The replay result of a session. */
+  @Value
+  public static class SessionResult {
+    String sessionId;
+    /** Whether the replayed options are the same as the recorded ones. */
+    boolean matched;
+    long recordedNanos;
+    long replayedNanos;
+  }
+
+  /** The replay results of all the sessions with errors. */
+  @Value
+  public static class Report {
+    List<SessionResult> results;
+
+    public long countMismatches() {
+      return results.stream().filter(result -> !result.isMatched()).count();
+    }
+
+    public long totalReplayedNanos() {
+      return results.stream().mapToLong(SessionResult::getReplayedNanos).sum();
+    }
+
+    public long totalRecordedNanos() {
+      return results.stream().mapToLong(SessionResult::getRecordedNanos).sum();
+    }
+  }
+}
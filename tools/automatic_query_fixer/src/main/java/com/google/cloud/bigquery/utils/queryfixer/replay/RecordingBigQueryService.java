@@ -0,0 +1,65 @@
+package com.google.cloud.bigquery.utils.queryfixer.replay;
+
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A {@link BigQueryService} that forwards every call to another service and records the metadata
+ * it returns, so a fixing session can later be replayed by {@link ReplayBigQueryService}.
+ */
+public class RecordingBigQueryService extends BigQueryService {
+
+  private final BigQueryService delegate;
+  private final Map<String, List<String>> metadata = new LinkedHashMap<>();
+
+  public RecordingBigQueryService(BigQueryService delegate) {
+    super(delegate.getBigQueryOptions());
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Job dryRun(String query) throws BigQueryException {
+    return delegate.dryRun(query);
+  }
+
+  @Override
+  public List<String> listTableNames(String projectId, String datasetId)
+      throws BigQueryException {
+    return record(
+        FixSession.tablesKey(projectId, datasetId),
+        () -> delegate.listTableNames(projectId, datasetId));
+  }
+
+  @Override
+  public List<String> listDatasetNames(String projectId) throws BigQueryException {
+    return record(FixSession.datasetsKey(projectId), () -> delegate.listDatasetNames(projectId));
+  }
+
+  @Override
+  public BigQueryOptions getBigQueryOptions() {
+    return delegate.getBigQueryOptions();
+  }
+
+  /** Get the metadata recorded so far, keyed as described in {@link FixSession#getMetadata()}. */
+  public synchronized Map<String, List<String>> getMetadata() {
+    return new LinkedHashMap<>(metadata);
+  }
+
+  private synchronized List<String> record(String key, Supplier<List<String>> request) {
+    try {
+      List<String> names = request.get();
+      metadata.put(key, names);
+      return names;
+    } catch (BigQueryException e) {
+      metadata.put(key, null);
+      throw e;
+    }
+  }
+}
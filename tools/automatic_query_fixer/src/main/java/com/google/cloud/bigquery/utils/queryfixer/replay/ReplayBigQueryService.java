@@ -0,0 +1,75 @@
+package com.google.cloud.bigquery.utils.queryfixer.replay;
+
+import com.google.cloud.NoCredentials;
+import com.google.cloud.bigquery.BigQueryError;
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.Job;
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+
+import java.util.List;
+
+/**
+ * A fake {@link BigQueryService} answering from the metadata recorded in a {@link FixSession}. It
+ * never connects to the BigQuery server, so sessions can be replayed without network access.
+ * The dry run of the session's query throws the recorded error again. Requests that were not
+ * recorded fail with a "Not found" {@link BigQueryException}, just like requests that failed in the
+ * recorded session.
+ */
+public class ReplayBigQueryService extends BigQueryService {
+
+  private static final int BAD_REQUEST = 400;
+  private static final int NOT_FOUND = 404;
+
+  private final FixSession session;
+
+  public ReplayBigQueryService(FixSession session) {
+    super(
+        BigQueryOptions.newBuilder()
+            .setProjectId(session.getProjectId())
+            .setCredentials(NoCredentials.getInstance())
+            .build());
+    this.session = session;
+  }
+
+  /**
+   * Replay the dry run of the session's query by throwing the recorded error. Only the message of
+   * the error is recorded, so the replayed error carries the message alone. If the query had no
+   * error, null is returned, because the job of the dry run is not recorded.
+   */
+  @Override
+  public Job dryRun(String query) throws BigQueryException {
+    if (!query.equals(session.getQuery())) {
+      throw notFound("dry run of " + query);
+    }
+    String message = session.getDryRunError();
+    if (message == null) {
+      return null;
+    }
+    throw new BigQueryException(BAD_REQUEST, message, new BigQueryError("", "", message));
+  }
+
+  @Override
+  public List<String> listTableNames(String projectId, String datasetId)
+      throws BigQueryException {
+    return lookUp(FixSession.tablesKey(projectId, datasetId));
+  }
+
+  @Override
+  public List<String> listDatasetNames(String projectId) throws BigQueryException {
+    return lookUp(FixSession.datasetsKey(projectId));
+  }
+
+  private List<String> lookUp(String key) {
+    List<String> names = session.getMetadata().get(key);
+    if (names == null) {
+      throw notFound(key);
+    }
+    return names;
+  }
+
+  private static BigQueryException notFound(String request) {
+    String message = "Not found: " + request;
+    return new BigQueryException(NOT_FOUND, message, new BigQueryError("notFound", "", message));
+  }
+}
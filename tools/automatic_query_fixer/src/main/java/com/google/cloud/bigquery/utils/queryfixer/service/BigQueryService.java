@@ -4,6 +4,7 @@ import com.google.api.gax.paging.Page;
 import com.google.cloud.bigquery.BigQuery;
 import com.google.cloud.bigquery.BigQueryException;
 import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.Dataset;
 import com.google.cloud.bigquery.DatasetId;
 import com.google.cloud.bigquery.Job;
 import com.google.cloud.bigquery.JobInfo;
@@ -23,6 +24,7 @@ import java.util.stream.StreamSupport;
 public class BigQueryService {
 
   private static final int TABLE_FETCH_SIZE = 1000;
+  private static final int DATASET_FETCH_SIZE = 1000;
 
   private final BigQuery bigQuery;
 
@@ -101,6 +103,23 @@ public class BigQueryService {
         .collect(Collectors.toList());
   }
 
+  /**
+   * Fetch the names of all datasets from the BigQuery given the project. If the project does not
+   * exist or is not visible to the provided service account, {@link
+   * com.google.cloud.bigquery.BigQueryException} will be thrown.
+   *
+   * @param projectId project to fetch datasets
+   * @return list of dataset names belonging to the given project
+   */
+  public List<String> listDatasetNames(String projectId) throws BigQueryException {
+    Page<Dataset> datasets =
+        bigQuery.listDatasets(projectId, BigQuery.DatasetListOption.pageSize(DATASET_FETCH_SIZE));
+
+    return StreamSupport.stream(datasets.iterateAll().spliterator(), /* parallel= */ false)
+        .map(dataset -> dataset.getDatasetId().getDataset())
+        .collect(Collectors.toList());
+  }
+
   public BigQueryOptions getBigQueryOptions() {
     return bigQuery.getOptions();
   }
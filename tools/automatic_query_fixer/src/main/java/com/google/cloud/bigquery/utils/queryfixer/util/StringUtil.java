@@ -77,6 +77,68 @@ public class StringUtil {
     return dp[len1][len2];
   }
 
+  /**
+   * Compute the edit distance between two words, but stop as soon as it is known to exceed a bound.
+   * Only the cells within the band of width 2 * maxDistance + 1 around the diagonal are computed,
+   * so the cost is O(maxDistance * length) instead of O(length^2).
+   *
+   * @param word1 the first word
+   * @param word2 the second word
+   * @param maxDistance the largest distance of interest
+   * @return the edit distance, or maxDistance + 1 if the distance is larger than maxDistance.
+   */
+  public static int boundedEditDistance(String word1, String word2, int maxDistance) {
+    int len1 = word1.length();
+    int len2 = word2.length();
+    int exceeded = maxDistance + 1;
+    if (Math.abs(len1 - len2) > maxDistance) {
+      return exceeded;
+    }
+
+    // Two rows are enough, because each row only depends on the previous one. Cells outside the
+    // band are treated as exceeded.
+    int[] previous = new int[len2 + 1];
+    int[] current = new int[len2 + 1];
+    for (int j = 0; j <= len2; j++) {
+      previous[j] = j <= maxDistance ? j : exceeded;
+    }
+
+    for (int i = 1; i <= len1; i++) {
+      int from = Math.max(1, i - maxDistance);
+      int to = Math.min(len2, i + maxDistance);
+      current[0] = i <= maxDistance ? i : exceeded;
+      if (from > 1) {
+        current[from - 1] = exceeded;
+      }
+
+      int rowMin = current[0];
+      char c1 = word1.charAt(i - 1);
+      for (int j = from; j <= to; j++) {
+        int distance;
+        if (c1 == word2.charAt(j - 1)) {
+          distance = previous[j - 1];
+        } else {
+          distance = Math.min(previous[j - 1], Math.min(previous[j], current[j - 1])) + 1;
+        }
+        current[j] = Math.min(distance, exceeded);
+        rowMin = Math.min(rowMin, current[j]);
+      }
+      if (to < len2) {
+        current[to + 1] = exceeded;
+      }
+
+      if (rowMin > maxDistance) {
+        return exceeded;
+      }
+
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+
+    return previous[len2];
+  }
+
   /**
    * Replace a substring of a string to a new one. the replacing range is replaced as [startIndex,
    * endIndex), * i.e. the endIndex is excluded.
@@ -0,0 +1,165 @@
+package com.google.cloud.bigquery.utils.queryfixer;
+
+import com.google.cloud.bigquery.BigQueryError;
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.JobInfo;
+import com.google.cloud.bigquery.utils.queryfixer.entity.FixResult;
+import com.google.cloud.bigquery.utils.queryfixer.errors.SqlErrorFactory;
+import com.google.cloud.bigquery.utils.queryfixer.fixer.FixerFactory;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.TableUsageHistory;
+import com.google.cloud.bigquery.utils.queryfixer.replay.FixSession;
+import com.google.cloud.bigquery.utils.queryfixer.replay.FixSessionLog;
+import com.google.cloud.bigquery.utils.queryfixer.replay.FixSessionRecorder;
+import com.google.cloud.bigquery.utils.queryfixer.replay.FixSessionReplayer;
+import com.google.cloud.bigquery.utils.queryfixer.replay.ReplayBigQueryService;
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+import com.google.cloud.bigquery.utils.queryfixer.tokenizer.CalciteTokenizer;
+import com.google.cloud.bigquery.utils.queryfixer.tokenizer.QueryTokenProcessor;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.when;
+
+public class FixSessionReplayTest {
+
+  private static final String PROJECT = "bigquery-public-data";
+  private static final String QUERY =
+      "Select foo from `bigquery-public-data.mock.survey_2017` limit 10";
+  private static final String TABLE_NOT_FOUND =
+      "Not found: Table bigquery-public-data:mock.survey_2017 was not found in location US";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Mock private BigQueryService bigQueryServiceMock;
+
+  private final Function<BigQueryService, FixerFactory> fixerFactoryProvider =
+      service ->
+          new FixerFactory(
+              new QueryTokenProcessor(new CalciteTokenizer(new BigQueryParserFactory())), service);
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    when(bigQueryServiceMock.getBigQueryOptions())
+        .thenReturn(BigQueryOptions.newBuilder().setProjectId(PROJECT).build());
+    when(bigQueryServiceMock.catchExceptionFromDryRun(any(String.class)))
+        .thenReturn(
+            new BigQueryException(
+                400, TABLE_NOT_FOUND, new BigQueryError("", "", TABLE_NOT_FOUND)));
+    when(bigQueryServiceMock.dryRun(any(String.class)))
+        .thenThrow(
+            new BigQueryException(
+                400, TABLE_NOT_FOUND, new BigQueryError("", "", TABLE_NOT_FOUND)));
+    when(bigQueryServiceMock.listTableNames(PROJECT, "mock"))
+        .thenReturn(ImmutableList.of("survey_2018", "survey_2019"));
+  }
+
+  @Test
+  public void recordAndReplay() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("sessions.log");
+    String sessionId;
+    try (FixSessionLog log = new FixSessionLog(path)) {
+      FixSessionRecorder recorder =
+          new FixSessionRecorder(
+              bigQueryServiceMock, fixerFactoryProvider, new SqlErrorFactory(), log);
+      FixSessionRecorder.RecordedFix recorded = recorder.fixAndRecord(QUERY);
+      assertEquals(FixResult.Status.ERROR_FIXED, recorded.getResult().getStatus());
+      sessionId = recorded.getSessionId();
+      recorder.recordChoice(recorded, 1);
+    }
+
+    List<FixSession> sessions = FixSessionLog.readAll(path);
+    assertEquals(1, sessions.size());
+    FixSession session = sessions.get(0);
+    assertEquals(sessionId, session.getId());
+    assertEquals(TABLE_NOT_FOUND, session.getDryRunError());
+    assertEquals(2, session.getOptions().size());
+    assertEquals(1, session.getChosenOption());
+    assertEquals(
+        ImmutableList.of("survey_2018", "survey_2019"),
+        session.getMetadata().get(FixSession.tablesKey(PROJECT, "mock")));
+
+    FixSessionReplayer.Report report =
+        new FixSessionReplayer(fixerFactoryProvider, new SqlErrorFactory()).replay(sessions, 3);
+    assertEquals(1, report.getResults().size());
+    assertEquals(0, report.countMismatches());
+    assertTrue(report.totalReplayedNanos() > 0);
+  }
+
+  @Test
+  public void recordChoice_updatesUsageHistory() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("sessions.log");
+    TableUsageHistory usageHistory = new TableUsageHistory();
+    try (FixSessionLog log = new FixSessionLog(path)) {
+      FixSessionRecorder recorder =
+          new FixSessionRecorder(
+              bigQueryServiceMock,
+              service ->
+                  new FixerFactory(
+                      new QueryTokenProcessor(new CalciteTokenizer(new BigQueryParserFactory())),
+                      service,
+                      usageHistory),
+              new SqlErrorFactory(),
+              log,
+              usageHistory);
+      FixSessionRecorder.RecordedFix recorded = recorder.fixAndRecord(QUERY);
+      assertEquals(
+          "bigquery-public-data.mock.survey_2018",
+          recorded.getResult().getOptions().get(0).getDescription());
+      recorder.recordChoice(recorded, 1);
+
+      // The chosen table is ranked first from now on.
+      recorded = recorder.fixAndRecord(QUERY);
+      assertEquals(
+          "bigquery-public-data.mock.survey_2019",
+          recorded.getResult().getOptions().get(0).getDescription());
+    }
+    assertTrue(usageHistory.getMillisSinceLastUse("bigquery-public-data.mock.survey_2019") >= 0);
+    assertEquals(-1, usageHistory.getMillisSinceLastUse("bigquery-public-data.mock.survey_2018"));
+  }
+
+  @Test
+  public void replayService_replaysDryRun() {
+    FixSession session =
+        FixSession.builder().projectId(PROJECT).query(QUERY).dryRunError(TABLE_NOT_FOUND).build();
+    ReplayBigQueryService service = new ReplayBigQueryService(session);
+    assertEquals(TABLE_NOT_FOUND, service.catchExceptionFromDryRun(QUERY).getMessage());
+    assertEquals(404, service.catchExceptionFromDryRun("select 1").getCode());
+
+    FixSession correctSession = session.toBuilder().dryRunError(null).build();
+    assertNull(new ReplayBigQueryService(correctSession).catchExceptionFromDryRun(QUERY));
+  }
+
+  @Test
+  public void readAll_ignoresTruncatedRecord() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("sessions.log");
+    try (FixSessionLog log = new FixSessionLog(path)) {
+      log.append(FixSession.builder().id("first").query("select 1").build());
+      log.append(FixSession.builder().id("second").query("select 2").build());
+    }
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(file.length() - 5);
+    }
+
+    List<FixSession> sessions = FixSessionLog.readAll(path);
+    assertEquals(1, sessions.size());
+    assertEquals("first", sessions.get(0).getId());
+    assertNull(sessions.get(0).getDryRunError());
+  }
+}
@@ -9,6 +9,9 @@ import com.google.cloud.bigquery.utils.queryfixer.errors.SqlErrorFactory;
 import com.google.cloud.bigquery.utils.queryfixer.fixer.FixerFactory;
 import com.google.cloud.bigquery.utils.queryfixer.fixer.IFixer;
 import com.google.cloud.bigquery.utils.queryfixer.fixer.TableNotFoundFixer;
+import com.google.cloud.bigquery.utils.queryfixer.index.TableNameIndex;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.CandidateScorer;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.TableUsageHistory;
 import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
 import com.google.cloud.bigquery.utils.queryfixer.tokenizer.CalciteTokenizer;
 import com.google.cloud.bigquery.utils.queryfixer.tokenizer.QueryTokenProcessor;
@@ -18,6 +21,7 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -64,16 +68,194 @@ public class FixerTest {
     assertTrue(fixer instanceof TableNotFoundFixer);
 
     FixResult result = fixer.fix();
-    assertEquals(2, result.getOptions().size());
+    assertEquals(3, result.getOptions().size());
     List<String> tables =
         result.getOptions().stream().map(FixOption::getDescription).collect(Collectors.toList());
 
-    assertThat(tables, contains(fullMockTable(TABLE_2018), fullMockTable(TABLE_2019)));
+    // The options are ranked by their similarity, not only the ties at the minimum distance.
+    assertThat(
+        tables,
+        contains(
+            fullMockTable(TABLE_2018), fullMockTable(TABLE_2019), fullMockTable(TABLE_2020)));
 
     assertEquals(1, result.getErrorPosition().getRow());
     assertEquals(22, result.getErrorPosition().getColumn());
   }
 
+  @Test
+  public void fixTableNotFound_allOccurrences() {
+    setupBigQueryService_mockListTableNames();
+    String table = fullMockTable(TABLE_2017);
+    String query =
+        String.format(
+            "Select foo from `%1$s` where bar = '%1$s'\n"
+                + "union all select foo from `%1$s` t join `%1$s` on t.a = 1",
+            table);
+    String message =
+        String.format(
+            "Not found: Table bigquery-public-data:mock.%s was not found in location US",
+            TABLE_2017);
+    BigQuerySqlError error = buildError(message);
+
+    FixResult result = fixerFactory.getFixer(query, error).fix();
+    assertEquals(3, result.getOptions().size());
+    assertEquals(
+        String.format(
+            "Select foo from `%1$s` where bar = '%2$s'\n"
+                + "union all select foo from `%1$s` t join `%1$s` on t.a = 1",
+            fullMockTable(TABLE_2018), table),
+        result.getOptions().get(0).getFixedQuery());
+
+    assertEquals(1, result.getErrorPosition().getRow());
+    assertEquals(17, result.getErrorPosition().getColumn());
+  }
+
+  @Test
+  public void fixTableNotFound_dmlTargets() {
+    setupBigQueryService_mockListTableNames();
+    String table = fullMockTable(TABLE_2017);
+    String message =
+        String.format(
+            "Not found: Table bigquery-public-data:mock.%s was not found in location US",
+            TABLE_2017);
+
+    String update =
+        String.format("UPDATE `%1$s` SET foo = 1 WHERE bar IN (SELECT bar FROM `%1$s`)", table);
+    FixResult result = fixerFactory.getFixer(update, buildError(message)).fix();
+    assertEquals(FixResult.Status.ERROR_FIXED, result.getStatus());
+    assertEquals(
+        String.format(
+            "UPDATE `%1$s` SET foo = 1 WHERE bar IN (SELECT bar FROM `%1$s`)",
+            fullMockTable(TABLE_2018)),
+        result.getOptions().get(0).getFixedQuery());
+
+    String insert =
+        String.format(
+            "INSERT INTO `%s` (foo) SELECT foo FROM `%s`", table, fullMockTable(TABLE_2020));
+    result = fixerFactory.getFixer(insert, buildError(message)).fix();
+    assertEquals(
+        String.format(
+            "INSERT INTO `%s` (foo) SELECT foo FROM `%s`",
+            fullMockTable(TABLE_2018), fullMockTable(TABLE_2020)),
+        result.getOptions().get(0).getFixedQuery());
+    assertEquals(1, result.getErrorPosition().getRow());
+    assertEquals(13, result.getErrorPosition().getColumn());
+  }
+
+  @Test
+  public void fixTableNotFound_tableNotInQuery() {
+    setupBigQueryService_mockListTableNames();
+    String query = String.format("Select foo from `%s`", fullMockTable(TABLE_2018));
+    String message =
+        String.format(
+            "Not found: Table bigquery-public-data:mock.%s was not found in location US",
+            TABLE_2017);
+
+    FixResult result = fixerFactory.getFixer(query, buildError(message)).fix();
+    assertEquals(FixResult.Status.FAILURE, result.getStatus());
+  }
+
+  @Test
+  public void fixTableNotFound_incorrectDataset() {
+    when(bigQueryServiceMock.listTableNames("bigquery-public-data", "mok"))
+        .thenThrow(new BigQueryException(404, "Not found: Dataset bigquery-public-data:mok"));
+    when(bigQueryServiceMock.listDatasetNames("bigquery-public-data"))
+        .thenReturn(ImmutableList.of("mock", "samples"));
+    when(bigQueryServiceMock.listTableNames("bigquery-public-data", "mock"))
+        .thenReturn(ImmutableList.of(TABLE_2017, TABLE_2018));
+    when(bigQueryServiceMock.listTableNames("bigquery-public-data", "samples"))
+        .thenReturn(ImmutableList.of("shakespeare"));
+    QueryTokenProcessor tokenProcessor =
+        new QueryTokenProcessor(new CalciteTokenizer(new BigQueryParserFactory()));
+    FixerFactory indexedFixerFactory =
+        new FixerFactory(
+            tokenProcessor,
+            bigQueryServiceMock,
+            new TableIdentifierLocator(new BigQueryParserFactory()),
+            new TableNameIndex(),
+            CandidateScorer.defaultScorer());
+
+    String query = "Select foo from `bigquery-public-data.mok.survey_2017`";
+    BigQuerySqlError error =
+        buildError(
+            "Not found: Table bigquery-public-data:mok.survey_2017 was not found in location US");
+
+    FixResult result = indexedFixerFactory.getFixer(query, error).fix();
+    assertEquals(2, result.getOptions().size());
+    assertEquals(fullMockTable(TABLE_2017), result.getOptions().get(0).getDescription());
+    assertEquals(
+        "Select foo from `bigquery-public-data.mock.survey_2017`",
+        result.getOptions().get(0).getFixedQuery());
+  }
+
+  @Test
+  public void fixTableNotFound_suggestionRanksFirst() {
+    setupBigQueryService_mockListTableNames();
+    String query = String.format("Select foo from `%s`", fullMockTable(TABLE_2017));
+    String message =
+        String.format(
+            "Not found: Table bigquery-public-data:mock.%s was not found in location US; "
+                + "Did you mean bigquery-public-data:mock.%s?",
+            TABLE_2017, TABLE_2020);
+    BigQuerySqlError error = buildError(message);
+
+    FixResult result = fixerFactory.getFixer(query, error).fix();
+    assertEquals(fullMockTable(TABLE_2020), result.getOptions().get(0).getDescription());
+  }
+
+  @Test
+  public void fixTableNotFound_recentlyUsedRanksFirst() {
+    setupBigQueryService_mockListTableNames();
+    TableUsageHistory usageHistory = new TableUsageHistory();
+    usageHistory.recordUse(fullMockTable(TABLE_2019));
+    FixerFactory historyFixerFactory =
+        new FixerFactory(
+            new QueryTokenProcessor(new CalciteTokenizer(new BigQueryParserFactory())),
+            bigQueryServiceMock,
+            usageHistory);
+    String query = String.format("Select foo from `%s`", fullMockTable(TABLE_2017));
+    BigQuerySqlError error =
+        buildError(
+            String.format(
+                "Not found: Table bigquery-public-data:mock.%s was not found in location US",
+                TABLE_2017));
+
+    FixResult result = historyFixerFactory.getFixer(query, error).fix();
+    assertEquals(fullMockTable(TABLE_2019), result.getOptions().get(0).getDescription());
+  }
+
+  @Test
+  public void fixTableNotFound_indexSkipsOwnDataset() {
+    // The own dataset holds more similar tables than the index returns, but they do not take the
+    // place of the suggested table in another dataset.
+    List<String> tables = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      tables.add("survey_x" + i);
+    }
+    when(bigQueryServiceMock.listTableNames("bigquery-public-data", "mock")).thenReturn(tables);
+    when(bigQueryServiceMock.listDatasetNames("bigquery-public-data"))
+        .thenReturn(ImmutableList.of("mock", "mocks"));
+    when(bigQueryServiceMock.listTableNames("bigquery-public-data", "mocks"))
+        .thenReturn(ImmutableList.of("survey_y"));
+    FixerFactory indexedFixerFactory =
+        new FixerFactory(
+            new QueryTokenProcessor(new CalciteTokenizer(new BigQueryParserFactory())),
+            bigQueryServiceMock,
+            new TableIdentifierLocator(new BigQueryParserFactory()),
+            new TableNameIndex(),
+            CandidateScorer.defaultScorer());
+
+    String query = "Select foo from `bigquery-public-data.mock.survey_x`";
+    BigQuerySqlError error =
+        buildError(
+            "Not found: Table bigquery-public-data:mock.survey_x was not found in location US; "
+                + "Did you mean bigquery-public-data:mocks.survey_y?");
+
+    FixResult result = indexedFixerFactory.getFixer(query, error).fix();
+    assertEquals(
+        "bigquery-public-data.mocks.survey_y", result.getOptions().get(0).getDescription());
+  }
+
   private String fullMockTable(String table) {
     return "bigquery-public-data.mock." + table;
   }
@@ -12,6 +12,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class SqlErrorFactoryTest {
@@ -30,6 +31,19 @@ public class SqlErrorFactoryTest {
     BigQueryException exception = buildException(message);
     BigQuerySqlError sqlError = factory.getError(exception);
     assertTrue(sqlError instanceof TableNotFoundError);
+    assertFalse(((TableNotFoundError) sqlError).hasSuggestion());
+  }
+
+  @Test
+  public void getTableNotFoundError_withSuggestion() {
+    String message =
+        "Not found: Table bigquery-public-data:austin_311.311_servce_requests was not found in "
+            + "location US; Did you mean bigquery-public-data:austin_311.311_service_requests?";
+    BigQueryException exception = buildException(message);
+    TableNotFoundError sqlError = (TableNotFoundError) factory.getError(exception);
+    assertEquals("bigquery-public-data:austin_311.311_servce_requests", sqlError.getTableName());
+    assertEquals(
+        "bigquery-public-data:austin_311.311_service_requests", sqlError.getSuggestion());
   }
 
   @Test
@@ -27,6 +27,16 @@ public class StringUtilTest {
         contains("google", "GooGle", "oogle", "Googe", "Gooogle", "Gogle"));
   }
 
+  @Test
+  public void testBoundedEditDistance() {
+    assertEquals(0, StringUtil.boundedEditDistance("Google", "Google", 2));
+    assertEquals(1, StringUtil.boundedEditDistance("Google", "Gogle", 2));
+    assertEquals(2, StringUtil.boundedEditDistance("Google", "oGogle", 2));
+    assertEquals(3, StringUtil.boundedEditDistance("Google", "Happy", 2));
+    assertEquals(3, StringUtil.boundedEditDistance("Google", "Google Cloud", 2));
+    assertEquals(3, StringUtil.boundedEditDistance("kitten", "sitting", 4));
+  }
+
   @Test
   public void testReplacingString() {
     String string = "Hello World!";
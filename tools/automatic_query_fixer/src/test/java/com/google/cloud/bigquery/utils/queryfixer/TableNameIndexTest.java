@@ -0,0 +1,116 @@
+package com.google.cloud.bigquery.utils.queryfixer;
+
+import com.google.cloud.bigquery.utils.queryfixer.index.TableNameIndex;
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TableNameIndexTest {
+
+  private static final String PROJECT = "bigquery-public-data";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Mock private BigQueryService bigQueryServiceMock;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  public void search_acrossDatasets() {
+    TableNameIndex index = buildIndex();
+
+    List<TableNameIndex.Candidate> candidates =
+        index.search(PROJECT + ".austin_31.311_requests", /* maxDistance= */ 3, /* limit= */ 5);
+    assertThat(
+        toNames(candidates),
+        contains(PROJECT + ".austin_311.311_requests", PROJECT + ".austin_311.311_request"));
+    assertEquals(1, candidates.get(0).getDistance());
+    assertEquals(2, candidates.get(1).getDistance());
+  }
+
+  @Test
+  public void search_respectsDistanceAndLimit() {
+    TableNameIndex index = buildIndex();
+
+    assertTrue(index.search(PROJECT + ".unknown.table", 3, 5).isEmpty());
+    assertEquals(1, index.search(PROJECT + ".austin_31.311_requests", 3, 1).size());
+  }
+
+  @Test
+  public void search_skipsExcludedPrefixBeforeLimit() {
+    TableNameIndex index = buildIndex();
+
+    List<TableNameIndex.Candidate> candidates =
+        index.search(
+            PROJECT + ".austin_31.311_requests",
+            /* maxDistance= */ 3,
+            /* limit= */ 1,
+            /* excludedPrefix= */ PROJECT + ".austin_311.311_requests");
+    assertThat(toNames(candidates), contains(PROJECT + ".austin_311.311_request"));
+  }
+
+  @Test
+  public void saveAndLoad() throws IOException {
+    TableNameIndex index = buildIndex();
+    Path path = folder.getRoot().toPath().resolve("tables.idx");
+    index.save(path);
+
+    TableNameIndex loaded = TableNameIndex.load(path);
+    assertEquals(index.size(), loaded.size());
+    assertTrue(loaded.isDatasetIndexed(PROJECT, "samples"));
+    assertThat(
+        toNames(loaded.search(PROJECT + ".sample.shakespeare", 2, 5)),
+        contains(PROJECT + ".samples.shakespeare"));
+  }
+
+  @Test
+  public void refresh_onlyListsNewDatasets() {
+    TableNameIndex index = new TableNameIndex();
+    index.addDataset(PROJECT, "samples", ImmutableList.of("shakespeare"));
+    when(bigQueryServiceMock.listDatasetNames(PROJECT))
+        .thenReturn(ImmutableList.of("samples", "austin_311"));
+    when(bigQueryServiceMock.listTableNames(PROJECT, "austin_311"))
+        .thenReturn(ImmutableList.of("311_request"));
+
+    index.refresh(bigQueryServiceMock, PROJECT);
+    index.refresh(bigQueryServiceMock, PROJECT);
+
+    assertEquals(2, index.size());
+    verify(bigQueryServiceMock, times(1)).listDatasetNames(PROJECT);
+    verify(bigQueryServiceMock, times(0)).listTableNames(PROJECT, "samples");
+  }
+
+  private TableNameIndex buildIndex() {
+    TableNameIndex index = new TableNameIndex();
+    index.addDataset(PROJECT, "austin_311", ImmutableList.of("311_request", "311_requests"));
+    index.addDataset(PROJECT, "samples", ImmutableList.of("shakespeare", "natality", "wikipedia"));
+    return index;
+  }
+
+  private List<String> toNames(List<TableNameIndex.Candidate> candidates) {
+    return candidates.stream()
+        .map(TableNameIndex.Candidate::getTableName)
+        .collect(Collectors.toList());
+  }
+}
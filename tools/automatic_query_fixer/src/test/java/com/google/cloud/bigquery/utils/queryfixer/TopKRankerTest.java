@@ -0,0 +1,74 @@
+package com.google.cloud.bigquery.utils.queryfixer;
+
+import com.google.cloud.bigquery.utils.queryfixer.ranker.CandidateScorer;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.FixCandidate;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.TableUsageHistory;
+import com.google.cloud.bigquery.utils.queryfixer.ranker.TopKRanker;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.junit.Assert.assertTrue;
+
+public class TopKRankerTest {
+
+  @Test
+  public void keepsBestKInOrder() {
+    TopKRanker<String> ranker = new TopKRanker<>(3, CandidateScorer.defaultScorer());
+    int[] distances = {4, 1, 3, 1, 2, 5};
+    for (int i = 0; i < distances.length; i++) {
+      offer(ranker, "t" + i, distances[i], FixCandidate.Locality.SAME_DATASET, false);
+    }
+    // t1 and t3 have the same score, so the earlier one ranks first.
+    assertThat(ranker.getTopK(), contains("t1", "t3", "t4"));
+  }
+
+  @Test
+  public void localityAndSuggestionBreakCloseDistances() {
+    TopKRanker<String> ranker = new TopKRanker<>(3, CandidateScorer.defaultScorer());
+    offer(ranker, "other", 1, FixCandidate.Locality.OTHER, false);
+    offer(ranker, "dataset", 1, FixCandidate.Locality.SAME_DATASET, false);
+    offer(ranker, "suggested", 2, FixCandidate.Locality.OTHER, true);
+    assertThat(ranker.getTopK(), contains("suggested", "dataset", "other"));
+  }
+
+  @Test
+  public void recentlyUsedRanksHigher() {
+    Clock clock = Clock.fixed(Instant.ofEpochMilli(1_000_000), ZoneOffset.UTC);
+    TableUsageHistory history = new TableUsageHistory(clock);
+    history.recordUse("recent");
+    CandidateScorer scorer = CandidateScorer.builder().usageHistory(history).build();
+
+    TopKRanker<String> ranker = new TopKRanker<>(2, scorer);
+    offer(ranker, "unused", 1, FixCandidate.Locality.SAME_DATASET, false);
+    offer(ranker, "recent", 1, FixCandidate.Locality.SAME_DATASET, false);
+    assertThat(ranker.getTopK(), contains("recent", "unused"));
+  }
+
+  @Test
+  public void emptyRanker() {
+    TopKRanker<String> ranker = new TopKRanker<>(1, CandidateScorer.defaultScorer());
+    assertTrue(ranker.isEmpty());
+    assertTrue(ranker.getTopK().isEmpty());
+  }
+
+  private void offer(
+      TopKRanker<String> ranker,
+      String identifier,
+      int distance,
+      FixCandidate.Locality locality,
+      boolean suggested) {
+    ranker.offer(
+        identifier,
+        FixCandidate.builder()
+            .identifier(identifier)
+            .editDistance(distance)
+            .locality(locality)
+            .suggestedByBigQuery(suggested)
+            .build());
+  }
+}
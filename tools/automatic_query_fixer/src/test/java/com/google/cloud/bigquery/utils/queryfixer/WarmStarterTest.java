@@ -0,0 +1,63 @@
+package com.google.cloud.bigquery.utils.queryfixer;
+
+import com.google.cloud.bigquery.utils.queryfixer.service.BigQueryService;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WarmStarterTest {
+
+  @Test
+  public void warmStart_providesParserAndService() throws SqlParseException {
+    WarmStarter warmStarter = new WarmStarter().start("");
+
+    BigQueryParserFactory factory = warmStarter.getParserFactory();
+    assertEquals(SqlKind.SELECT, factory.getParser("select a from b").parseQuery().getKind());
+    assertNotNull(warmStarter.getBigQueryService());
+  }
+
+  @Test
+  public void warmStart_recordsMetricsOnce() {
+    WarmStarter warmStarter = new WarmStarter().start("");
+    warmStarter.getParserFactory();
+    warmStarter.getBigQueryService();
+
+    WarmStarter.Metrics metrics = warmStarter.recordFirstResult();
+    assertTrue(metrics.getParserReadyMillis() >= 0);
+    assertTrue(metrics.getServiceReadyMillis() >= 0);
+    assertTrue(metrics.getTimeToFirstResultMillis() >= metrics.getParserReadyMillis());
+    assertSame(metrics, warmStarter.recordFirstResult());
+  }
+
+  @Test
+  public void warmStart_rethrowsServiceFailure() {
+    WarmStarter warmStarter =
+        new WarmStarter()
+            .start(
+                () -> {
+                  throw new IllegalArgumentException("bad project");
+                });
+    try {
+      warmStarter.getBigQueryService();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("bad project", e.getMessage());
+    }
+  }
+
+  @Test
+  public void notStarted_throwsException() {
+    try {
+      new WarmStarter().getParserFactory();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("The warm starter has not been started.", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.google.bigquery;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks a single call to the parser of each dialect: parseQuery on the query
+ * of the corpus without its errors and with them (which fails at the first one), and validate,
+ * which the search calls, on the query with its errors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalciteParserBenchmark {
+  @Param({"core", "babel"})
+  public String dialect;
+
+  private CalciteParser parser;
+
+  @Setup(Level.Trial)
+  public void createParser() {
+    parser = CalciteParser.of(ParserDialect.fromName(dialect));
+  }
+
+  @Benchmark
+  public String parseQueryClean(CorpusState state) throws SqlParseException {
+    return parser.parseQuery(state.corpus.getCleanQuery());
+  }
+
+  @Benchmark
+  public Object parseQueryWithErrors(CorpusState state) {
+    try {
+      return parser.parseQuery(state.corpus.getQuery());
+    } catch (SqlParseException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public ParseResult validateWithErrors(CorpusState state) {
+    return parser.validate(state.corpus.getQuery());
+  }
+}
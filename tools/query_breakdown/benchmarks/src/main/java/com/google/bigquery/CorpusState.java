@@ -0,0 +1,42 @@
+package com.google.bigquery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * This class holds the corpus the benchmarks run on, generated for each number of errors and
+ * spacing (see ErrorCorpus), along with a file holding its query and the LocationTracker of
+ * its query. Both parameters can be changed from the command line, e.g. -p errors=1,64.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+  @Param({"1", "4", "16"})
+  public int errors;
+
+  @Param({"0", "4", "16"})
+  public int spacing;
+
+  public ErrorCorpus corpus;
+  public Path file;
+  public LocationTracker tracker;
+
+  @Setup(Level.Trial)
+  public void generate() throws IOException {
+    corpus = ErrorCorpus.generate(errors, spacing);
+    file = Files.createTempFile("corpus", ".sql");
+    corpus.writeTo(file);
+    tracker = LocationTracker.fromQuery(corpus.getQuery());
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+}
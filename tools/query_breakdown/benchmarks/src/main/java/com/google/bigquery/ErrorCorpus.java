@@ -0,0 +1,114 @@
+package com.google.bigquery;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This class generates the queries the benchmarks run on: a script of one statement per line in
+ * which a given number of errors are injected, each one separated from the next by a given
+ * number of statements without errors. The corpus is deterministic, so that the runs of two
+ * versions of the tool can be compared.
+ *
+ * Each error is a BLAH token, which deleting recovers from, put either in front of a statement
+ * or between GROUP and BY, in turn. The statements each read a different table, so that no two
+ * intermediate queries of the search are the same by accident. The corpus also gives the query
+ * without the injected tokens and the positions of the errors, which are the unparseable
+ * components the breakdown should find.
+ */
+public class ErrorCorpus {
+  // the token injected for each error
+  public static final String ERROR_TOKEN = "BLAH";
+
+  private final String query;
+  private final String cleanQuery;
+  private final int errorCount;
+  private final int spacing;
+
+  // the line, start column and end column of each error, in the order of the query
+  private final int[][] errors;
+
+  private ErrorCorpus(String query, String cleanQuery, int errorCount, int spacing,
+      int[][] errors) {
+    this.query = query;
+    this.cleanQuery = cleanQuery;
+    this.errorCount = errorCount;
+    this.spacing = spacing;
+    this.errors = errors;
+  }
+
+  /**
+   * Generates a corpus with the given number of errors, each one preceded by the given number
+   * of statements without errors. A corpus without errors holds a single statement if the
+   * spacing is 0.
+   */
+  public static ErrorCorpus generate(int errorCount, int spacing) {
+    if (errorCount < 0 || spacing < 0) {
+      throw new IllegalArgumentException("the number of errors and the spacing cannot be "
+          + "negative: " + errorCount + ", " + spacing);
+    }
+    int statementCount = Math.max(errorCount * (spacing + 1), spacing);
+    statementCount = Math.max(statementCount, 1);
+    StringBuilder query = new StringBuilder();
+    StringBuilder cleanQuery = new StringBuilder();
+    int[][] errors = new int[errorCount][];
+    for (int i = 0; i < statementCount; i++) {
+      String clean = "SELECT c" + i + ", d" + i + " FROM t" + i + " WHERE c" + i + " > " + i
+          + " GROUP BY c" + i + ", d" + i;
+      String statement = clean;
+      if (i % (spacing + 1) == spacing && i / (spacing + 1) < errorCount) {
+        int error = i / (spacing + 1);
+        int column = (error % 2 == 0) ? 0 : clean.indexOf("BY");
+        statement = clean.substring(0, column) + ERROR_TOKEN + " " + clean.substring(column);
+        errors[error] = new int[] {i + 1, column + 1, column + ERROR_TOKEN.length()};
+      }
+      String separator = (i == statementCount - 1) ? "" : ";\n";
+      query.append(statement).append(separator);
+      cleanQuery.append(clean).append(separator);
+    }
+    return new ErrorCorpus(query.toString(), cleanQuery.toString(), errorCount, spacing,
+        errors);
+  }
+
+  /**
+   * Writes the query of the corpus to the given file
+   */
+  public void writeTo(Path file) throws IOException {
+    Files.write(file, query.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Getters for the queries of the corpus
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  public String getCleanQuery() {
+    return cleanQuery;
+  }
+
+  public int getErrorCount() {
+    return errorCount;
+  }
+
+  public int getSpacing() {
+    return spacing;
+  }
+
+  /**
+   * Getters for the position of the error with the given index, in the order of the query
+   */
+  public int getErrorLine(int error) {
+    return errors[error][0];
+  }
+
+  public int getErrorStartColumn(int error) {
+    return errors[error][1];
+  }
+
+  public int getErrorEndColumn(int error) {
+    return errors[error][2];
+  }
+}
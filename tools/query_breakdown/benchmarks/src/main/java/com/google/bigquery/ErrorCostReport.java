@@ -0,0 +1,76 @@
+package com.google.bigquery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class prints the cost of each error found by the breakdown of the corpora of the
+ * benchmarks: the parser calls and the wall time per error, for every number of errors and
+ * spacing. The parser calls do not depend on the machine, so they compare two versions of the
+ * search exactly, while the benchmarks measure the time more carefully.
+ *
+ * Usage: java -cp target/benchmarks.jar com.google.bigquery.ErrorCostReport
+ *        [ERRORS] [SPACINGS] [STRATEGY] [DIALECT] [BEAM]
+ * where ERRORS and SPACINGS are comma-separated lists (1,2,4,8 and 0,4,16 by default), STRATEGY
+ * is dfs (the default) or best-first, DIALECT is a ParserDialect name (core by default) and BEAM
+ * is the number of replacements tried for each error (0, deletion only, by default).
+ */
+public class ErrorCostReport {
+  // the runs of each corpus before the measured ones, so that the parser is compiled
+  private static final int WARMUP_RUNS = 5;
+  private static final int MEASURED_RUNS = 10;
+
+  public static void main(String[] args) {
+    int[] errorCounts = parseList(args.length > 0 ? args[0] : "1,2,4,8");
+    int[] spacings = parseList(args.length > 1 ? args[1] : "0,4,16");
+    SearchStrategy strategy = SearchStrategy.fromName(args.length > 2 ? args[2] : "dfs");
+    CalciteParser parser = CalciteParser.of(
+        ParserDialect.fromName(args.length > 3 ? args[3] : "core"));
+    RecoveryOptions recoveries = new RecoveryOptions(
+        Integer.parseInt(args.length > 4 ? args[4] : "0"), 0, false);
+
+    System.out.println("errors\tspacing\tfound\tparseCalls\tparseCalls/error\tms/error");
+    for (int errorCount : errorCounts) {
+      for (int spacing : spacings) {
+        ErrorCorpus corpus = ErrorCorpus.generate(errorCount, spacing);
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+          breakdown(new QueryBreakdown(parser, strategy, 1, false, recoveries), corpus);
+        }
+        QueryBreakdown qb = null;
+        int found = 0;
+        long[] nanos = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+          long startNanos = System.nanoTime();
+          qb = new QueryBreakdown(parser, strategy, 1, false, recoveries);
+          found = breakdown(qb, corpus).size();
+          nanos[i] = System.nanoTime() - startNanos;
+        }
+
+        // the median run, and the errors found rather than injected, which a search could miss
+        Arrays.sort(nanos);
+        int perError = Math.max(found, 1);
+        System.out.printf("%d\t%d\t%d\t%d\t%.1f\t%.3f%n", errorCount, spacing, found,
+            qb.getParseCalls(), (double) qb.getParseCalls() / perError,
+            nanos[MEASURED_RUNS / 2] / 1e6 / perError);
+      }
+    }
+  }
+
+  /**
+   * Breaks down the query of the corpus with the given QueryBreakdown, which should be new so
+   * that its memo table is empty, and returns the unparseable components found
+   */
+  private static ArrayList<UnparseableComponent> breakdown(QueryBreakdown qb,
+      ErrorCorpus corpus) {
+    return qb.search(corpus.getQuery(), SearchBudget.UNLIMITED,
+        LocationTracker.fromQuery(corpus.getQuery()));
+  }
+
+  private static int[] parseList(String list) {
+    ArrayList<Integer> values = new ArrayList<>();
+    for (String value : list.split(",")) {
+      values.add(Integer.parseInt(value.trim()));
+    }
+    return values.stream().mapToInt(Integer::intValue).toArray();
+  }
+}
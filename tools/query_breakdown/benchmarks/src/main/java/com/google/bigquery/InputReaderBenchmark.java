@@ -0,0 +1,40 @@
+package com.google.bigquery;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This class benchmarks the reading of the input: the whole file at once along with its
+ * LocationTracker, as a single query is read, and statement by statement, as the per-statement
+ * and batch modes read it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputReaderBenchmark {
+  @Benchmark
+  public LocationTracker readInput(CorpusState state, Blackhole blackhole) throws IOException {
+    InputReader reader = new InputReader();
+    blackhole.consume(reader.readInput(state.file.toString()));
+    return reader.getLocationTracker();
+  }
+
+  @Benchmark
+  public void readStatements(CorpusState state, Blackhole blackhole) throws IOException {
+    try (StatementSplitter splitter = new InputReader().readStatements(state.file.toString())) {
+      while (splitter.hasNext()) {
+        blackhole.consume(splitter.next());
+      }
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.google.bigquery;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks the LocationTracker: building it for the query, and deleting every
+ * error of the corpus from it, from the last one to the first one as the solution of the search
+ * is applied. The tracker of the corpus is left unchanged by the deletions, so each invocation
+ * starts from the same one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationTrackerBenchmark {
+  @Benchmark
+  public LocationTracker fromQuery(CorpusState state) {
+    return LocationTracker.fromQuery(state.corpus.getQuery());
+  }
+
+  @Benchmark
+  public LocationTracker delete(CorpusState state) {
+    ErrorCorpus corpus = state.corpus;
+    LocationTracker tracker = state.tracker;
+    for (int i = corpus.getErrorCount() - 1; i >= 0; i--) {
+      tracker = tracker.delete(corpus.getErrorLine(i), corpus.getErrorStartColumn(i),
+          corpus.getErrorEndColumn(i));
+    }
+    return tracker;
+  }
+}
@@ -0,0 +1,98 @@
+package com.google.bigquery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks the whole breakdown of the query of the corpus, as the command line
+ * runs it: QueryBreakdown.run with a new QueryBreakdown, whose memo table is empty, writing a
+ * report file.
+ *
+ * Besides the time per run, the errors of the corpus and the parser calls of the search are
+ * counted as operations (see ErrorCounters). In the average time mode, JMH reports them as the
+ * secondary results run:errors, the time per error, and run:parseCalls, the time per parser
+ * call, whose ratio is the number of parser calls per error. ErrorCostReport prints the parser
+ * calls per error directly.
+ *
+ * The search options are parameters too, e.g. -p strategy=dfs,best-first -p replacementBeam=3.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBreakdownBenchmark {
+  @Param({"dfs"})
+  public String strategy;
+
+  @Param({"0"})
+  public int replacementBeam;
+
+  @Param({"false"})
+  public boolean tokenRewriting;
+
+  @Param({"core"})
+  public String dialect;
+
+  private CalciteParser parser;
+  private SearchStrategy searchStrategy;
+  private RecoveryOptions recoveries;
+  private Path report;
+
+  /**
+   * The errors and the parser calls of the runs of an iteration
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class ErrorCounters {
+    public long errors;
+    public long parseCalls;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      errors = 0;
+      parseCalls = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void createBreakdown() throws IOException {
+    parser = CalciteParser.of(ParserDialect.fromName(dialect));
+    searchStrategy = SearchStrategy.fromName(strategy);
+    recoveries = new RecoveryOptions(replacementBeam, 0, false);
+    report = Files.createTempFile("breakdown", ".json");
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteReport() throws IOException {
+    Files.deleteIfExists(report);
+  }
+
+  @Benchmark
+  public QueryBreakdown run(CorpusState state, ErrorCounters counters) {
+    String query = state.corpus.getQuery();
+    QueryBreakdown qb = new QueryBreakdown(parser, searchStrategy, 1, tokenRewriting,
+        recoveries);
+    qb.run(query, report.toString(), SearchBudget.UNLIMITED, LocationTracker.fromQuery(query));
+    counters.errors += state.corpus.getErrorCount();
+    counters.parseCalls += qb.getParseCalls();
+    return qb;
+  }
+}
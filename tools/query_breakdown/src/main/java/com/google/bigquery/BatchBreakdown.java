@@ -0,0 +1,329 @@
+package com.google.bigquery;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class breaks down a batch of files, such as a crawl of SQL scripts, into a single report.
+ * The files are handled by a bounded pool of workers, one file per worker at a time, and the
+ * statements of a file are broken down one after the other (see StatementBreakdown). Each file
+ * has its own time budget, which its statements share, while the parser call and error limits
+ * apply to the search of each statement.
+ *
+ * The records of a file are written to the report together as soon as the file is done, so the
+ * report is streamed in the order in which the files complete. Progress is printed on the given
+ * stream (stderr for the tool) at most once a second, followed by the throughput of the batch
+ * and its slowest files.
+ */
+public class BatchBreakdown {
+  // number of files submitted per worker before waiting for one to complete
+  private static final int FILES_IN_FLIGHT_PER_WORKER = 4;
+
+  // the slowest files listed once the batch is done, and how often progress is printed
+  private static final int SLOWEST_FILES = 5;
+  private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final StatementBreakdown statements;
+  private final SearchBudget budget;
+  private final long fileTimeLimitMillis;
+  private final int parallelism;
+  private final PrintStream progress;
+
+  // counters of the batch being run, guarded by the object
+  private int filesDone;
+  private int filesFailed;
+  private long statementsDone;
+  private long statementsUnparseable;
+  private long statementsTruncated;
+  private long startNanos;
+  private long lastProgressNanos;
+  private final PriorityQueue<FileTime> slowest;
+
+  /**
+   * Constructor for the class. The supplier creates the parser of each worker. The budget
+   * applies to the search of each statement, and the time limit (0 for none) to each file.
+   */
+  public BatchBreakdown(Supplier<Parser> parserSupplier, SearchStrategy strategy,
+      boolean tokenRewriting, RecoveryOptions recoveries, SearchBudget budget,
+      long fileTimeLimitMillis, int parallelism, PrintStream progress) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+    }
+    if (fileTimeLimitMillis < 0) {
+      throw new IllegalArgumentException("budgets must not be negative");
+    }
+    this.statements = new StatementBreakdown(parserSupplier, strategy, tokenRewriting,
+        recoveries, budget, 1);
+    this.budget = budget;
+    this.fileTimeLimitMillis = fileTimeLimitMillis;
+    this.parallelism = parallelism;
+    this.progress = progress;
+    this.slowest = new PriorityQueue<>(Comparator.comparingLong(FileTime::getNanos));
+  }
+
+  /**
+   * Returns the files given by a list of paths and glob patterns, sorted and without duplicates.
+   * A directory stands for all the files below it, and a pattern (such as crawl/**.sql) for the
+   * files below its leading directories that match it. Throws a NoSuchFileException if a path
+   * does not exist.
+   */
+  public static ArrayList<Path> expand(Collection<String> patterns) throws IOException {
+    TreeSet<Path> files = new TreeSet<>();
+    for (String pattern : patterns) {
+      int glob = firstGlobCharacter(pattern);
+      if (glob == -1) {
+        Path path = Paths.get(pattern);
+        if (!Files.exists(path)) {
+          throw new NoSuchFileException(pattern);
+        }
+        files.addAll(regularFiles(path, file -> true));
+        continue;
+      }
+
+      // walks the directories before the first segment holding a glob character
+      int separator = pattern.lastIndexOf('/', glob);
+      Path base = Paths.get((separator == -1) ? "" : pattern.substring(0, separator + 1));
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+      if (Files.isDirectory(base)) {
+        files.addAll(regularFiles(base, matcher::matches));
+      }
+    }
+    return new ArrayList<>(files);
+  }
+
+  /**
+   * Returns the regular files at or below the given path that the matcher accepts
+   */
+  private static List<Path> regularFiles(Path path, PathMatcher matcher) throws IOException {
+    try (Stream<Path> walk = Files.walk(path)) {
+      return walk.filter(Files::isRegularFile).filter(matcher::matches)
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static int firstGlobCharacter(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      if ("*?[{".indexOf(pattern.charAt(i)) != -1) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Breaks down the given files and writes the records of their statements to the report, with
+   * the path of the file as their source. A file that cannot be read is reported on the progress
+   * stream and skipped. Throws an UncheckedIOException if the report cannot be written.
+   */
+  public void run(List<Path> files, ReportWriter report) {
+    synchronized (this) {
+      filesDone = 0;
+      filesFailed = 0;
+      statementsDone = 0;
+      statementsUnparseable = 0;
+      statementsTruncated = 0;
+      startNanos = System.nanoTime();
+      lastProgressNanos = startNanos;
+      slowest.clear();
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    Semaphore inFlight = new Semaphore(parallelism * FILES_IN_FLIGHT_PER_WORKER);
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    try {
+      for (Path file : files) {
+        inFlight.acquire();
+        if (failure.get() != null) {
+          break;
+        }
+        pool.execute(() -> {
+          try {
+            breakdown(file, files.size(), report);
+          } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            inFlight.release();
+          }
+        });
+      }
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while breaking down the files", e);
+    } finally {
+      pool.shutdownNow();
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    printSummary();
+  }
+
+  /**
+   * Breaks down the statements of a file under its time budget, and writes their records
+   */
+  private void breakdown(Path file, int fileCount, ReportWriter report) {
+    long fileStartNanos = System.nanoTime();
+    ArrayList<StatementResult> results = new ArrayList<>();
+    try (StatementSplitter splitter = new InputReader().readStatements(file.toString())) {
+      while (splitter.hasNext()) {
+        results.add(statements.breakdown(splitter.next(), statementBudget(fileStartNanos)));
+      }
+    } catch (IOException | UncheckedIOException e) {
+      synchronized (this) {
+        filesFailed++;
+        progress.println("Could not read " + file + ": " + e.getMessage());
+      }
+      return;
+    }
+
+    try {
+      synchronized (report) {
+        for (StatementResult result : results) {
+          report.write(file.toString(), result);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    completed(file, results, System.nanoTime() - fileStartNanos, fileCount);
+  }
+
+  /**
+   * Returns the budget of the next statement of a file started at the given time: the budget of
+   * the batch, with the time left to the file. Once the file has used up its time, each of its
+   * remaining statements is still parsed, but its search stops right away.
+   */
+  private SearchBudget statementBudget(long fileStartNanos) {
+    if (fileTimeLimitMillis == 0) {
+      return budget;
+    }
+    long leftMillis = fileTimeLimitMillis
+        - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fileStartNanos);
+    return new SearchBudget(Math.max(1, leftMillis), budget.getParseCallLimit(),
+        budget.getNodeLimit());
+  }
+
+  /**
+   * Counts a file that is done, and prints the progress if it has not been printed for a while
+   */
+  private synchronized void completed(Path file, ArrayList<StatementResult> results,
+      long fileNanos, int fileCount) {
+    filesDone++;
+    for (StatementResult result : results) {
+      statementsDone++;
+      if (!result.isParseable()) {
+        statementsUnparseable++;
+      }
+      if (result.getTruncationMessage() != null) {
+        statementsTruncated++;
+      }
+    }
+    slowest.add(new FileTime(file, fileNanos));
+    if (slowest.size() > SLOWEST_FILES) {
+      slowest.poll();
+    }
+
+    long now = System.nanoTime();
+    if (now - lastProgressNanos >= PROGRESS_INTERVAL_NANOS) {
+      lastProgressNanos = now;
+      progress.println(String.format(Locale.ROOT, "Broke down %1$s of %2$s files "
+          + "(%3$s statements) in %4$.1f s, %5$.1f files/s", filesDone, fileCount,
+          statementsDone, seconds(now - startNanos), filesPerSecond(now)));
+    }
+  }
+
+  /**
+   * Prints the counts and the throughput of the batch, and its slowest files
+   */
+  private synchronized void printSummary() {
+    long now = System.nanoTime();
+    progress.println(String.format(Locale.ROOT, "Broke down %1$s files (%2$s statements, "
+        + "%3$s unparseable, %4$s truncated) in %5$.1f s, %6$.1f files/s%7$s", filesDone,
+        statementsDone, statementsUnparseable, statementsTruncated, seconds(now - startNanos),
+        filesPerSecond(now), (filesFailed > 0) ? "; " + filesFailed + " could not be read" : ""));
+    if (slowest.isEmpty()) {
+      return;
+    }
+    ArrayList<FileTime> files = new ArrayList<>(slowest);
+    files.sort(Comparator.comparingLong(FileTime::getNanos).reversed());
+    progress.println("Slowest files:");
+    for (FileTime file : files) {
+      progress.println(String.format(Locale.ROOT, "  %1$.3f s  %2$s",
+          seconds(file.getNanos()), file.getFile()));
+    }
+  }
+
+  private double filesPerSecond(long now) {
+    double seconds = seconds(now - startNanos);
+    return (seconds > 0) ? filesDone / seconds : 0;
+  }
+
+  private static double seconds(long nanos) {
+    return nanos / 1e9;
+  }
+
+  /**
+   * Getters for the counters of the last batch
+   */
+  public synchronized int getFilesDone() {
+    return filesDone;
+  }
+
+  public synchronized int getFilesFailed() {
+    return filesFailed;
+  }
+
+  public synchronized long getStatementsDone() {
+    return statementsDone;
+  }
+
+  public synchronized long getStatementsUnparseable() {
+    return statementsUnparseable;
+  }
+
+  /**
+   * This class holds the wall time a file took to be broken down
+   */
+  private static class FileTime {
+    private final Path file;
+    private final long nanos;
+
+    FileTime(Path file, long nanos) {
+      this.file = file;
+      this.nanos = nanos;
+    }
+
+    Path getFile() {
+      return file;
+    }
+
+    long getNanos() {
+      return nanos;
+    }
+  }
+}
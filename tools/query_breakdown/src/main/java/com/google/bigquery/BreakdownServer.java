@@ -0,0 +1,377 @@
+package com.google.bigquery;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * This class is a long-running breakdown server for editors, which speaks line-delimited JSON:
+ * each request is a JSON object on its own line, and each of them gets a single response line
+ * once it is done. The requests are
+ *
+ * {"id":1,"method":"breakdown","document":"file:///a.sql","version":3,"text":"SELECT ..."}
+ * {"id":2,"method":"cancel","document":"file:///a.sql"}
+ * {"id":3,"method":"shutdown"}
+ *
+ * A breakdown is answered with the records of the statements of the text, as in the JSON Lines
+ * report but without their source, or with a cancelled status:
+ *
+ * {"id":1,"document":"file:///a.sql","version":3,"status":"done","statements":[{...}]}
+ * {"id":1,"document":"file:///a.sql","version":3,"status":"cancelled"}
+ *
+ * The requests of different documents are broken down concurrently by a pool of workers, each
+ * with a parser that is created and warmed up when the server starts, so the cost of loading the
+ * parser is only paid once. Only the latest version of a document is worth breaking down: a
+ * newer breakdown of the same document (or a cancel request) cancels the one in progress, whose
+ * search stops at its next node, and a breakdown of an older version than the latest one is
+ * cancelled right away. A request without a version is newer than the ones before it.
+ *
+ * The breakdowns are incremental (see IncrementalBreakdown): a statement whose text was already
+ * broken down, in this document or another, is not broken down again, so a new version of a
+ * document only costs the breakdown of its edited statements. The records of the reused
+ * statements have no parser calls or explored nodes.
+ *
+ * Other responses only carry the id and the status ("done", or "error" along with an "error"
+ * message). The server stops at the end of its input or once it is shut down, after answering
+ * the requests in progress (the shutdown request is answered last).
+ */
+public class BreakdownServer {
+  // the query every worker parses before the server reads its first request
+  private static final String WARM_UP_QUERY = "SELECT a FROM A WHERE a = 1";
+
+  private final StatementBreakdown statements;
+  private final IncrementalBreakdown incremental;
+  private final SearchBudget budget;
+  private final int parallelism;
+
+  // the breakdown in progress of each document, and the latest version of each document, both
+  // guarded by the map of jobs
+  private final HashMap<String, Job> jobs;
+  private final HashMap<String, Long> versions;
+
+  /**
+   * Constructor for the class. The supplier creates the parser of each worker, and the budget
+   * applies to the search of each statement.
+   */
+  public BreakdownServer(Supplier<Parser> parserSupplier, SearchStrategy strategy,
+      boolean tokenRewriting, RecoveryOptions recoveries, SearchBudget budget,
+      int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+    }
+    this.statements = new StatementBreakdown(parserSupplier, strategy, tokenRewriting,
+        recoveries, budget, 1);
+    this.incremental = new IncrementalBreakdown(statements, IncrementalBreakdown.DEFAULT_CAPACITY);
+    this.budget = budget;
+    this.parallelism = parallelism;
+    this.jobs = new HashMap<>();
+    this.versions = new HashMap<>();
+  }
+
+  /**
+   * Reads the requests from the input and writes their responses to the output until the input
+   * ends or a shutdown request comes. Throws an IOException if the input cannot be read or the
+   * output cannot be written.
+   */
+  public void serve(BufferedReader in, Writer out) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    Responses responses = new Responses(out);
+    try {
+      warmUp(pool);
+      String line;
+      while ((line = in.readLine()) != null && !responses.isFailed()) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        if (!handle(line, pool, responses)) {
+          break;
+        }
+      }
+      // the requests in progress are answered before the server stops, and the shutdown
+      // request last
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      responses.stopped();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while serving", e);
+    } finally {
+      pool.shutdownNow();
+    }
+    responses.rethrow();
+  }
+
+  /**
+   * Makes every worker create its parser and parse a query, so that the parser classes are
+   * loaded and compiled before the first request. Each worker waits for the others, which makes
+   * sure that every one of them takes a warm-up task.
+   */
+  private void warmUp(ExecutorService pool) throws InterruptedException {
+    Statement statement = StatementSplitter.split(WARM_UP_QUERY).get(0);
+    CountDownLatch started = new CountDownLatch(parallelism);
+    CountDownLatch done = new CountDownLatch(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      pool.execute(() -> {
+        try {
+          started.countDown();
+          started.await();
+          statements.breakdown(statement);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+  }
+
+  /**
+   * Handles a request line. Returns false if the server should stop reading requests.
+   */
+  private boolean handle(String line, ExecutorService pool, Responses responses) {
+    Object id = null;
+    try {
+      Map<String, Object> request = JsonObjectParser.parse(line);
+      Object requestId = request.get("id");
+      if (requestId != null && !(requestId instanceof String) && !(requestId instanceof Long)) {
+        throw new IllegalArgumentException("the id must be a string or an integer");
+      }
+      id = requestId;
+      String method = stringMember(request, "method");
+      if ("shutdown".equals(method)) {
+        responses.shutdown(id);
+        return false;
+      }
+      if ("cancel".equals(method)) {
+        cancel(stringMember(request, "document"));
+        responses.status(id, "done");
+        return true;
+      }
+      if (!"breakdown".equals(method)) {
+        throw new IllegalArgumentException("unknown method: " + method);
+      }
+
+      Job job = new Job(id, stringMember(request, "document"), versionOf(request),
+          stringMember(request, "text"));
+      if (!submit(job)) {
+        responses.cancelled(job);
+        return true;
+      }
+      pool.execute(() -> run(job, responses));
+    } catch (IllegalArgumentException e) {
+      responses.error(id, e.getMessage());
+    }
+    return true;
+  }
+
+  /**
+   * Makes a job the breakdown in progress of its document and cancels the previous one. Returns
+   * false if the job is for an older version than a previous request, in which case it is not
+   * run.
+   */
+  private boolean submit(Job job) {
+    synchronized (jobs) {
+      if (job.version != null) {
+        Long latest = versions.get(job.document);
+        if (latest != null && job.version < latest) {
+          return false;
+        }
+        versions.put(job.document, job.version);
+      }
+      Job previous = jobs.put(job.document, job);
+      if (previous != null) {
+        previous.cancelled.set(true);
+      }
+      return true;
+    }
+  }
+
+  private void cancel(String document) {
+    synchronized (jobs) {
+      Job latest = jobs.remove(document);
+      if (latest != null) {
+        latest.cancelled.set(true);
+      }
+    }
+  }
+
+  /**
+   * Breaks down the statements of a job one after the other, until they are done or the job is
+   * cancelled, and answers it
+   */
+  private void run(Job job, Responses responses) {
+    try {
+      ArrayList<StatementResult> results = new ArrayList<>();
+      SearchBudget jobBudget = budget.withCancellation(job.cancelled);
+      for (Statement statement : StatementSplitter.split(job.text)) {
+        if (job.cancelled.get()) {
+          break;
+        }
+        results.add(incremental.breakdown(statement, jobBudget));
+      }
+      if (job.cancelled.get()) {
+        responses.cancelled(job);
+      }
+      else {
+        responses.done(job, results);
+      }
+    } catch (RuntimeException e) {
+      responses.error(job.id, "the breakdown failed: " + e);
+    } finally {
+      synchronized (jobs) {
+        jobs.remove(job.document, job);
+      }
+    }
+  }
+
+  private static String stringMember(Map<String, Object> request, String name) {
+    Object value = request.get(name);
+    if (!(value instanceof String)) {
+      throw new IllegalArgumentException("the request has no " + name);
+    }
+    return (String) value;
+  }
+
+  private static Long versionOf(Map<String, Object> request) {
+    Object version = request.get("version");
+    if (version != null && !(version instanceof Long)) {
+      throw new IllegalArgumentException("the version must be an integer");
+    }
+    return (Long) version;
+  }
+
+  /**
+   * This class holds a breakdown request along with the flag cancelling it
+   */
+  private static class Job {
+    private final Object id;
+    private final String document;
+    private final Long version;
+    private final String text;
+    private final AtomicBoolean cancelled;
+
+    Job(Object id, String document, Long version, String text) {
+      this.id = id;
+      this.document = document;
+      this.version = version;
+      this.text = text;
+      this.cancelled = new AtomicBoolean();
+    }
+  }
+
+  /**
+   * This class writes the responses, one line each, from the reading thread and the workers. The
+   * first error writing the output stops the server.
+   */
+  private static class Responses {
+    private final Writer out;
+    private IOException failure;
+
+    // whether a shutdown request came, and its id
+    private boolean shutdown;
+    private Object shutdownId;
+
+    Responses(Writer out) {
+      this.out = out;
+    }
+
+    void done(Job job, ArrayList<StatementResult> results) {
+      StringBuilder sb = jobResponse(job, "done");
+      sb.append(",\"statements\":[");
+      for (int i = 0; i < results.size(); i++) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        JsonReportWriter.appendRecord(sb, null, results.get(i));
+      }
+      write(sb.append("]}"));
+    }
+
+    synchronized void shutdown(Object id) {
+      shutdown = true;
+      shutdownId = id;
+    }
+
+    /**
+     * Answers the shutdown request once the server has stopped, if there was one
+     */
+    synchronized void stopped() {
+      if (shutdown) {
+        status(shutdownId, "done");
+      }
+    }
+
+    void cancelled(Job job) {
+      write(jobResponse(job, "cancelled").append('}'));
+    }
+
+    void status(Object id, String status) {
+      StringBuilder sb = new StringBuilder("{\"id\":");
+      appendId(sb, id);
+      sb.append(",\"status\":");
+      JsonReportWriter.appendString(sb, status);
+      write(sb.append('}'));
+    }
+
+    void error(Object id, String message) {
+      StringBuilder sb = new StringBuilder("{\"id\":");
+      appendId(sb, id);
+      sb.append(",\"status\":\"error\",\"error\":");
+      JsonReportWriter.appendString(sb, message);
+      write(sb.append('}'));
+    }
+
+    private static StringBuilder jobResponse(Job job, String status) {
+      StringBuilder sb = new StringBuilder("{\"id\":");
+      appendId(sb, job.id);
+      sb.append(",\"document\":");
+      JsonReportWriter.appendString(sb, job.document);
+      sb.append(",\"version\":").append(job.version).append(",\"status\":");
+      JsonReportWriter.appendString(sb, status);
+      return sb;
+    }
+
+    // the id is echoed as it came, a string or a number
+    private static void appendId(StringBuilder sb, Object id) {
+      if (id instanceof String) {
+        JsonReportWriter.appendString(sb, (String) id);
+      }
+      else {
+        sb.append(id);
+      }
+    }
+
+    private synchronized void write(StringBuilder response) {
+      if (failure != null) {
+        return;
+      }
+      try {
+        out.write(response.append('\n').toString());
+        out.flush();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+
+    synchronized boolean isFailed() {
+      return failure != null;
+    }
+
+    synchronized void rethrow() throws IOException {
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+}
@@ -1,24 +1,76 @@
 package com.google.bigquery;
 
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.parser.SqlAbstractParserImpl;
 import org.apache.calcite.sql.parser.SqlParseException;
 import org.apache.calcite.sql.parser.SqlParser;
 import org.apache.calcite.sql.parser.SqlParserImplFactory;
 import org.apache.calcite.avatica.util.Casing;
 import org.apache.calcite.avatica.util.Quoting;
 import org.apache.calcite.sql.dialect.CalciteSqlDialect;
-import org.apache.calcite.sql.parser.impl.SqlParserImpl;
+import org.apache.calcite.sql.validate.SqlConformance;
 
 /**
  * This class is where the logic for CalciteParser lives. Through instantiating the object, the
  * Calcite Parser can be used as a blackbox.
+ *
+ * The validate methods skip the unparsing of the parsed statements, and reuse one generated
+ * parser per thread through ReInit instead of creating a new parser for every query. The
+ * CalciteParser itself can therefore still be shared between threads.
+ *
+ * The grammar, the quoting of identifiers and the conformance can be chosen (see ParserDialect),
+ * and the default is the core grammar of Calcite with double-quoted identifiers. Since an
+ * instance can be shared, of() returns a single one per configuration, so that the modes running
+ * many breakdowns do not each set up their generated parsers again.
  */
 public class CalciteParser implements Parser {
+  // the shared instance of each configuration, keyed by the dialect, quoting and conformance
+  private static final ConcurrentHashMap<List<Object>, CalciteParser> INSTANCES =
+      new ConcurrentHashMap<>();
+
+  private final ParserDialect dialect;
   private final SqlParser.Config config;
 
+  // the reusable parser of each thread, configured once and reinitialized for each query
+  private final ThreadLocal<SqlAbstractParserImpl> parserImpl;
+
   public CalciteParser() {
-    // can change the field here to change the type of Calcite Parser
-    config = getParserConfig(SqlParserImpl.FACTORY);
+    this(ParserDialect.CORE, Quoting.DOUBLE_QUOTE,
+        ParserDialect.CORE.getDefaultConformance());
+  }
+
+  /**
+   * Constructor for a parser of the given grammar, quoting and conformance. Throws an
+   * IllegalStateException if the grammar is not on the classpath.
+   */
+  public CalciteParser(ParserDialect dialect, Quoting quoting, SqlConformance conformance) {
+    this.dialect = dialect;
+    config = getParserConfig(dialect.getFactory(), quoting, conformance);
+    parserImpl = ThreadLocal.withInitial(
+        () -> config.parserFactory().getParser(new StringReader("")));
+  }
+
+  /**
+   * Returns the shared parser of the given grammar, quoting and conformance, creating it the
+   * first time it is asked for
+   */
+  public static CalciteParser of(ParserDialect dialect, Quoting quoting,
+      SqlConformance conformance) {
+    return INSTANCES.computeIfAbsent(Arrays.asList(dialect, quoting, conformance),
+        key -> new CalciteParser(dialect, quoting, conformance));
+  }
+
+  /**
+   * Returns the shared parser of the given grammar with its default quoting and conformance
+   */
+  public static CalciteParser of(ParserDialect dialect) {
+    return of(dialect, dialect.getDefaultQuoting(), dialect.getDefaultConformance());
   }
 
   /**
@@ -31,15 +83,86 @@ public class CalciteParser implements Parser {
     return sqlNode.toSqlString(CalciteSqlDialect.DEFAULT).toString();
   }
 
+  /**
+   * Parses the query streamed by the given reader, without building it as a string first.
+   */
+  @Override
+  public String parseQuery(Reader reader) throws SqlParseException {
+    SqlParser myParser = SqlParser.create(reader, config);
+    SqlNode sqlNode = myParser.parseStmtList();
+    return sqlNode.toSqlString(CalciteSqlDialect.DEFAULT).toString();
+  }
+
+  /**
+   * Describes the grammar, the quoting and the conformance of the parser
+   */
+  @Override
+  public String getConfiguration() {
+    return dialect.getName() + " dialect, " + config.quoting() + " quoting, "
+        + config.conformance() + " conformance";
+  }
+
+  /**
+   * Checks whether the given query parses, without unparsing it
+   */
+  @Override
+  public ParseResult validate(String query) {
+    return validate(new StringReader(query));
+  }
+
+  /**
+   * Checks whether the query read from the given reader parses, without unparsing it. The
+   * generated parser of the calling thread is reinitialized on the reader, and configured the
+   * same way SqlParser configures a new one.
+   */
+  @Override
+  public ParseResult validate(Reader reader) {
+    SqlAbstractParserImpl impl = parserImpl.get();
+    impl.ReInit(reader);
+    impl.setTabSize(1);
+    impl.setQuotedCasing(config.quotedCasing());
+    impl.setUnquotedCasing(config.unquotedCasing());
+    impl.setIdentifierMaxLength(config.identifierMaxLength());
+    impl.setConformance(config.conformance());
+    switch (config.quoting()) {
+      case DOUBLE_QUOTE:
+        impl.switchTo("DQID");
+        break;
+      case BACK_TICK:
+        impl.switchTo("BTID");
+        break;
+      default:
+        impl.switchTo("DEFAULT");
+        break;
+    }
+
+    try {
+      impl.parseSqlStmtList();
+      return ParseResult.success();
+    } catch (Throwable e) {
+      return ParseResult.failure(impl.normalizeException(e));
+    }
+  }
+
   /**
    * Sets the configuration of the parser. Can change settings of the parser by changing code here.
    */
   public SqlParser.Config getParserConfig(SqlParserImplFactory factory) {
+    return getParserConfig(factory, Quoting.DOUBLE_QUOTE,
+        ParserDialect.CORE.getDefaultConformance());
+  }
+
+  /**
+   * Sets the configuration of the parser with the given quoting of identifiers and conformance
+   */
+  public SqlParser.Config getParserConfig(SqlParserImplFactory factory, Quoting quoting,
+      SqlConformance conformance) {
     return SqlParser.configBuilder()
         .setParserFactory(factory)
         .setQuotedCasing(Casing.UNCHANGED)
         .setUnquotedCasing(Casing.UNCHANGED)
-        .setQuoting(Quoting.DOUBLE_QUOTE)
+        .setQuoting(quoting)
+        .setConformance(conformance)
         .build();
   }
 }
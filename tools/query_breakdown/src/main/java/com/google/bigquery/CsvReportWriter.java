@@ -0,0 +1,84 @@
+package com.google.bigquery;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * This class writes a report in CSV (RFC 4180): a header row, then a row for each unparseable
+ * component with the counters of its statement, or a single row with empty component columns
+ * for a statement without any. Fields holding commas, quotes or line breaks are quoted.
+ */
+public class CsvReportWriter implements ReportWriter {
+  static final String HEADER = "source,statement,statement_start_line,parseable,truncation,"
+      + "parse_calls,nodes_explored,nodes_pruned,memo_hits,wall_time_ms,start_line,start_column,"
+      + "end_line,end_column,recovery,replaced,replacement";
+
+  private final Writer out;
+
+  /**
+   * Constructor for the class, which writes the header row
+   */
+  public CsvReportWriter(Writer out) throws IOException {
+    this.out = out;
+    out.write(HEADER + "\n");
+    out.flush();
+  }
+
+  @Override
+  public synchronized void write(String source, StatementResult result) throws IOException {
+    StringBuilder statement = new StringBuilder();
+    appendField(statement, source);
+    statement.append(',').append(result.getStatementIndex())
+        .append(',').append(result.getStartLine())
+        .append(',').append(result.isParseable())
+        .append(',');
+    appendField(statement, result.getTruncationMessage());
+    statement.append(',').append(result.getParseCalls())
+        .append(',').append(result.getNodesExplored())
+        .append(',').append(result.getNodesPruned())
+        .append(',').append(result.getMemoHits())
+        .append(',').append(String.format(Locale.ROOT, "%.3f", result.getWallNanos() / 1e6));
+
+    StringBuilder sb = new StringBuilder();
+    if (result.getComponents().isEmpty()) {
+      sb.append(statement).append(",,,,,,,\n");
+    }
+    for (UnparseableComponent component : result.getComponents()) {
+      sb.append(statement)
+          .append(',').append(component.getStartLine())
+          .append(',').append(component.getStartColumn())
+          .append(',').append(component.getEndLine())
+          .append(',').append(component.getEndColumn())
+          .append(',').append(component.getErrorHandlingType())
+          .append(',');
+      appendField(sb, component.getReplaceFrom());
+      sb.append(',');
+      appendField(sb, component.getReplaceTo());
+      sb.append('\n');
+    }
+    out.write(sb.toString());
+    out.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * This helper method appends a field to the row, quoted if needed. A null field is empty.
+   */
+  private static void appendField(StringBuilder sb, String field) {
+    if (field == null) {
+      return;
+    }
+    if (field.indexOf(',') == -1 && field.indexOf('"') == -1 && field.indexOf('\n') == -1
+        && field.indexOf('\r') == -1) {
+      sb.append(field);
+      return;
+    }
+    sb.append('"').append(field.replace("\"", "\"\"")).append('"');
+  }
+}
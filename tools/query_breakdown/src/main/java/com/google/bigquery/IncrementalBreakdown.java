@@ -0,0 +1,119 @@
+package com.google.bigquery;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class breaks down the successive versions of edited documents, reusing the work done on
+ * the previous versions. The results of the statements are cached by their text (the key of a
+ * hash map, which compares the texts of colliding hashes), with their components in positions of
+ * the statement. When a document is broken down again, its statements are split anew, which is
+ * cheap, and only the statements whose text is not in the cache are broken down: the others get
+ * the cached components shifted to where the statement now starts. An edit inside a statement
+ * thus only costs the breakdown of that statement, and an edit moving the statements after it
+ * costs nothing for them.
+ *
+ * A reused result reports no parser calls or explored nodes, and the wall time of the lookup. A
+ * result truncated by a cancellation or a time limit is not cached, since another run could do
+ * better, while one truncated by the parser call or error limits is, as it would be the same.
+ * The cache holds the results of a bounded number of statement texts, the least recently used
+ * ones being dropped first, and it is shared by all the documents, so that a statement copied
+ * from one document to another is not broken down again. All the results depend on the options
+ * of the StatementBreakdown, which are those of every breakdown the cache is used for.
+ */
+public class IncrementalBreakdown {
+  // the default number of statement texts whose results are kept
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private final StatementBreakdown statements;
+  private final int capacity;
+
+  // the results in positions of the statements, least recently used first, guarded by the map
+  private final LinkedHashMap<String, StatementResult> cache;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructor for the class, which breaks down the statements missing from the cache with the
+   * given StatementBreakdown
+   */
+  public IncrementalBreakdown(StatementBreakdown statements, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+    }
+    this.statements = statements;
+    this.capacity = capacity;
+    this.cache = new LinkedHashMap<String, StatementResult>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, StatementResult> eldest) {
+        return size() > IncrementalBreakdown.this.capacity;
+      }
+    };
+  }
+
+  /**
+   * Breaks down every statement of a document under the given budget, and returns their
+   * results in order
+   */
+  public ArrayList<StatementResult> run(String document, SearchBudget budget) {
+    ArrayList<StatementResult> results = new ArrayList<>();
+    for (Statement statement : StatementSplitter.split(document)) {
+      results.add(breakdown(statement, budget));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the result of a statement in file positions: the cached one if a statement with the
+   * same text was broken down before, or else a new breakdown under the given budget, which is
+   * cached unless it may not be the final result for the text
+   */
+  public StatementResult breakdown(Statement statement, SearchBudget budget) {
+    long startNanos = System.nanoTime();
+    StatementResult cached;
+    synchronized (cache) {
+      cached = cache.get(statement.getText());
+      if (cached != null) {
+        hits++;
+      }
+      else {
+        misses++;
+      }
+    }
+    if (cached != null) {
+      return cached.reusedAt(statement, System.nanoTime() - startNanos);
+    }
+
+    StatementResult result = statements.analyze(statement, budget);
+    if (result.getTruncationMessage() == null
+        || (budget.getTimeLimitMillis() == 0 && !budget.isCancelled())) {
+      synchronized (cache) {
+        cache.put(statement.getText(), result);
+      }
+    }
+    return result.toFilePosition(statement);
+  }
+
+  /**
+   * Getters for the counters of the cache
+   */
+  public long getHits() {
+    synchronized (cache) {
+      return hits;
+    }
+  }
+
+  public long getMisses() {
+    synchronized (cache) {
+      return misses;
+    }
+  }
+
+  public int getCachedStatements() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+}
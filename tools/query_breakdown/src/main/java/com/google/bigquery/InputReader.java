@@ -1,8 +1,9 @@
 package com.google.bigquery;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 
 /**
@@ -21,82 +22,36 @@ public class InputReader {
   }
 
   /**
-   * This method will take in a txt file name, use BufferedReader to parse the input, and return
-   * all the queries in a string format. We also initialize a LocationTracker instance since
-   * this is where we are processing the input.
-   *
-   * TODO: more robust method for input parsing needed (ex: semicolons in strings, comments)
+   * This method will take in a txt file name, read the whole file in bulk, and return all the
+   * queries in a string format. We also initialize a LocationTracker instance since this is
+   * where we are processing the input. The tracker only records the length of each line, so no
+   * per-character structure is built for the input.
    */
   public String readInput(String filename) throws IOException {
-    BufferedReader reader = new BufferedReader(new FileReader(filename));
-    StringBuilder sb = new StringBuilder();
-
-    // local state for input reading
-    int current = reader.read();
-    int line = 1;
-    int column = 1;
-
-    // for the first line
-    if (current != -1) {
-      locationTracker.addLine();
-    }
-
-    // loop for input reading
-    while (current != -1) {
-      sb.append((char) current);
-
-      // line changes
-      if ((char) current == '\n') {
-        column = 1;
-        line++;
-        locationTracker.addLine();
-      }
-      else {
-        locationTracker.add(line, column);
-        column++;
-      }
-
-      // advance current pointer
-      current = reader.read();
-    }
+    String input = new String(Files.readAllBytes(Paths.get(filename)), StandardCharsets.UTF_8);
+    locationTracker = LocationTracker.fromQuery(input);
+    return input;
+  }
 
-    reader.close();
-    return sb.toString();
+  /**
+   * This method opens the given file and returns a splitter yielding its statements one at a
+   * time. The file is read in large chunks as the statements are consumed, and semicolons inside
+   * strings and comments do not end a statement. The caller should close the splitter.
+   */
+  public StatementSplitter readStatements(String filename) throws IOException {
+    return new StatementSplitter(
+        Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8));
   }
 
   /**
    * Method created to initialize a LocationTracker instance from an input string for testing
    */
   public void readFromString(String input) {
-    // local state for input reading
-    int current = 0;
-    int line = 1;
-    int column = 1;
-
     // empty string
     if (input == null || input.length() == 0) {
       return;
     }
-
-    // for the first line
-    locationTracker.addLine();
-
-    // loop for input reading
-    while (current < input.length()) {
-      // line changes
-      if (input.charAt(current) == '\n') {
-        column = 1;
-        line++;
-        locationTracker.addLine();
-      }
-      else {
-        locationTracker.add(line, column);
-        column++;
-      }
-
-      // advance current pointer
-      current++;
-    }
+    locationTracker = LocationTracker.fromQuery(input);
   }
 
   /**
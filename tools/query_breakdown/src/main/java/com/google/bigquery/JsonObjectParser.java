@@ -0,0 +1,213 @@
+package com.google.bigquery;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class parses the JSON objects the server reads, one per line (see BreakdownServer). It
+ * handles the whole JSON syntax: an object becomes a Map, an array an ArrayList, a number a Long
+ * (or a Double if it has a fraction or an exponent), and true, false and null their Java
+ * counterparts. Malformed input throws an IllegalArgumentException.
+ */
+class JsonObjectParser {
+  private final String text;
+  private int position;
+
+  private JsonObjectParser(String text) {
+    this.text = text;
+  }
+
+  /**
+   * Parses a JSON object, which must be the only value of the text
+   */
+  @SuppressWarnings("unchecked")
+  static Map<String, Object> parse(String text) {
+    JsonObjectParser parser = new JsonObjectParser(text);
+    parser.skipWhitespace();
+    if (parser.peek() != '{') {
+      throw parser.error("expected an object");
+    }
+    Object value = parser.value();
+    parser.skipWhitespace();
+    if (parser.position < text.length()) {
+      throw parser.error("unexpected text after the object");
+    }
+    return (Map<String, Object>) value;
+  }
+
+  private Object value() {
+    skipWhitespace();
+    char c = peek();
+    switch (c) {
+      case '{':
+        return object();
+      case '[':
+        return array();
+      case '"':
+        return string();
+      case 't':
+        return literal("true", Boolean.TRUE);
+      case 'f':
+        return literal("false", Boolean.FALSE);
+      case 'n':
+        return literal("null", null);
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return number();
+        }
+        throw error("unexpected character");
+    }
+  }
+
+  private Map<String, Object> object() {
+    LinkedHashMap<String, Object> object = new LinkedHashMap<>();
+    position++;
+    skipWhitespace();
+    if (peek() == '}') {
+      position++;
+      return object;
+    }
+    while (true) {
+      skipWhitespace();
+      if (peek() != '"') {
+        throw error("expected a member name");
+      }
+      String name = string();
+      skipWhitespace();
+      expect(':');
+      object.put(name, value());
+      skipWhitespace();
+      if (peek() == ',') {
+        position++;
+        continue;
+      }
+      expect('}');
+      return object;
+    }
+  }
+
+  private ArrayList<Object> array() {
+    ArrayList<Object> array = new ArrayList<>();
+    position++;
+    skipWhitespace();
+    if (peek() == ']') {
+      position++;
+      return array;
+    }
+    while (true) {
+      array.add(value());
+      skipWhitespace();
+      if (peek() == ',') {
+        position++;
+        continue;
+      }
+      expect(']');
+      return array;
+    }
+  }
+
+  private String string() {
+    StringBuilder sb = new StringBuilder();
+    position++;
+    while (true) {
+      char c = next();
+      if (c == '"') {
+        return sb.toString();
+      }
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      char escaped = next();
+      switch (escaped) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (position + 4 > text.length()) {
+            throw error("truncated unicode escape");
+          }
+          try {
+            sb.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+          } catch (NumberFormatException e) {
+            throw error("invalid unicode escape");
+          }
+          position += 4;
+          break;
+        case '"':
+        case '\\':
+        case '/':
+          sb.append(escaped);
+          break;
+        default:
+          throw error("invalid escape");
+      }
+    }
+  }
+
+  private Object number() {
+    int start = position;
+    boolean integral = true;
+    while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) != -1) {
+      integral &= Character.isDigit(text.charAt(position)) || text.charAt(position) == '-';
+      position++;
+    }
+    String number = text.substring(start, position);
+    try {
+      return integral ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+    } catch (NumberFormatException e) {
+      throw error("invalid number");
+    }
+  }
+
+  private Object literal(String literal, Object value) {
+    if (!text.startsWith(literal, position)) {
+      throw error("unexpected character");
+    }
+    position += literal.length();
+    return value;
+  }
+
+  private void skipWhitespace() {
+    while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+      position++;
+    }
+  }
+
+  private char peek() {
+    if (position >= text.length()) {
+      throw error("unexpected end of input");
+    }
+    return text.charAt(position);
+  }
+
+  private char next() {
+    char c = peek();
+    position++;
+    return c;
+  }
+
+  private void expect(char c) {
+    if (peek() != c) {
+      throw error("expected '" + c + "'");
+    }
+    position++;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at offset " + position);
+  }
+}
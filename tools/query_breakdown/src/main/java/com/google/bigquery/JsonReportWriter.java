@@ -0,0 +1,127 @@
+package com.google.bigquery;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * This class writes a report in JSON Lines: each statement is a JSON object on its own line,
+ * such as
+ *
+ * {"source":"a.sql","statement":0,"startLine":1,"parseable":false,"truncation":null,
+ *  "parseCalls":4,"nodesExplored":4,"nodesPruned":0,"memoHits":0,"wallTimeMillis":1.250,
+ *  "components":[{"startLine":1,"startColumn":23,"endLine":1,"endColumn":26,
+ *  "recovery":"REPLACEMENT","replaced":"WITH","replacement":"BY"}]}
+ *
+ * The components are in the order the tool prints them. The replaced text is only given for a
+ * replacement, and the replacement (or inserted token) for a replacement or an insertion.
+ */
+public class JsonReportWriter implements ReportWriter {
+  private final Writer out;
+
+  public JsonReportWriter(Writer out) {
+    this.out = out;
+  }
+
+  @Override
+  public synchronized void write(String source, StatementResult result) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    appendRecord(sb, source, result);
+    sb.append('\n');
+    out.write(sb.toString());
+    out.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * This helper method appends the JSON object of a statement to the builder, without the
+   * source if it is null
+   */
+  static void appendRecord(StringBuilder sb, String source, StatementResult result) {
+    sb.append('{');
+    if (source != null) {
+      sb.append("\"source\":");
+      appendString(sb, source);
+      sb.append(',');
+    }
+    sb.append("\"statement\":").append(result.getStatementIndex())
+        .append(",\"startLine\":").append(result.getStartLine())
+        .append(",\"parseable\":").append(result.isParseable())
+        .append(",\"truncation\":");
+    appendString(sb, result.getTruncationMessage());
+    sb.append(",\"parseCalls\":").append(result.getParseCalls())
+        .append(",\"nodesExplored\":").append(result.getNodesExplored())
+        .append(",\"nodesPruned\":").append(result.getNodesPruned())
+        .append(",\"memoHits\":").append(result.getMemoHits())
+        .append(",\"wallTimeMillis\":")
+        .append(String.format(Locale.ROOT, "%.3f", result.getWallNanos() / 1e6))
+        .append(",\"components\":[");
+    for (int i = 0; i < result.getComponents().size(); i++) {
+      UnparseableComponent component = result.getComponents().get(i);
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append("{\"startLine\":").append(component.getStartLine())
+          .append(",\"startColumn\":").append(component.getStartColumn())
+          .append(",\"endLine\":").append(component.getEndLine())
+          .append(",\"endColumn\":").append(component.getEndColumn())
+          .append(",\"recovery\":");
+      appendString(sb, component.getErrorHandlingType());
+      if (component.getReplaceFrom() != null) {
+        sb.append(",\"replaced\":");
+        appendString(sb, component.getReplaceFrom());
+      }
+      if (component.getReplaceTo() != null) {
+        sb.append(",\"replacement\":");
+        appendString(sb, component.getReplaceTo());
+      }
+      sb.append('}');
+    }
+    sb.append("]}");
+  }
+
+  /**
+   * This helper method appends a JSON string (or null) to the builder, escaping the quotes,
+   * backslashes and control characters
+   */
+  static void appendString(StringBuilder sb, String string) {
+    if (string == null) {
+      sb.append("null");
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          }
+          else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+}
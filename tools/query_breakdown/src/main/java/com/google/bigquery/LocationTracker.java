@@ -1,27 +1,82 @@
 package com.google.bigquery;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This class tracks the original location of components in the query, thereby making sure that
  * the error locations are correctly represented. For each pair of (line, column) in the original
- * query, it is initialized in position at the (line - 1)th arraylist and
- * (column - 1)th element of the arraylist as the integer column - 1.
+ * query, it is initialized in position at the (line - 1)th line and (column - 1)th element of
+ * that line as the integer column - 1.
  * Since the line number won't ever change (but the column number will change constantly),
- * we simply keep track of the original column number as the integer in the double arraylist
+ * we simply keep track of the original column number of each character of each line.
+ *
+ * The tracker is persistent: after it has been filled in by the InputReader, an edit never
+ * modifies it, but returns a new tracker that shares the original columns and all the untouched
+ * lines with it. For each line touched by edits, the tracker only keeps the breakpoints of a
+ * piecewise mapping: from starts[i] onwards (until the next breakpoint), a column of the
+ * intermediate query lies shifts[i] columns further in the original one. Text written by a
+ * replacement has no original column, so its breakpoint is pinned instead: all of its columns
+ * map to the original column shifts[i], where the replaced component started. An edit therefore
+ * copies O(k) ints, where k is the number of edits on the paths to the node, and a lookup
+ * takes O(log k) instead of the O(query length) deep copy per search node of the
+ * previous implementation.
  */
-public class LocationTracker {
-  /* we keep a double arraylist to represent the position of each character (line and column).
-     We can do this as the line number of the component will not change
-     (deletion and replacement won't change the line numbers)
+public class LocationTracker implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /* the original column of each character of each line, filled in by add and addLine. We can do
+     this as the line number of the component will not change (deletion and replacement won't
+     change the line numbers). It is shared by all the trackers derived through edits
+   */
+  private final ArrayList<Line> location;
+
+  /* the lines touched by edits in increasing order, and for each of them the starting columns
+     (in the intermediate query, increasing), cumulative shifts and pinning of its breakpoints.
+     These arrays are never modified once the tracker is created, so they are shared freely
    */
-  private ArrayList<ArrayList<Integer>> location;
+  private final int[] shiftedLines;
+  private final int[][] starts;
+  private final int[][] shifts;
+  private final boolean[][] pinned;
 
   /**
    * Constructor for the class
    */
   public LocationTracker() {
-    location = new ArrayList<>();
+    this(new ArrayList<>(), new int[0], new int[0][], new int[0][], new boolean[0][]);
+  }
+
+  private LocationTracker(ArrayList<Line> location, int[] shiftedLines, int[][] starts,
+      int[][] shifts, boolean[][] pinned) {
+    this.location = location;
+    this.shiftedLines = shiftedLines;
+    this.starts = starts;
+    this.shifts = shifts;
+    this.pinned = pinned;
+  }
+
+  /**
+   * Creates the tracker of a query read as a whole, where every character is still at its
+   * original position. Each line only records its length (the original column of a character
+   * is its column), so the tracker of a large input costs one small object per line instead of
+   * one entry per character.
+   */
+  public static LocationTracker fromQuery(CharSequence query) {
+    LocationTracker locationTracker = new LocationTracker();
+    if (query.length() == 0) {
+      return locationTracker;
+    }
+    int lineStart = 0;
+    for (int i = 0; i < query.length(); i++) {
+      if (query.charAt(i) == '\n') {
+        locationTracker.location.add(Line.identity(i - lineStart));
+        lineStart = i + 1;
+      }
+    }
+    locationTracker.location.add(Line.identity(query.length() - lineStart));
+    return locationTracker;
   }
 
   /**
@@ -37,63 +92,252 @@ public class LocationTracker {
    * This method adds an empty line to the location field
    */
   public void addLine() {
-    location.add(new ArrayList<>());
-  }
-
-  /**
-   * This method removes an entry from location specified by (x, y) in the original query.
-   */
-  public void remove(int x, int y) {
-    if (x > 0 && x <= location.size()) {
-      if (y > 0 && y <= location.get(x - 1).size()) {
-        location.get(x - 1).remove(y - 1);
-      }
-    }
+    location.add(new Line());
   }
 
   /**
    * This method gets the original position of the component in (x,y) of the intermediate query
    */
   public int getOriginalPosition(int x, int y) {
+    int lineIndex = Arrays.binarySearch(shiftedLines, x);
+    if (lineIndex >= 0) {
+      y = mapColumn(starts[lineIndex], shifts[lineIndex], pinned[lineIndex], y);
+    }
     return location.get(x - 1).get(y - 1);
   }
 
   /**
    * This method ensures that the location field is kept correctly despite the deletion. We do
-   * this by removing the entry in location that corresponds to the deleted characters from
-   * position. We also make sure that we return a new location tracker instance (by making
-   * a deep copy) such that a new copy is passed to further runs of the tool.
+   * this by adding a breakpoint for the deleted characters to the line: the columns after them
+   * now lie (endColumn - startColumn + 1) further in the original query. The tracker itself is
+   * left unchanged, and the returned tracker shares everything but the touched line with it.
    */
   public LocationTracker delete(int line, int startColumn, int endColumn) {
-    LocationTracker locationTracker = cloneTracker();
-    for (int i = startColumn; i < endColumn + 1; i++) {
-      locationTracker.remove(line, startColumn);
+    return edit(line, startColumn, endColumn - startColumn + 1, 0);
+  }
+
+  /**
+   * This method ensures that the location field is kept correctly despite the replacement of
+   * the component from startColumn to endColumn by a text of the given length. The columns of
+   * that text are pinned to the original column of the replaced component, and the columns
+   * after it are shifted by the difference in length.
+   */
+  public LocationTracker replace(int line, int startColumn, int endColumn,
+      int replacementLength) {
+    return edit(line, startColumn, endColumn - startColumn + 1, replacementLength);
+  }
+
+  /**
+   * This method ensures that the location field is kept correctly despite the insertion of a
+   * text of the given length before the given column. The columns of that text are pinned to
+   * the original column of the character they were inserted before, or of the character before
+   * them at the end of a line.
+   */
+  public LocationTracker insert(int line, int column, int length) {
+    return edit(line, column, 0, length);
+  }
+
+  /**
+   * Returns true if the component in (x,y) of the intermediate query was written by a
+   * replacement or an insertion, rather than taken from the original query
+   */
+  public boolean isInserted(int x, int y) {
+    int lineIndex = Arrays.binarySearch(shiftedLines, x);
+    if (lineIndex < 0) {
+      return false;
     }
-    return locationTracker;
+    int index = segmentAt(starts[lineIndex], y);
+    return index >= 0 && pinned[lineIndex][index];
   }
 
   /**
-   * To be implemented
+   * This method implements deletion, replacement and insertion: deletedLength columns from
+   * startColumn are removed from the line, and insertedLength new columns are written in their
+   * place.
    */
-  public LocationTracker replace() {
-    throw new UnsupportedOperationException();
+  private LocationTracker edit(int line, int startColumn, int deletedLength,
+      int insertedLength) {
+    int lineIndex = Arrays.binarySearch(shiftedLines, line);
+    int[] lineStarts = (lineIndex >= 0) ? starts[lineIndex] : new int[0];
+    int[] lineShifts = (lineIndex >= 0) ? shifts[lineIndex] : new int[0];
+    boolean[] linePinned = (lineIndex >= 0) ? pinned[lineIndex] : new boolean[0];
+
+    int[] newStarts = new int[lineStarts.length + 2];
+    int[] newShifts = new int[lineShifts.length + 2];
+    boolean[] newPinned = new boolean[linePinned.length + 2];
+    int size = 0;
+
+    // breakpoints before the edit are kept
+    int i = 0;
+    while (i < lineStarts.length && lineStarts[i] < startColumn) {
+      newStarts[size] = lineStarts[i];
+      newShifts[size] = lineShifts[i];
+      newPinned[size++] = linePinned[i++];
+    }
+
+    // the inserted text maps to the original column of the first edited character, or of the
+    // last character of the line if it is inserted at the end
+    if (insertedLength > 0) {
+      int originalColumn = mapColumn(lineStarts, lineShifts, linePinned, startColumn);
+      if (originalColumn > location.get(line - 1).size && startColumn > 1) {
+        originalColumn = mapColumn(lineStarts, lineShifts, linePinned, startColumn - 1);
+      }
+      newStarts[size] = startColumn;
+      newShifts[size] = originalColumn;
+      newPinned[size++] = true;
+    }
+
+    // the columns after the edit continue the mapping of the first character that was kept.
+    // The breakpoints inside the deleted columns are subsumed by this one, and the ones after
+    // it move by the difference in length
+    int keptColumn = startColumn + deletedLength;
+    int delta = deletedLength - insertedLength;
+    int segment = segmentAt(lineStarts, keptColumn);
+    newStarts[size] = startColumn + insertedLength;
+    if (segment >= 0 && linePinned[segment]) {
+      newShifts[size] = lineShifts[segment];
+      newPinned[size++] = true;
+    }
+    else {
+      newShifts[size] = ((segment >= 0) ? lineShifts[segment] : 0) + delta;
+      newPinned[size++] = false;
+    }
+    while (i < lineStarts.length && lineStarts[i] <= keptColumn) {
+      i++;
+    }
+    while (i < lineStarts.length) {
+      newStarts[size] = lineStarts[i] - delta;
+      newShifts[size] = linePinned[i] ? lineShifts[i] : lineShifts[i] + delta;
+      newPinned[size++] = linePinned[i++];
+    }
+    newStarts = Arrays.copyOf(newStarts, size);
+    newShifts = Arrays.copyOf(newShifts, size);
+    newPinned = Arrays.copyOf(newPinned, size);
+
+    // path copying: only the outer arrays are copied, the other lines' breakpoints are shared
+    if (lineIndex >= 0) {
+      int[][] copiedStarts = starts.clone();
+      int[][] copiedShifts = shifts.clone();
+      boolean[][] copiedPinned = pinned.clone();
+      copiedStarts[lineIndex] = newStarts;
+      copiedShifts[lineIndex] = newShifts;
+      copiedPinned[lineIndex] = newPinned;
+      return new LocationTracker(location, shiftedLines, copiedStarts, copiedShifts,
+          copiedPinned);
+    }
+    int insertion = -lineIndex - 1;
+    return new LocationTracker(location, insert(shiftedLines, insertion, line),
+        insert(starts, insertion, newStarts), insert(shifts, insertion, newShifts),
+        insert(pinned, insertion, newPinned));
   }
 
   /**
-   * This method produces a deep copy of the LocationTracker instance, thereby allowing a new
-   * instance to be passed during the traversal of the tree
+   * This method produces a deep copy of the original columns of the LocationTracker instance,
+   * so that further calls to add on either tracker do not affect the other one. The breakpoints
+   * are immutable and therefore shared.
    */
   public LocationTracker cloneTracker() {
-    LocationTracker locationTracker = new LocationTracker();
-    for (int i = 0; i < location.size(); i++) {
-      locationTracker.addLine();
-      ArrayList<Integer> lineOriginal = location.get(i);
-      for (int j = 0; j < lineOriginal.size(); j++) {
-        locationTracker.add(i + 1, lineOriginal.get(j));
-      }
+    ArrayList<Line> copy = new ArrayList<>(location.size());
+    for (Line line : location) {
+      copy.add(line.copy());
     }
-    return locationTracker;
+    return new LocationTracker(copy, shiftedLines, starts, shifts, pinned);
+  }
+
+  /**
+   * Returns the column of the query before the edits of a line with the given breakpoints
+   */
+  private static int mapColumn(int[] lineStarts, int[] lineShifts, boolean[] linePinned,
+      int column) {
+    int index = segmentAt(lineStarts, column);
+    if (index < 0) {
+      return column;
+    }
+    return linePinned[index] ? lineShifts[index] : column + lineShifts[index];
+  }
+
+  /**
+   * Returns the index of the breakpoint that applies to the given column, or -1 if there is none
+   */
+  private static int segmentAt(int[] lineStarts, int column) {
+    int index = Arrays.binarySearch(lineStarts, column);
+    if (index < 0) {
+      // the breakpoint before the insertion point applies, if there is one
+      index = -index - 2;
+    }
+    return index;
+  }
+
+  private static int[] insert(int[] array, int index, int value) {
+    int[] result = new int[array.length + 1];
+    System.arraycopy(array, 0, result, 0, index);
+    result[index] = value;
+    System.arraycopy(array, index, result, index + 1, array.length - index);
+    return result;
+  }
+
+  private static boolean[][] insert(boolean[][] array, int index, boolean[] value) {
+    boolean[][] result = new boolean[array.length + 1][];
+    System.arraycopy(array, 0, result, 0, index);
+    result[index] = value;
+    System.arraycopy(array, index, result, index + 1, array.length - index);
+    return result;
+  }
+
+  private static int[][] insert(int[][] array, int index, int[] value) {
+    int[][] result = new int[array.length + 1][];
+    System.arraycopy(array, 0, result, 0, index);
+    result[index] = value;
+    System.arraycopy(array, index, result, index + 1, array.length - index);
+    return result;
   }
 
+  /**
+   * This class holds the original columns of a line as a growable array of primitive ints,
+   * which avoids boxing one Integer per character of the query. A line created by identity has
+   * no array at all until a column is added to it: its original columns are 1 to size.
+   */
+  private static class Line implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int[] columns = new int[16];
+    private int size;
+
+    static Line identity(int size) {
+      Line line = new Line();
+      line.columns = null;
+      line.size = size;
+      return line;
+    }
+
+    void add(int column) {
+      if (columns == null) {
+        columns = new int[Math.max(16, size * 2)];
+        for (int i = 0; i < size; i++) {
+          columns[i] = i + 1;
+        }
+      }
+      if (size == columns.length) {
+        columns = Arrays.copyOf(columns, size * 2);
+      }
+      columns[size++] = column;
+    }
+
+    int get(int index) {
+      if (index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      return (columns == null) ? index + 1 : columns[index];
+    }
 
+    Line copy() {
+      if (columns == null) {
+        return identity(size);
+      }
+      Line line = new Line();
+      line.columns = Arrays.copyOf(columns, Math.max(size, 1));
+      line.size = size;
+      return line;
+    }
+  }
 }
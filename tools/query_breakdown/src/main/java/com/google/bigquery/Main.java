@@ -2,34 +2,156 @@ package com.google.bigquery;
 
 import static java.lang.System.exit;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Locale;
+import org.apache.calcite.avatica.util.Quoting;
+import org.apache.calcite.sql.validate.SqlConformanceEnum;
 import org.apache.commons.cli.*;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 
 /**
  * This file is the main file for the command line tool.
- * Usage: query_breakdown -r <PATH> [-w <PATH>] [-l <INTEGER>]
+ * Usage: query_breakdown -i <PATH> [-o <PATH>] [-l <INTEGER>] [-t <MILLISECONDS>] [-c <INTEGER>]
+ *        [-s <STRATEGY>] [-p <INTEGER>] [-k] [-m] [-b <INTEGER>]
+ *        [-n <INTEGER>] [-f] [-d] [-e] [-a <DIALECT>] [-q <QUOTING>] [-y <CONFORMANCE>]
+ *        [-x <PATH>] [-v]
  * -i, --inputFile, PATH: this command specifies the path to the file containing queries to be
- *                    inputted into the tool. It is therefore mandatory
+ *                    inputted into the tool. It is therefore mandatory, unless the tool runs
+ *                    as a server
  * -o, --outputFile, PATH: this command specifies the path to the file that the tool can write
  *                    its results to. If not specified, the tool will simply print results on the
- *                    console. It is therefore optional
+ *                    console. The file is a report with a record for each statement (a single
+ *                    one unless -m is given): its unparseable components along with the
+ *                    parser calls, errors explored and pruned, memo table hits and wall time
+ *                    of its breakdown. It is written in CSV if the file name ends with .csv, and
+ *                    in JSON Lines otherwise. It is therefore optional
  * -l, --limit, PATH: this command specifies the path to an integer that the tool takes as a
  *                    limit for the number of errors to be explored, thereby controlling the
  *                    runtime. It is therefore optional
+ * -t, --timeLimit, MILLISECONDS: this command specifies the wall-clock time the search may
+ *                    take. Once it runs out, the best solution found so far is output and marked
+ *                    as truncated. It is therefore optional
+ * -c, --parseLimit, INTEGER: this command specifies the number of parser calls the search may
+ *                    make, with the same behavior as the time limit. It is therefore optional
+ * -s, --search, STRATEGY: this command specifies how the tree of error recoveries is searched,
+ *                    either "dfs" (depth-first, the default) or "best-first". Both report the
+ *                    same number of unparseable components (and, with deletion only, the same
+ *                    components). It is therefore optional
+ * -p, --parallelism, INTEGER: this command specifies the number of threads the depth-first
+ *                    search explores branches with. The result is the same for any number of
+ *                    threads. If not specified, the search runs on a single thread. It is
+ *                    therefore optional
+ * -k, --tokenRewriting: this command makes the search lex the query once and represent each
+ *                    intermediate query as a list of token edits instead of a new string. The
+ *                    result is the same. It is therefore optional
+ * -m, --perStatement: this command splits the input into statements and parses each one on its
+ *                    own, running the search only on the statements that fail. The statements
+ *                    are handled in parallel by the number of threads given with -p, and the
+ *                    locations are reported in the input file. It is therefore optional
+ * -b, --replacementBeam, INTEGER: this command makes the search also try to replace each
+ *                    error with the given number of expected tokens, the ones most similar to
+ *                    the error and most likely in a query first. A replacement is output along
+ *                    with what the component was replaced with. If not specified, errors are
+ *                    only deleted. It is therefore optional
+ * -n, --insertionBeam, INTEGER: this command makes the search also try to insert the given
+ *                    number of expected tokens before each error (after it at the end of the
+ *                    query), the ones most likely in a query first, which recovers a missing
+ *                    token in a single step. An insertion is output along with the inserted
+ *                    token. If not specified, nothing is inserted. It is therefore optional
+ * -f, --panic: this command makes a panic-mode pass run before the search, which skips each
+ *                    error up to the next semicolon, closing parenthesis, FROM or WHERE. The
+ *                    search then only looks for solutions with fewer unparseable components
+ *                    than the pass found, so it is cut short when the pass does well, and its
+ *                    solution is output if the search cannot beat it. It is therefore optional
+ * -d, --batch: this command breaks down many files at once: -i may then be repeated, and each
+ *                    input is a file, a directory (standing for all the files below it) or a
+ *                    glob pattern such as crawl/**.sql, relative to the working directory. The
+ *                    files are handled in parallel by the number of threads given with -p, one
+ *                    statement at a time as with -m. The time limit applies to each file, and
+ *                    the parser call and error limits to each statement. The records of all
+ *                    the files go to a single report (see -o), printed on the console in JSON
+ *                    Lines if there is no output file, while the progress, the throughput and
+ *                    the slowest files are printed on stderr. It is therefore optional
+ * -e, --server: this command runs the tool as a server for editors, which reads breakdown
+ *                    requests as line-delimited JSON on stdin and writes a response line for
+ *                    each of them on stdout (see BreakdownServer). Its workers keep their
+ *                    parsers warm between requests, and the documents are broken down in
+ *                    parallel by the number of threads given with -p. A newer version of a
+ *                    document cancels the breakdown of the previous one. The budgets apply to
+ *                    each statement. It is therefore optional
+ * -a, --dialect, DIALECT: this command specifies the grammar the queries are parsed with, either
+ *                    "core" (the grammar of Calcite, the default), "babel", or one of the
+ *                    dialects of the SQL classifier, "bigquery", "defaultdialect", "dialect1"
+ *                    or "postgresql", whose jars must then be on the classpath (see
+ *                    ParserDialect). Parsing with the wrong grammar reports more unparseable
+ *                    components and makes the search longer. It is therefore optional
+ * -q, --quoting, QUOTING: this command specifies how identifiers are quoted, either
+ *                    "double_quote", "back_tick" or "bracket". If not specified, the quoting of
+ *                    the dialect is used (back ticks for bigquery, double quotes otherwise). It
+ *                    is therefore optional
+ * -y, --conformance, CONFORMANCE: this command specifies the conformance of the parser, the name
+ *                    of a Calcite SqlConformanceEnum such as "default", "lenient" or
+ *                    "big_query". If not specified, the conformance of the dialect is used. It
+ *                    is therefore optional
+ * -x, --checkpoint, PATH: this command specifies a file the state of the search is saved to if
+ *                    a budget runs out. If the file exists, the search resumes from it instead
+ *                    of starting over, so a long search can be carried out over several runs.
+ *                    A checkpoint saved for another input or with other search, recovery or
+ *                    parser options is rejected. The file is deleted once the search
+ *                    completes. It is therefore optional
+ * -v, --stats: this command prints the work done by the search (errors explored, parser calls,
+ *                    memo table hits) and the memory taken by its tree on stderr once it ends.
+ *                    It is therefore optional
  *
- * Sample Usage: query_breakdown -r input.txt
- *               query_breakdown -r input2.txt -w output.txt -l 3
- *               query_breakdown -r input3.txt -w output2.txt
- *               query_breakdown -r input4.txt -l 6
+ * The paths given to -i, -o and -x are relative to the working directory unless they are
+ * absolute, in every mode.
+ *
+ * Sample Usage: query_breakdown -i input.txt
+ *               query_breakdown -i input2.txt -o output.txt -l 3
+ *               query_breakdown -i input3.txt -o output2.txt
+ *               query_breakdown -i input4.txt -l 6
+ *               query_breakdown -i input5.txt -s best-first
+ *               query_breakdown -i input6.txt -p 4
+ *               query_breakdown -i input7.txt -t 10000 -c 500
+ *               query_breakdown -i input8.txt -k
+ *               query_breakdown -i script.sql -m -p 8
+ *               query_breakdown -i input9.txt -b 3
+ *               query_breakdown -i input10.txt -b 3 -n 3
+ *               query_breakdown -i input11.txt -t 60000 -x search.ckpt
+ *               query_breakdown -i input12.txt -b 3 -v
+ *               query_breakdown -i input13.txt -f
+ *               query_breakdown -i script.sql -m -o report.json
+ *               query_breakdown -i script.sql -m -o report.csv
+ *               query_breakdown -i crawl -i 'more/**.sql' -d -p 8 -t 5000 -o report.json
+ *               query_breakdown -e -p 4 -t 2000
+ *               query_breakdown -i input14.txt -a babel -q back_tick
  */
 public class Main {
   public static void main(String[] args) {
     String inputFile = null;
     int errorLimit = 0;
+    long timeLimit = 0;
+    int parseLimit = 0;
     String outputFile = null;
+    SearchStrategy strategy = SearchStrategy.DEPTH_FIRST;
+    int parallelism = 1;
+    RecoveryOptions recoveries = RecoveryOptions.DELETION_ONLY;
+    CalciteParser parser = null;
     CommandLine cl = createCommand(args);
 
     // if there is an error in parsing the commandline
@@ -46,13 +168,126 @@ public class Main {
     if (cl.hasOption("l")) {
       errorLimit = Integer.parseInt( cl.getOptionValue("l"));
     }
+    if (cl.hasOption("t")) {
+      timeLimit = Long.parseLong(cl.getOptionValue("t"));
+    }
+    if (cl.hasOption("c")) {
+      parseLimit = Integer.parseInt(cl.getOptionValue("c"));
+    }
+    SearchBudget budget = null;
+    try {
+      budget = new SearchBudget(timeLimit, parseLimit, errorLimit);
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      exit(1);
+    }
+    if (cl.hasOption("s")) {
+      try {
+        strategy = SearchStrategy.fromName(cl.getOptionValue("s"));
+      } catch (IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+        exit(1);
+      }
+    }
+    if (cl.hasOption("p")) {
+      parallelism = Integer.parseInt(cl.getOptionValue("p"));
+      if (parallelism < 1) {
+        System.out.println("the parallelism must be at least 1");
+        exit(1);
+      }
+    }
+    if (cl.hasOption("b") || cl.hasOption("n") || cl.hasOption("f")) {
+      try {
+        recoveries = new RecoveryOptions(Integer.parseInt(cl.getOptionValue("b", "0")),
+            Integer.parseInt(cl.getOptionValue("n", "0")), cl.hasOption("f"));
+      } catch (IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+        exit(1);
+      }
+    }
+    try {
+      ParserDialect dialect = ParserDialect.fromName(cl.getOptionValue("a", "core"));
+      Quoting quoting = cl.hasOption("q")
+          ? Quoting.valueOf(cl.getOptionValue("q").toUpperCase(Locale.ROOT))
+          : dialect.getDefaultQuoting();
+      SqlConformanceEnum conformance = cl.hasOption("y")
+          ? SqlConformanceEnum.valueOf(cl.getOptionValue("y").toUpperCase(Locale.ROOT))
+          : dialect.getDefaultConformance();
+      parser = CalciteParser.of(dialect, quoting, conformance);
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      System.out.println(e.getMessage());
+      exit(1);
+    }
+
+    // in the server mode, the requests come from stdin and the responses go to stdout
+    if (cl.hasOption("e")) {
+      runServer(cl, parser, strategy, recoveries, budget, parallelism);
+      return;
+    }
+    if (inputFile == null) {
+      System.out.println("the input file is mandatory unless the tool runs as a server");
+      exit(1);
+    }
+
+    InputReader ir = new InputReader();
+
+    // in the batch mode, the inputs are files, directories or glob patterns, and all of their
+    // files go to a single report
+    if (cl.hasOption("d")) {
+      runBatch(cl, parser, outputFile, strategy, recoveries,
+          new SearchBudget(0, parseLimit, errorLimit), timeLimit, parallelism);
+      return;
+    }
+
+    // in the per-statement mode, the statements are streamed from the file and broken down
+    // separately
+    if (cl.hasOption("m")) {
+      CalciteParser statementParser = parser;
+      StatementBreakdown sb = new StatementBreakdown(() -> statementParser, strategy,
+          cl.hasOption("k"), recoveries, budget, parallelism);
+      if (outputFile != null) {
+        try (StatementSplitter splitter = ir.readStatements(inputFile);
+            ReportWriter report = ReportWriter.open(new File(outputFile))) {
+          String source = inputFile;
+          sb.run(splitter, result -> {
+            try {
+              report.write(source, result);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+        } catch (IOException | UncheckedIOException e) {
+          System.out.println("there was an I/O error while reading the input or writing the "
+              + "report");
+          exit(1);
+        }
+        return;
+      }
+      try (StatementSplitter splitter = ir.readStatements(inputFile)) {
+        boolean[] parseable = {true};
+        sb.run(splitter, result -> {
+          for (UnparseableComponent component : result.getComponents()) {
+            System.out.println(component);
+          }
+          if (result.getTruncationMessage() != null) {
+            System.out.println(result.getTruncationMessage());
+          }
+          parseable[0] &= result.isParseable();
+        });
+        if (parseable[0]) {
+          System.out.println("The entire query can be parsed without error");
+        }
+      } catch (IOException | UncheckedIOException e) {
+        System.out.println("there was an I/O error while reading the input");
+        exit(1);
+      }
+      return;
+    }
 
     // this is where we will put the file I/O logic through the input reader.
     String originalQuery = null;
-    InputReader ir = new InputReader();
     try {
-      String absPath = new File("").getAbsolutePath();
-      originalQuery = ir.readInput(absPath + inputFile);
+      originalQuery = ir.readInput(inputFile);
     } catch (IOException e) {
       System.out.println("there was an I/O error while reading the input");
       exit(1);
@@ -62,8 +297,116 @@ public class Main {
        all the unparseable components of the query and output them into the output file if
        specified. Otherwise, it will be autogenerated.
      */
-    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
-    qb.run(originalQuery, outputFile, errorLimit, ir.getLocationTracker());
+    QueryBreakdown qb = new QueryBreakdown(parser, strategy, parallelism,
+        cl.hasOption("k"), recoveries);
+    if (!cl.hasOption("x")) {
+      try {
+        qb.run(originalQuery, inputFile, outputFile, budget, ir.getLocationTracker());
+      } catch (UncheckedIOException e) {
+        System.out.println("there was an I/O error while writing the report");
+        exit(1);
+      }
+      printStatistics(cl, qb);
+      return;
+    }
+
+    // resumes the search from the checkpoint file if there is one, and saves it again if the
+    // search is truncated once more
+    File checkpointFile = new File(cl.getOptionValue("x"));
+    try {
+      if (checkpointFile.exists()) {
+        SearchCheckpoint checkpoint;
+        try (InputStream in = new FileInputStream(checkpointFile)) {
+          checkpoint = SearchCheckpoint.readFrom(in);
+        }
+        qb.run(checkpoint, originalQuery, inputFile, outputFile, budget);
+      }
+      else {
+        qb.run(originalQuery, inputFile, outputFile, budget, ir.getLocationTracker());
+      }
+
+      printStatistics(cl, qb);
+      SearchCheckpoint checkpoint = qb.checkpoint();
+      if (checkpoint == null) {
+        checkpointFile.delete();
+        return;
+      }
+      try (OutputStream out = new FileOutputStream(checkpointFile)) {
+        checkpoint.writeTo(out);
+      }
+      System.out.println("The state of the search was saved to " + cl.getOptionValue("x"));
+    } catch (IOException | UncheckedIOException e) {
+      System.out.println("there was an I/O error while reading or writing the checkpoint or "
+          + "the report");
+      exit(1);
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      exit(1);
+    }
+  }
+
+  /**
+   * Breaks down the files given by the input options on a pool of workers, and writes their
+   * report to the output file, or on the console in JSON Lines if there is none. Progress and
+   * throughput are printed on stderr.
+   */
+  private static void runBatch(CommandLine cl, CalciteParser parser, String outputFile,
+      SearchStrategy strategy, RecoveryOptions recoveries, SearchBudget budget,
+      long fileTimeLimit, int parallelism) {
+    BatchBreakdown batch = new BatchBreakdown(() -> parser, strategy, cl.hasOption("k"),
+        recoveries, budget, fileTimeLimit, parallelism, System.err);
+    ReportWriter report = null;
+    try {
+      ArrayList<Path> files = BatchBreakdown.expand(Arrays.asList(cl.getOptionValues("i")));
+      report = (outputFile != null) ? ReportWriter.open(new File(outputFile))
+          : ReportWriter.create(ReportFormat.JSON, new OutputStreamWriter(System.out,
+              StandardCharsets.UTF_8));
+      batch.run(files, report);
+    } catch (NoSuchFileException e) {
+      System.out.println("there is no such input: " + e.getFile());
+      exit(1);
+    } catch (IOException | UncheckedIOException e) {
+      System.out.println("there was an I/O error while reading the inputs or writing the "
+          + "report");
+      exit(1);
+    } finally {
+      // the console is left open
+      if (outputFile != null && report != null) {
+        try {
+          report.close();
+        } catch (IOException e) {
+          System.out.println("there was an I/O error while writing the report");
+          exit(1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Serves breakdown requests on stdin and stdout until stdin ends or the server is shut down
+   */
+  private static void runServer(CommandLine cl, CalciteParser parser, SearchStrategy strategy,
+      RecoveryOptions recoveries, SearchBudget budget, int parallelism) {
+    BreakdownServer server = new BreakdownServer(() -> parser, strategy,
+        cl.hasOption("k"), recoveries, budget, parallelism);
+    try {
+      server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+          new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      // stdout is the channel of the responses, so the error goes to stderr
+      System.err.println("there was an I/O error while reading a request or writing a "
+          + "response");
+      exit(1);
+    }
+  }
+
+  /**
+   * Prints the statistics of the search on stderr if they were asked for
+   */
+  private static void printStatistics(CommandLine cl, QueryBreakdown qb) {
+    if (cl.hasOption("v")) {
+      System.err.println(qb.getStatistics());
+    }
   }
 
   /**
@@ -105,18 +448,79 @@ public class Main {
    */
   public static Options createOptions() {
     Options options = new Options();
-    options.addOption(Option.builder("i").required(true).longOpt("inputFile").hasArg(true)
+    options.addOption(Option.builder("i").longOpt("inputFile").hasArg(true)
         .argName("PATH").desc("this command specifies the path to the file "
-            + "containing queries to be inputted into the tool. It is therefore mandatory")
-        .build());
+            + "containing queries to be inputted into the tool. It is therefore mandatory, "
+            + "unless the tool runs as a server").build());
     options.addOption(Option.builder("o").longOpt("outputFile").hasArg(true).argName("PATH")
         .desc("this command specifies the path to the file that the tool can write "
-            + "its results to. If not specified, the tool will simply print results"
-            + "on the console. It is therefore optional").build());
+            + "its results to, as a JSON Lines report (or CSV if the name ends with .csv). If "
+            + "not specified, the tool will simply print results on the console. It is "
+            + "therefore optional").build());
     options.addOption(Option.builder("l").longOpt("limit").hasArg(true).argName("INTEGER")
         .desc("this command specifies the path to an integer that the tools takes "
             + "as a limit for the number of errors to be explored, thereby controlling"
             + "the runtime. It is therefore optional").build());
+    options.addOption(Option.builder("t").longOpt("timeLimit").hasArg(true)
+        .argName("MILLISECONDS").desc("this command specifies the wall-clock time the search "
+            + "may take before it outputs the best solution so far. It is therefore optional")
+        .build());
+    options.addOption(Option.builder("c").longOpt("parseLimit").hasArg(true)
+        .argName("INTEGER").desc("this command specifies the number of parser calls the "
+            + "search may make before it outputs the best solution so far. It is therefore "
+            + "optional").build());
+    options.addOption(Option.builder("s").longOpt("search").hasArg(true).argName("STRATEGY")
+        .desc("this command specifies how the tree of error recoveries is searched, either "
+            + "dfs (depth-first, the default) or best-first. It is therefore optional")
+        .build());
+    options.addOption(Option.builder("p").longOpt("parallelism").hasArg(true)
+        .argName("INTEGER").desc("this command specifies the number of threads the "
+            + "depth-first search explores branches with. It is therefore optional").build());
+    options.addOption(Option.builder("k").longOpt("tokenRewriting").hasArg(false)
+        .desc("this command makes the search edit a lexed token array instead of rewriting "
+            + "the query string. It is therefore optional").build());
+    options.addOption(Option.builder("m").longOpt("perStatement").hasArg(false)
+        .desc("this command breaks down each statement of the input on its own, in parallel, "
+            + "and only searches the statements that fail to parse. It is therefore optional")
+        .build());
+    options.addOption(Option.builder("b").longOpt("replacementBeam").hasArg(true)
+        .argName("INTEGER").desc("this command makes the search also replace each error with "
+            + "up to the given number of expected tokens, the best ranked first. It is "
+            + "therefore optional").build());
+    options.addOption(Option.builder("n").longOpt("insertionBeam").hasArg(true)
+        .argName("INTEGER").desc("this command makes the search also insert up to the given "
+            + "number of expected tokens at each error, the best ranked first. It is therefore "
+            + "optional").build());
+    options.addOption(Option.builder("f").longOpt("panic").hasArg(false)
+        .desc("this command makes a panic-mode pass, which skips each error up to the next "
+            + "synchronizing token, bound the search before it starts. It is therefore "
+            + "optional").build());
+    options.addOption(Option.builder("d").longOpt("batch").hasArg(false)
+        .desc("this command makes the tool break down every file given by the input options, "
+            + "which may then be repeated and name directories or glob patterns, into a single "
+            + "report. It is therefore optional").build());
+    options.addOption(Option.builder("e").longOpt("server").hasArg(false)
+        .desc("this command runs the tool as a server reading breakdown requests as "
+            + "line-delimited JSON on stdin and answering them on stdout. It is therefore "
+            + "optional").build());
+    options.addOption(Option.builder("a").longOpt("dialect").hasArg(true).argName("DIALECT")
+        .desc("this command specifies the grammar the queries are parsed with: core (the "
+            + "default), babel, bigquery, defaultdialect, dialect1 or postgresql. It is "
+            + "therefore optional").build());
+    options.addOption(Option.builder("q").longOpt("quoting").hasArg(true).argName("QUOTING")
+        .desc("this command specifies how identifiers are quoted: double_quote, back_tick or "
+            + "bracket, the quoting of the dialect by default. It is therefore optional")
+        .build());
+    options.addOption(Option.builder("y").longOpt("conformance").hasArg(true)
+        .argName("CONFORMANCE").desc("this command specifies the conformance of the parser, "
+            + "such as default, lenient or big_query, the conformance of the dialect by default. "
+            + "It is therefore optional").build());
+    options.addOption(Option.builder("x").longOpt("checkpoint").hasArg(true).argName("PATH")
+        .desc("this command specifies a file the state of a truncated search is saved to, "
+            + "and resumed from if it exists. It is therefore optional").build());
+    options.addOption(Option.builder("v").longOpt("stats").hasArg(false)
+        .desc("this command prints the work and the memory use of the search on stderr. It "
+            + "is therefore optional").build());
     return options;
   }
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package com.google.bigquery;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class implements the transposition table of the search: different paths of deletions and
+ * replacements often converge on the same intermediate query, so for each query we remember the
+ * outcome of parsing it and the smallest depth at which it has been explored. A query reached
+ * again at the same or a greater depth cannot lead to a better solution than the first visit,
+ * so that branch can be pruned. A query reached at a smaller depth is explored again, but reuses
+ * the parse outcome instead of calling the parser.
+ *
+ * The table is shared by the workers of the parallel search, so it is backed by a concurrent map
+ * and the entries are updated under their own lock. Since the workers reach a query in no fixed
+ * order, the parallel search also records the branch path (the child index taken at each level)
+ * of the best visit and breaks ties between visits at the same depth by the smaller path, which
+ * is the visit the sequential search would have made first.
+ *
+ * The keys are the intermediate queries themselves: strings, or edit lists in the token
+ * rewriting mode (see TokenEdits).
+ */
+public class MemoTable<K> implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final ConcurrentHashMap<K, Entry> entries;
+
+  /**
+   * Constructor for the class
+   */
+  public MemoTable() {
+    entries = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the entry of the given query, or null if it has never been visited
+   */
+  public Entry get(K query) {
+    return entries.get(query);
+  }
+
+  /**
+   * Records the parse outcome of a query visited for the first time at the given depth
+   */
+  public Entry put(K query, ParseResult result, int depth) {
+    Entry entry = new Entry(result, depth, null);
+    entries.put(query, entry);
+    return entry;
+  }
+
+  /**
+   * Records the parse outcome of a query visited for the first time at the given depth and
+   * branch path, unless another worker has recorded it in the meantime. Returns null if the
+   * visit was recorded, and the existing entry otherwise (which the caller should then visit).
+   */
+  public Entry putIfAbsent(K query, ParseResult result, int depth, int[] path) {
+    return entries.putIfAbsent(query, new Entry(result, depth, path));
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * This class holds the parse outcome of a query and the best depth it has been explored at
+   */
+  public static class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final ParseResult result;
+    private int bestDepth;
+    private int[] bestPath;
+
+    Entry(ParseResult result, int bestDepth, int[] bestPath) {
+      this.result = result;
+      this.bestDepth = bestDepth;
+      this.bestPath = bestPath;
+    }
+
+    public ParseResult getResult() {
+      return result;
+    }
+
+    public synchronized int getBestDepth() {
+      return bestDepth;
+    }
+
+    /**
+     * Records a visit at the given depth. Returns true if the visit improves on the best depth
+     * seen so far (and therefore should be explored), and false if it should be pruned.
+     */
+    public boolean visit(int depth) {
+      return visit(depth, null);
+    }
+
+    /**
+     * Records a visit at the given depth and branch path. A visit at the same depth as the best
+     * one improves on it if both paths are known and the new path is smaller.
+     */
+    public synchronized boolean visit(int depth, int[] path) {
+      if (depth > bestDepth) {
+        return false;
+      }
+      if (depth == bestDepth
+          && (path == null || bestPath == null || comparePaths(path, bestPath) >= 0)) {
+        return false;
+      }
+      bestDepth = depth;
+      bestPath = path;
+      return true;
+    }
+  }
+
+  /**
+   * Compares two branch paths lexicographically, which is the order in which the sequential
+   * depth-first search visits them. A path that is a prefix of the other comes first.
+   */
+  static int comparePaths(int[] path1, int[] path2) {
+    int length = Math.min(path1.length, path2.length);
+    for (int i = 0; i < length; i++) {
+      if (path1[i] != path2[i]) {
+        return Integer.compare(path1[i], path2[i]);
+      }
+    }
+    return Integer.compare(path1.length, path2.length);
+  }
+}
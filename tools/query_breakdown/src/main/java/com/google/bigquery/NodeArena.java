@@ -0,0 +1,239 @@
+package com.google.bigquery;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class holds the nodes of the tree of error recoveries. A node is an int index into
+ * parallel primitive arrays (parent index, location of the error in the original query, how it
+ * was handled, and the ids of the replaced and inserted texts, which are interned once), so a
+ * node costs a few dozen bytes and no object of its own. The root is always the node ROOT.
+ *
+ * Nodes are reference counted: a node is referenced by each of its live children, by the search
+ * state holding it, and by the solutions recorded by the search (see retain and release). As
+ * soon as a branch is pruned or explored, its nodes that no longer lead to a live state or a
+ * solution are released, and their slots are reused by the next nodes created, so the arena only
+ * grows with the number of nodes alive at once. The arena is shared by the workers of the
+ * parallel search, so its methods are synchronized.
+ */
+public class NodeArena implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  // the root node, and the index standing for no node
+  public static final int ROOT = 0;
+  public static final int NONE = -1;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  // the number of bytes a slot takes in the arrays, used to report the memory use
+  private static final int BYTES_PER_NODE = 8 * Integer.BYTES + 1;
+
+  // indicates how we handled the error
+  enum ErrorHandlingType {
+    DELETION,
+    REPLACEMENT,
+    INSERTION
+  }
+
+  /* the fields of each node. The parent of a released slot is the next slot of the free list,
+     and its reference count is 0 */
+  private int[] parents;
+  private int[] startLines;
+  private int[] startColumns;
+  private int[] endLines;
+  private int[] endColumns;
+  private byte[] types;
+  private int[] replaceFroms;
+  private int[] replaceTos;
+  private int[] references;
+
+  // the slots in use or on the free list, the head of the free list, and the live node counts
+  private int size;
+  private int free;
+  private int live;
+  private int peakLive;
+
+  // the texts of the replacements and insertions, each stored once
+  private final ArrayList<String> strings;
+  private final HashMap<String, Integer> stringIds;
+
+  /**
+   * Constructor for the class, which creates the root node. The root is never released.
+   */
+  public NodeArena() {
+    parents = new int[INITIAL_CAPACITY];
+    startLines = new int[INITIAL_CAPACITY];
+    startColumns = new int[INITIAL_CAPACITY];
+    endLines = new int[INITIAL_CAPACITY];
+    endColumns = new int[INITIAL_CAPACITY];
+    types = new byte[INITIAL_CAPACITY];
+    replaceFroms = new int[INITIAL_CAPACITY];
+    replaceTos = new int[INITIAL_CAPACITY];
+    references = new int[INITIAL_CAPACITY];
+    strings = new ArrayList<>();
+    stringIds = new HashMap<>();
+    free = NONE;
+
+    parents[ROOT] = NONE;
+    replaceFroms[ROOT] = NONE;
+    replaceTos[ROOT] = NONE;
+    references[ROOT] = 1;
+    size = 1;
+    live = 1;
+    peakLive = 1;
+  }
+
+  /**
+   * Creates the node of a deletion below the given parent, and returns it with a single
+   * reference, held by the search state it is created for
+   */
+  public synchronized int deletion(int parent, int startLine, int startColumn, int endLine,
+      int endColumn) {
+    return add(parent, startLine, startColumn, endLine, endColumn,
+        ErrorHandlingType.DELETION, null, null);
+  }
+
+  /**
+   * Creates the node of a replacement below the given parent
+   */
+  public synchronized int replacement(int parent, int startLine, int startColumn, int endLine,
+      int endColumn, String replaceFrom, String replaceTo) {
+    return add(parent, startLine, startColumn, endLine, endColumn,
+        ErrorHandlingType.REPLACEMENT, replaceFrom, replaceTo);
+  }
+
+  /**
+   * Creates the node of an insertion below the given parent. The location is that of the error,
+   * and the inserted token is stored as what the error was replaced with.
+   */
+  public synchronized int insertion(int parent, int startLine, int startColumn, int endLine,
+      int endColumn, String inserted) {
+    return add(parent, startLine, startColumn, endLine, endColumn,
+        ErrorHandlingType.INSERTION, null, inserted);
+  }
+
+  private int add(int parent, int startLine, int startColumn, int endLine, int endColumn,
+      ErrorHandlingType type, String replaceFrom, String replaceTo) {
+    int node;
+    if (free != NONE) {
+      node = free;
+      free = parents[node];
+    }
+    else {
+      if (size == parents.length) {
+        grow();
+      }
+      node = size++;
+    }
+    parents[node] = parent;
+    startLines[node] = startLine;
+    startColumns[node] = startColumn;
+    endLines[node] = endLine;
+    endColumns[node] = endColumn;
+    types[node] = (byte) type.ordinal();
+    replaceFroms[node] = intern(replaceFrom);
+    replaceTos[node] = intern(replaceTo);
+    references[node] = 1;
+    references[parent]++;
+    live++;
+    peakLive = Math.max(peakLive, live);
+    return node;
+  }
+
+  /**
+   * Adds a reference to a node, which keeps it and its ancestors alive
+   */
+  public synchronized void retain(int node) {
+    references[node]++;
+  }
+
+  /**
+   * Removes a reference to a node. A node left without references is released along with the
+   * ancestors that only it kept alive. Releasing NONE does nothing.
+   */
+  public synchronized void release(int node) {
+    while (node != NONE && node != ROOT && --references[node] == 0) {
+      int parent = parents[node];
+      parents[node] = free;
+      free = node;
+      live--;
+      node = parent;
+    }
+  }
+
+  /**
+   * Returns the unparseable components leading to a node, from the node to the first one below
+   * the root
+   */
+  public synchronized ArrayList<UnparseableComponent> components(int node) {
+    ArrayList<UnparseableComponent> components = new ArrayList<>();
+    for (int current = node; current != ROOT; current = parents[current]) {
+      components.add(new UnparseableComponent(startLines[current], startColumns[current],
+          endLines[current], endColumns[current],
+          ErrorHandlingType.values()[types[current]].toString(),
+          stringAt(replaceFroms[current]), stringAt(replaceTos[current])));
+    }
+    return components;
+  }
+
+  /**
+   * Returns the parent of a node, or NONE for the root
+   */
+  public synchronized int getParent(int node) {
+    return parents[node];
+  }
+
+  /**
+   * Returns the number of nodes currently alive, including the root
+   */
+  public synchronized int getLiveNodes() {
+    return live;
+  }
+
+  /**
+   * Returns the largest number of nodes that were alive at once
+   */
+  public synchronized int getPeakLiveNodes() {
+    return peakLive;
+  }
+
+  /**
+   * Returns the number of bytes taken by the arrays of the arena, not counting the interned
+   * strings
+   */
+  public synchronized long getMemoryBytes() {
+    return (long) parents.length * BYTES_PER_NODE;
+  }
+
+  private int intern(String string) {
+    if (string == null) {
+      return NONE;
+    }
+    Integer id = stringIds.get(string);
+    if (id == null) {
+      id = strings.size();
+      strings.add(string);
+      stringIds.put(string, id);
+    }
+    return id;
+  }
+
+  private String stringAt(int id) {
+    return (id == NONE) ? null : strings.get(id);
+  }
+
+  private void grow() {
+    int capacity = parents.length * 2;
+    parents = Arrays.copyOf(parents, capacity);
+    startLines = Arrays.copyOf(startLines, capacity);
+    startColumns = Arrays.copyOf(startColumns, capacity);
+    endLines = Arrays.copyOf(endLines, capacity);
+    endColumns = Arrays.copyOf(endColumns, capacity);
+    types = Arrays.copyOf(types, capacity);
+    replaceFroms = Arrays.copyOf(replaceFroms, capacity);
+    replaceTos = Arrays.copyOf(replaceTos, capacity);
+    references = Arrays.copyOf(references, capacity);
+  }
+}
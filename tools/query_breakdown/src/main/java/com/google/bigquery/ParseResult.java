@@ -0,0 +1,82 @@
+package com.google.bigquery;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParserPos;
+
+/**
+ * This class captures the outcome of parsing a query: either a success, or the position of the
+ * error along with the tokens the parser expected there. It is much lighter than keeping the
+ * exception itself around (no stack trace), so it can be cached for every explored query.
+ *
+ * When the query ends too early, the parser reports the error at the last token of the query,
+ * so the result also records whether it was the end of the input that was encountered.
+ */
+public class ParseResult implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final ParseResult SUCCESS =
+      new ParseResult(null, Collections.emptyList(), false);
+
+  // the start of the message of an error at the end of the input
+  private static final String END_OF_INPUT_MESSAGE = "Encountered \"<EOF>\"";
+
+  private final SqlParserPos errorPosition;
+  private final Collection<String> expectedTokens;
+  private final boolean atEndOfInput;
+
+  private ParseResult(SqlParserPos errorPosition, Collection<String> expectedTokens,
+      boolean atEndOfInput) {
+    this.errorPosition = errorPosition;
+    this.expectedTokens = expectedTokens;
+    this.atEndOfInput = atEndOfInput;
+  }
+
+  /**
+   * Returns the result for a query that was parsed without errors
+   */
+  public static ParseResult success() {
+    return SUCCESS;
+  }
+
+  /**
+   * Returns the result for a query that failed to parse with the given exception
+   */
+  public static ParseResult failure(SqlParseException e) {
+    return new ParseResult(e.getPos(), new ArrayList<>(e.getExpectedTokenNames()),
+        e.getMessage() != null && e.getMessage().startsWith(END_OF_INPUT_MESSAGE));
+  }
+
+  /**
+   * Keeps the success result a single instance when a result is read back from a checkpoint
+   */
+  private Object readResolve() {
+    return isSuccess() ? SUCCESS : this;
+  }
+
+  public boolean isSuccess() {
+    return errorPosition == null;
+  }
+
+  /**
+   * Getter methods for the error information. They are only meaningful for failed results.
+   */
+  public SqlParserPos getErrorPosition() {
+    return errorPosition;
+  }
+
+  public Collection<String> getExpectedTokens() {
+    return new ArrayList<>(expectedTokens);
+  }
+
+  /**
+   * Returns true if the parser encountered the end of the input, in which case the error
+   * position is that of the last token
+   */
+  public boolean isAtEndOfInput() {
+    return atEndOfInput;
+  }
+}
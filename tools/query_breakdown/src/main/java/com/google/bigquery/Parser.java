@@ -1,5 +1,8 @@
 package com.google.bigquery;
 
+import java.io.Reader;
+import org.apache.calcite.sql.parser.SqlParseException;
+
 /**
  * Interface for Parser to abstract out parser logic.
  *
@@ -12,4 +15,58 @@ public interface Parser {
    * throws an exception if not.
    */
   String parseQuery(String query) throws Exception;
+
+  /**
+   * Method that parses the query read from the given reader. Parsers that can consume a stream
+   * directly should override it; by default the query is read into a string first.
+   */
+  default String parseQuery(Reader reader) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    char[] buffer = new char[1024];
+    int read;
+    while ((read = reader.read(buffer, 0, buffer.length)) != -1) {
+      sb.append(buffer, 0, read);
+    }
+    return parseQuery(sb.toString());
+  }
+
+  /**
+   * Method that describes how the parser is configured, which a search checkpoint records so
+   * that it is only resumed with a parser accepting the same queries. By default, it is the
+   * class of the parser.
+   */
+  default String getConfiguration() {
+    return getClass().getName();
+  }
+
+  /**
+   * Method that only checks whether the given query parses, without producing the parsed
+   * version. Returns a lightweight ParseResult: a success, or the error position and the
+   * expected tokens. Parsers should override it when validating is cheaper than parsing.
+   */
+  default ParseResult validate(String query) {
+    try {
+      parseQuery(query);
+      return ParseResult.success();
+    } catch (SqlParseException e) {
+      return ParseResult.failure(e);
+    } catch (Exception e) {
+      throw new IllegalStateException("the parser failed without a parse error", e);
+    }
+  }
+
+  /**
+   * Method that only checks whether the query read from the given reader parses (see
+   * validate(String))
+   */
+  default ParseResult validate(Reader reader) {
+    try {
+      parseQuery(reader);
+      return ParseResult.success();
+    } catch (SqlParseException e) {
+      return ParseResult.failure(e);
+    } catch (Exception e) {
+      throw new IllegalStateException("the parser failed without a parse error", e);
+    }
+  }
 }
@@ -0,0 +1,95 @@
+package com.google.bigquery;
+
+import java.util.function.Supplier;
+import org.apache.calcite.avatica.util.Quoting;
+import org.apache.calcite.sql.parser.SqlParserImplFactory;
+import org.apache.calcite.sql.parser.babel.SqlBabelParserImpl;
+import org.apache.calcite.sql.parser.impl.SqlParserImpl;
+import org.apache.calcite.sql.validate.SqlConformanceEnum;
+
+/**
+ * This enum lists the grammars CalciteParser can parse queries with, along with the quoting of
+ * identifiers and the conformance each one uses unless told otherwise.
+ *
+ * CORE: the grammar of Calcite itself, the one the tool has always used
+ * BABEL: the lenient grammar of calcite-babel, which the query fixer uses
+ * BIGQUERY, DEFAULT_DIALECT, DIALECT1, POSTGRESQL: the dialect grammars the SQL classifier ships
+ *       in unsupervised_dataset/sql_classifier/classifier/bin. They are not dependencies of the
+ *       tool: their jars (and the calcite-core build they were generated with) must be put on
+ *       the classpath to use them, and their parser factory is looked up by name.
+ */
+public enum ParserDialect {
+  CORE("core", () -> SqlParserImpl.FACTORY, Quoting.DOUBLE_QUOTE, SqlConformanceEnum.DEFAULT),
+  BABEL("babel", () -> SqlBabelParserImpl.FACTORY, Quoting.DOUBLE_QUOTE,
+      SqlConformanceEnum.BABEL),
+  BIGQUERY("bigquery", () -> load("org.apache.calcite.sql.parser.bigquery.BigQueryParserImpl",
+      "calcite-bigquery.jar"), Quoting.BACK_TICK, SqlConformanceEnum.BIG_QUERY),
+  DEFAULT_DIALECT("defaultdialect", () -> load(
+      "org.apache.calcite.sql.parser.defaultdialect.DefaultDialectParserImpl",
+      "calcite-defaultdialect.jar"), Quoting.DOUBLE_QUOTE, SqlConformanceEnum.DEFAULT),
+  DIALECT1("dialect1", () -> load("org.apache.calcite.sql.parser.dialect1.Dialect1ParserImpl",
+      "calcite-dialect1.jar"), Quoting.DOUBLE_QUOTE, SqlConformanceEnum.DEFAULT),
+  POSTGRESQL("postgresql", () -> load(
+      "org.apache.calcite.sql.parser.postgresql.PostgreSQLParserImpl",
+      "calcite-postgresql.jar"), Quoting.DOUBLE_QUOTE, SqlConformanceEnum.LENIENT);
+
+  private final String name;
+  private final Supplier<SqlParserImplFactory> factory;
+  private final Quoting defaultQuoting;
+  private final SqlConformanceEnum defaultConformance;
+
+  ParserDialect(String name, Supplier<SqlParserImplFactory> factory, Quoting defaultQuoting,
+      SqlConformanceEnum defaultConformance) {
+    this.name = name;
+    this.factory = factory;
+    this.defaultQuoting = defaultQuoting;
+    this.defaultConformance = defaultConformance;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the factory of the generated parsers of the grammar. Throws an
+   * IllegalStateException if the grammar is not on the classpath.
+   */
+  public SqlParserImplFactory getFactory() {
+    return factory.get();
+  }
+
+  public Quoting getDefaultQuoting() {
+    return defaultQuoting;
+  }
+
+  public SqlConformanceEnum getDefaultConformance() {
+    return defaultConformance;
+  }
+
+  /**
+   * Returns the dialect with the given command line name. Throws an IllegalArgumentException if
+   * there is no such dialect.
+   */
+  public static ParserDialect fromName(String name) {
+    for (ParserDialect dialect : values()) {
+      if (dialect.name.equals(name)) {
+        return dialect;
+      }
+    }
+    throw new IllegalArgumentException("unknown dialect: " + name);
+  }
+
+  /**
+   * This helper method returns the FACTORY field of the given generated parser class, which
+   * comes from the given jar of the classifier
+   */
+  private static SqlParserImplFactory load(String parserClass, String jar) {
+    try {
+      return (SqlParserImplFactory) Class.forName(parserClass).getField("FACTORY").get(null);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      throw new IllegalStateException("the parser of this dialect is not on the classpath: "
+          + "add " + jar + " from unsupervised_dataset/sql_classifier/classifier/bin, along "
+          + "with the calcite-core build it was generated with", e);
+    }
+  }
+}
@@ -1,75 +1,548 @@
 package com.google.bigquery;
 
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import org.apache.calcite.sql.parser.SqlParseException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.calcite.sql.parser.SqlParserPos;
 
 /**
  * This class is where the main logic lives for the algorithm that this tool utilizes. It will
  * also be in charge of outputting the results.
  *
+ * The search is iterative: the states waiting to be explored are kept on an explicit stack (or
+ * queue for the best-first search) instead of the call stack, so the depth of the tree is not
+ * limited by the thread stack size, and a truncated search can be checkpointed and resumed (see
+ * SearchCheckpoint).
+ *
+ * If the recovery options enable it, a panic-mode pass runs before the search and gives it an
+ * upper bound on the number of unparseable components (see panic).
+ *
  * Note: functions in this class are left as package private for testing purposes. The visibility
  * (public/private) will properly be set in upcoming PR's.
  */
 public class QueryBreakdown {
+  // the parallel search hands work over to idle workers while fewer tasks than this are queued
+  private static final int SPLIT_THRESHOLD = 2;
+
+  // the tokens the panic-mode pass skips to, in upper case
+  private static final Set<String> SYNCHRONIZING_TOKENS =
+      new HashSet<>(Arrays.asList(";", ")", "FROM", "WHERE"));
+
+  // global fields that keeps track of the minimum unparseable component so far. The minimum is
+  // atomic so that the workers of the parallel search can prune against it without locking,
+  // while the solution (and its branch path, used to break ties) is only updated under the lock
+  private final AtomicInteger minimumUnparseableComp;
+  private int solution;
+  private int[] solutionPath;
+
+  // whether the solution was found by the panic-mode pass. The search then only looks for
+  // solutions with fewer unparseable components, so the minimum is one less than the number of
+  // components of the solution, and the first solution of the search at the minimum replaces it
+  private boolean provisional;
+
+  // the best partial solution: the explored node whose remaining error lies furthest into the
+  // original query, reported if the search is truncated before any solution is found
+  private int partialSolution;
+  private long partialProgress;
 
-  // global fields that keeps track of the minimum unparseable component so far
-  private int minimumUnparseableComp;
-  private Node solution;
+  // the nodes of the generated tree, restored along with the rest of a checkpoint
+  private NodeArena arena;
 
-  // the generated tree
-  private final Node root;
+  // the digest of the original query of the last search, recorded in its checkpoint
+  private byte[] queryDigest;
   private final Parser parser;
 
+  // how the tree is traversed
+  private final SearchStrategy strategy;
+  private final int parallelism;
+
+  // whether intermediate queries are edit lists over the lexed query instead of strings
+  private final boolean tokenRewriting;
+
+  // the recoveries tried besides deletion, and how many candidates each may branch into
+  private final RecoveryOptions recoveries;
+
+  // remembers the explored intermediate queries so that converging paths are not parsed again
+  private MemoTable<Object> memo;
+
+  // the parse outcomes of the intermediate queries of the panic-mode pass, which the search
+  // reuses instead of calling the parser again when it reaches the same queries
+  private final HashMap<Object, ParseResult> panicResults;
+
+  /* the states waiting to be explored: the stack of the depth-first search (top first), or the
+     children of the best-first search that have been generated but not parsed yet. The queue
+     holds the parsed states of the best-first search, ordered by nextOrder among equals. What is
+     left of them once a budget runs out is what a checkpoint resumes from */
+  private final ArrayDeque<SearchState> pending;
+  private final PriorityQueue<SearchState> queue;
+  private long nextOrder;
+
+  // budgets of the current run, and the budget that ran out if the search was truncated. The
+  // budgets of a resumed search only count the nodes and parser calls made since startNodes and
+  // startParseCalls
+  private SearchBudget budget;
+  private long startNanos;
+  private int startNodes;
+  private int startParseCalls;
+  private volatile SearchBudget.Limit truncation;
+
+  // performance counters for the search
+  private final AtomicInteger nodes;
+  private final AtomicInteger parseCalls;
+  private final AtomicInteger memoHits;
+  private final AtomicInteger memoPrunes;
+  private final AtomicInteger boundPrunes;
+
   /**
    * Constructor for the QueryBreakdown object. We model this class as an object rather than
    * through static methods because the user should be able to call QueryBreakdown multiple
    * times and create multiple instances of it.
    */
   public QueryBreakdown(Parser parser) {
-    this.minimumUnparseableComp = Integer.MAX_VALUE;
-    this.root = new Node();
+    this(parser, SearchStrategy.DEPTH_FIRST);
+  }
+
+  /**
+   * Constructor for the QueryBreakdown object with a specific search strategy
+   */
+  public QueryBreakdown(Parser parser, SearchStrategy strategy) {
+    this(parser, strategy, 1);
+  }
+
+  /**
+   * Constructor for the QueryBreakdown object with a specific search strategy and parallelism
+   * level. With a parallelism greater than 1, the depth-first search explores the branches of
+   * the tree on a ForkJoinPool with that many workers (the parser must then be thread-safe).
+   * The best-first search always runs on the calling thread.
+   */
+  public QueryBreakdown(Parser parser, SearchStrategy strategy, int parallelism) {
+    this(parser, strategy, parallelism, false);
+  }
+
+  /**
+   * Constructor for the QueryBreakdown object that can also enable the token rewriting mode. In
+   * this mode, the query is lexed once into a TokenizedQuery, each intermediate query is a
+   * compact TokenEdits over it instead of a new string, and the parser reads the edited query
+   * through a Reader.
+   */
+  public QueryBreakdown(Parser parser, SearchStrategy strategy, int parallelism,
+      boolean tokenRewriting) {
+    this(parser, strategy, parallelism, tokenRewriting, RecoveryOptions.DELETION_ONLY);
+  }
+
+  /**
+   * Constructor for the QueryBreakdown object that can also enable other recoveries than
+   * deletion. The best expected tokens are then also inserted at each error or put in its place,
+   * up to the beam widths of the options. These children are only generated while they can
+   * still lead to a solution within the bound of the search.
+   */
+  public QueryBreakdown(Parser parser, SearchStrategy strategy, int parallelism,
+      boolean tokenRewriting, RecoveryOptions recoveries) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+    }
+    this.minimumUnparseableComp = new AtomicInteger(Integer.MAX_VALUE);
+    this.arena = new NodeArena();
+    this.solution = NodeArena.NONE;
+    this.partialSolution = NodeArena.NONE;
     this.parser = parser;
+    this.strategy = strategy;
+    this.parallelism = parallelism;
+    this.tokenRewriting = tokenRewriting;
+    this.recoveries = recoveries;
+    this.memo = new MemoTable<>();
+    this.panicResults = new HashMap<>();
+    this.pending = new ArrayDeque<>();
+    this.queue = new PriorityQueue<>(SearchState.BEST_FIRST_ORDER);
+    this.budget = SearchBudget.UNLIMITED;
+    this.partialProgress = -1;
+    this.nodes = new AtomicInteger();
+    this.parseCalls = new AtomicInteger();
+    this.memoHits = new AtomicInteger();
+    this.memoPrunes = new AtomicInteger();
+    this.boundPrunes = new AtomicInteger();
   }
 
   /**
    * This is the method that will run QueryBreakdown given an original query and output
-   * it to the specified output file or commandline. The provided errorLimit will stop the
-   * tool from running over a certain time.
+   * it to the specified output file or commandline. The provided errorLimit bounds the number
+   * of errors (nodes of the tree) explored, and is unlimited if it is 0.
    *
-   * TODO: output file feature and runtime limit support
+   * If an output file is given (a null or empty name means the commandline), a report with a
+   * single record for the query is written to it instead, in the format given by its name (see
+   * ReportWriter).
    */
   public void run(String originalQuery, String outputFile, int errorLimit,
       LocationTracker locationTracker) {
+    run(originalQuery, outputFile, new SearchBudget(0, 0, errorLimit), locationTracker);
+  }
+
+  /**
+   * This is the method that will run QueryBreakdown under the given budgets. Once a budget runs
+   * out, the search stops cooperatively and the best solution found so far is output, followed
+   * by a line saying that the search was truncated (see isTruncated). If no solution has been
+   * found by then, the recoveries leading to the explored query that parses furthest are output
+   * instead.
+   */
+  public void run(String originalQuery, String outputFile, SearchBudget budget,
+      LocationTracker locationTracker) {
+    run(originalQuery, null, outputFile, budget, locationTracker);
+  }
+
+  /**
+   * This is the method that will run QueryBreakdown under the given budgets as above, with the
+   * source of the query (the path of the input file) written to the report in the output file
+   */
+  public void run(String originalQuery, String source, String outputFile, SearchBudget budget,
+      LocationTracker locationTracker) {
+    long startNanos = System.nanoTime();
+    ArrayList<UnparseableComponent> components = search(originalQuery, budget, locationTracker);
+    output(components, source, outputFile, System.nanoTime() - startNanos);
+  }
 
-    // uses the loop function to generate and traverse the tree of possible error recoveries
-    // this will set the variable solution
-    loop(originalQuery, errorLimit, root, 0, locationTracker);
+  /**
+   * This is the method that will resume a truncated search of the given original query from a
+   * checkpoint under the given budgets, and output its result as run does
+   */
+  public void run(SearchCheckpoint checkpoint, String originalQuery, String outputFile,
+      SearchBudget budget) {
+    run(checkpoint, originalQuery, null, outputFile, budget);
+  }
+
+  /**
+   * This is the method that will resume a truncated search from a checkpoint as above, with the
+   * source of the query written to the report in the output file
+   */
+  public void run(SearchCheckpoint checkpoint, String originalQuery, String source,
+      String outputFile, SearchBudget budget) {
+    long startNanos = System.nanoTime();
+    ArrayList<UnparseableComponent> components = resume(checkpoint, originalQuery, budget);
+    output(components, source, outputFile, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * This method prints the unparseable components of a search, followed by the truncation
+   * message if the search was truncated, or writes them to the report in the output file if
+   * there is one, with the given source (which may be null). Throws an UncheckedIOException if
+   * the report cannot be written.
+   */
+  private void output(ArrayList<UnparseableComponent> components, String source,
+      String outputFile, long wallNanos) {
+    if (outputFile != null && !outputFile.isEmpty()) {
+      try (ReportWriter report = ReportWriter.open(new File(outputFile))) {
+        report.write(source, getResult(components, wallNanos));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return;
+    }
 
     // case where entire query can be parsed
-    if (solution.equals(root)) {
+    if (solution == NodeArena.ROOT) {
       System.out.println("The entire query can be parsed without error");
     }
 
-    // write termination logic for output (tracing the node back, reconstructing path, output)
-    Node current = solution;
-    while (current.getParent() != null) {
-      // print out the result
-      System.out.println(String.format("Unparseable portion: Start Line %1$s, End Line %2$s, "
-          + "Start Column %3$s, End Column %4$s, %5$s", current.getStartLine(),
-          current.getEndLine(), current.getStartColumn(), current.getEndColumn(),
-          current.getErrorHandlingType()));
+    // write termination logic for output
+    for (UnparseableComponent component : components) {
+      // print out the result, which also says what a replaced component was replaced with
+      System.out.println(component);
+    }
+
+    if (truncation != null) {
+      System.out.println(getTruncationMessage());
+    }
+  }
+
+  /**
+   * This method runs the search under the given budgets and returns the unparseable components
+   * of the solution (or of the best partial solution if the search was truncated before finding
+   * one), from the last one in the query to the first one. The list is empty if the entire query
+   * can be parsed.
+   */
+  public ArrayList<UnparseableComponent> search(String originalQuery, SearchBudget budget,
+      LocationTracker locationTracker) {
+    SearchState start = tokenRewriting
+        ? new SearchState(new TokenEdits(new TokenizedQuery(originalQuery)), NodeArena.ROOT, 0,
+            locationTracker)
+        : new SearchState(originalQuery, NodeArena.ROOT, 0, locationTracker);
+    if (isParallel()) {
+      start.setPath(new int[0]);
+    }
+
+    // the states left by an earlier truncated search are dropped
+    queryDigest = SearchCheckpoint.digest(originalQuery);
+    discardPending();
+    panicResults.clear();
+    pending.push(start);
+    return explore(budget, recoveries.isPanicMode() ? start : null);
+  }
 
-      // if replacement
-      if (current.getErrorHandlingType().equals("Replacement")) {
-        System.out.print(String.format(": replaced %1$s with %2$s", current.getReplaceFrom(),
-            current.getReplaceTo()));
+  /**
+   * This method resumes a truncated search from a checkpoint taken by checkpoint, possibly by
+   * another QueryBreakdown object, and returns the unparseable components as search does. The
+   * budgets only apply to the resumed part of the search, and the search can be truncated and
+   * checkpointed again. The checkpoint must have been taken by a search of the same original
+   * query, with the same strategy, parallelism (sequential or parallel), token rewriting,
+   * recovery options and parser configuration, or else an IllegalArgumentException is thrown.
+   * It should not be resumed more than once.
+   */
+  public ArrayList<UnparseableComponent> resume(SearchCheckpoint checkpoint,
+      String originalQuery, SearchBudget budget) {
+    if (checkpoint.getStrategy() != strategy || checkpoint.isParallel() != isParallel()) {
+      throw new IllegalArgumentException("the checkpoint was taken by a "
+          + (checkpoint.isParallel() ? "parallel " : "sequential ")
+          + checkpoint.getStrategy() + " search");
+    }
+    if (!MessageDigest.isEqual(checkpoint.getQueryDigest(),
+        SearchCheckpoint.digest(originalQuery))) {
+      throw new IllegalArgumentException("the checkpoint was taken for another query");
+    }
+    if (checkpoint.isTokenRewriting() != tokenRewriting) {
+      throw new IllegalArgumentException("the checkpoint was taken "
+          + (checkpoint.isTokenRewriting() ? "with" : "without") + " token rewriting");
+    }
+    if (!checkpoint.getRecoveries().equals(recoveries)) {
+      throw new IllegalArgumentException("the checkpoint was taken with other recovery "
+          + "options: " + checkpoint.getRecoveries());
+    }
+    if (!checkpoint.getParserConfiguration().equals(parser.getConfiguration())) {
+      throw new IllegalArgumentException("the checkpoint was taken with another parser: "
+          + checkpoint.getParserConfiguration());
+    }
+    queryDigest = checkpoint.getQueryDigest();
+    arena = checkpoint.getArena();
+    solution = checkpoint.getSolution();
+    solutionPath = checkpoint.getSolutionPath();
+    provisional = checkpoint.isProvisional();
+    minimumUnparseableComp.set(checkpoint.getMinimumUnparseableComp());
+    partialSolution = checkpoint.getPartialSolution();
+    partialProgress = checkpoint.getPartialProgress();
+    memo = checkpoint.getMemo();
+    panicResults.clear();
+    panicResults.putAll(checkpoint.getPanicResults());
+    nextOrder = checkpoint.getNextOrder();
+    nodes.set(checkpoint.getNodesExplored());
+    parseCalls.set(checkpoint.getParseCalls());
+    memoHits.set(checkpoint.getMemoHits());
+    memoPrunes.set(checkpoint.getMemoPrunes());
+    boundPrunes.set(checkpoint.getBoundPrunes());
+
+    // the parsed states of the best-first search go back to its queue
+    pending.clear();
+    queue.clear();
+    for (SearchState state : checkpoint.getPending()) {
+      if (strategy == SearchStrategy.BEST_FIRST && state.getResult() != null) {
+        queue.add(state);
+      }
+      else {
+        pending.addLast(state);
       }
+    }
+    return explore(budget, null);
+  }
 
-      // update for loop
-      current = current.getParent();
+  /**
+   * This method returns a checkpoint of the last search if it was truncated, from which resume
+   * continues it, or null if the search ran to the end
+   */
+  public SearchCheckpoint checkpoint() {
+    if (truncation == null) {
+      return null;
     }
+    ArrayList<SearchState> states = new ArrayList<>(pending);
+    states.addAll(queue);
+    return new SearchCheckpoint(strategy, isParallel(), queryDigest, tokenRewriting, recoveries,
+        parser.getConfiguration(), arena, solution, solutionPath, provisional,
+        minimumUnparseableComp.get(), partialSolution, partialProgress, memo,
+        new HashMap<>(panicResults), states, nextOrder, nodes.get(), parseCalls.get(),
+        memoHits.get(), memoPrunes.get(), boundPrunes.get());
+  }
+
+  /**
+   * This method explores the pending states under the given budgets, and returns the
+   * unparseable components of the solution. The panic-mode pass runs first from the given
+   * state, unless it is null.
+   */
+  private ArrayList<UnparseableComponent> explore(SearchBudget budget, SearchState panicStart) {
+    this.budget = budget;
+    this.startNanos = System.nanoTime();
+    this.startNodes = nodes.get();
+    this.startParseCalls = parseCalls.get();
+    this.truncation = null;
+
+    if (panicStart != null) {
+      panic(panicStart);
+    }
+
+    // uses the loop function (or the best-first search) to generate and traverse the tree of
+    // possible error recoveries. This will set the variable solution
+    if (strategy == SearchStrategy.BEST_FIRST) {
+      bestFirst();
+    }
+    else if (isParallel()) {
+      parallelLoop();
+    }
+    else {
+      loop();
+    }
+
+    // traces the node back to the root to reconstruct the path
+    int current = solution;
+    if (current == NodeArena.NONE) {
+      current = (partialSolution == NodeArena.NONE) ? NodeArena.ROOT : partialSolution;
+    }
+    return arena.components(current);
+  }
+
+  /**
+   * Returns true if the depth-first search runs on several workers
+   */
+  private boolean isParallel() {
+    return strategy == SearchStrategy.DEPTH_FIRST && parallelism > 1;
+  }
+
+  /**
+   * Returns the line saying why the last search was truncated, or null if it was not
+   */
+  public String getTruncationMessage() {
+    if (truncation == null) {
+      return null;
+    }
+    return String.format("The search was truncated by the %1$s after exploring "
+        + "%2$s errors%3$s", truncation.getDescription(), nodes.get(),
+        (solution == NodeArena.NONE) ? ", before the query could be parsed" : "");
+  }
+
+  /**
+   * This is the panic-mode pass, which runs before the search when the recovery options enable
+   * it. It follows a single branch: at each error, the tokens from the error up to the next
+   * synchronizing token (a semicolon, a closing parenthesis, FROM or WHERE) on the same line are
+   * deleted at once, or only the error if it is a synchronizing token itself, and the query is
+   * parsed again. Each deleted token is one unparseable component, as if the search had deleted
+   * it, and every parse deletes at least one token, so the pass takes at most one parse per
+   * token of the query, and usually one per error.
+   *
+   * If the query ends up parsing, the recoveries are recorded as a provisional solution, and the
+   * search starts with a minimum of one less than its number of unparseable components, so that
+   * it only explores the branches that can lead to a better solution: a query that fails with
+   * a single error is done once the pass has parsed it twice. The pass gives up without a bound
+   * when a budget runs out or when an error cannot be mapped to tokens of the original query.
+   * Its parse outcomes are kept so that the search does not parse the same queries again,
+   * starting with the original query.
+   */
+  private void panic(SearchState start) {
+    TokenizedQuery tokens = (start.getEdits() != null) ? start.getEdits().getTokens()
+        : new TokenizedQuery(start.getQuery());
+    TokenEdits edits = new TokenEdits(tokens);
+    LocationTracker locationTracker = start.getLocationTracker();
+    int node = NodeArena.ROOT;
+    int depth = 0;
+
+    while (budget.exhausted(startNanos, parseCalls.get() - startParseCalls,
+        nodes.get() - startNodes) == null) {
+      Object key = tokenRewriting ? edits : edits.toString();
+      parseCalls.incrementAndGet();
+      SearchState state = new SearchState(edits, node, depth, locationTracker);
+      ParseResult result = nothingLeft(state, parser.validate(edits.reader()));
+      panicResults.put(key, result);
+      if (result.isSuccess()) {
+        synchronized (this) {
+          // the pass holds the reference of the node, which it hands over to the solution
+          if (depth <= minimumUnparseableComp.get()) {
+            minimumUnparseableComp.set(depth - 1);
+            arena.release(solution);
+            solution = node;
+            solutionPath = null;
+            provisional = true;
+            return;
+          }
+        }
+        break;
+      }
+
+      // finds the error and the tokens to delete in the original query
+      SqlParserPos pos = errorPosition(state, result);
+      int line = pos.getLineNum();
+      int originalColumn = locationTracker.getOriginalPosition(line, pos.getColumnNum());
+      int offset = tokens.offsetOf(line, originalColumn);
+      int first = tokens.firstTokenFrom(offset);
+      int last = skippedUntil(tokens, edits, offset, first);
+      if (last < first) {
+        break;
+      }
+
+      // one node per token, from the first one, and the columns of the first token in the
+      // intermediate query, where nothing has been deleted after it yet
+      int column = pos.getColumnNum() + tokens.getStart(first) - offset;
+      for (int token = first; token <= last; token++) {
+        int child = arena.deletion(node, line, originalColumn + tokens.getStart(token) - offset,
+            line, originalColumn + tokens.getEnd(token) - offset);
+        arena.release(node);
+        node = child;
+      }
+      // the tokens are deleted from the last one so that the columns of the others still hold
+      for (int token = last; token >= first; token--) {
+        locationTracker = locationTracker.delete(line,
+            column + tokens.getStart(token) - tokens.getStart(first),
+            column + tokens.getEnd(token) - tokens.getStart(first));
+      }
+      edits = edits.delete(first, last);
+      depth += last - first + 1;
+    }
+    arena.release(node);
+  }
+
+  /**
+   * This helper method returns the last token the panic-mode pass deletes along with the given
+   * first token, which the error at the given offset lies in or just before. Returns -1 if the
+   * first token is not on the line of the error, spans several lines, or has already been
+   * deleted.
+   */
+  private static int skippedUntil(TokenizedQuery tokens, TokenEdits edits, int offset,
+      int first) {
+    String query = tokens.getQuery();
+    if (first >= tokens.size() || tokens.isMultiLine(first) || edits.isEdited(first)) {
+      return -1;
+    }
+    int newLine = query.indexOf('\n', offset);
+    if (newLine != -1 && newLine < tokens.getStart(first)) {
+      return -1;
+    }
+    int last = first;
+    while (last + 1 < tokens.size() && !isSynchronizing(tokens.getToken(first))) {
+      int next = last + 1;
+      newLine = query.indexOf('\n', tokens.getEnd(last));
+      if (isSynchronizing(tokens.getToken(next)) || tokens.isMultiLine(next)
+          || edits.isEdited(next) || (newLine != -1 && newLine < tokens.getStart(next))) {
+        break;
+      }
+      last = next;
+    }
+    return last;
+  }
+
+  /**
+   * Returns true if the panic-mode pass skips to the given token
+   */
+  private static boolean isSynchronizing(String token) {
+    return SYNCHRONIZING_TOKENS.contains(token.toUpperCase(Locale.ROOT));
   }
 
   /**
@@ -79,67 +552,843 @@ public class QueryBreakdown {
    * number of unparseable components than the global minimum, it sets the solution as
    * the global solution and also alters the minimumUnparseableComp variable.
    *
-   * TODO: implement errorLimit logic, deal with exception casting
+   * The states are taken from the top of the pending stack, and the children of a state are
+   * pushed so that the first one is explored first, which is the order of a recursive
+   * depth-first search without its depth limit.
+   *
+   * Intermediate queries are looked up in the memo table first: a query that has already been
+   * explored at a smaller or equal depth is pruned, and otherwise its parse outcome is reused.
+   *
+   * The budgets are checked before each node is explored: once one runs out, the loop returns
+   * and the states that have not been explored are left on the stack.
+   *
+   * The children of a node are parsed before any of them is explored (see lookAhead), so a
+   * state usually arrives with its parse outcome already set.
    */
-  private void loop(String inputQuery, int errorLimit, Node parent, int depth,
-      LocationTracker locationTracker) {
-    // termination for branch
-    if (depth > minimumUnparseableComp) {
-      return;
+  private void loop() {
+    while (!pending.isEmpty() && !isTruncated()) {
+      SearchState state = pending.pop();
+      SearchState[] children = step(state);
+      if (children == null) {
+        // the budget ran out before the state or its children could be parsed
+        pending.push(state);
+        return;
+      }
+      for (int i = children.length - 1; i >= 0; i--) {
+        pending.push(children[i]);
+      }
     }
-    try {
-      parser.parseQuery(inputQuery);
-    } catch (Exception e) {
-      // generates new queries through deletion and replacement
-      SqlParserPos pos = ((SqlParseException) e).getPos();
-      /* deletion: gets the new query, creates a node, and calls the loop again */
-
-      // gets the error location in the original query
-      int originalStartColumn =
-          locationTracker.getOriginalPosition(pos.getLineNum(), pos.getColumnNum());
-      int originalEndColumn =
-          locationTracker.getOriginalPosition(pos.getLineNum(), pos.getEndColumnNum());;
-
-      // gets the new query
-      String deletionQuery = deletion(inputQuery, pos.getLineNum(), pos.getColumnNum(),
-          pos.getEndColumnNum());
-
-      // updates the location tracker to reflect the deletion
-      LocationTracker deletedLt = locationTracker.delete
-          (pos.getLineNum(), pos.getColumnNum(), pos.getEndColumnNum());
-
-      // creates a node for this deletion
-      Node deletionNode = new Node(parent, pos.getLineNum(), originalStartColumn,
-          pos.getEndLineNum(), originalEndColumn, depth + 1 );
-
-      // calls the loop again
-      loop(deletionQuery, errorLimit, deletionNode, depth + 1, deletedLt);
-
-      /**
-      // replacement: gets the new queries, creates nodes, and calls the loop for each of them
-      ArrayList<ReplacedComponent> replacementQueries = replacement(inputQuery, pos.getLineNum(),
-          pos.getColumnNum(), pos.getEndColumnNum(),
-          ((SqlParseException) e).getExpectedTokenNames());
-
-      // recursively loops through the new queries
-      for (ReplacedComponent r: replacementQueries) {
-        Node replacementNode = new Node(parent, pos.getLineNum(), pos.getColumnNum(),
-            pos.getEndLineNum(), pos.getEndColumnNum(), r.getOriginal(), r.getReplacement(),
-            depth + 1);
-        loop(r.getQuery(), errorLimit, replacementNode, depth + 1);
-      }
-       **/
-
-      /* termination to end the loop if the instance was not a full run through the query.
-      In other words, it ensures that the termination condition is not hit on the way back
-      up the tree */
-      return;
+  }
+
+  /**
+   * This method explores one state of the depth-first search, and returns its children that are
+   * left to explore, in order (empty if the branch ends there). Returns null if a budget ran out
+   * before the state or its children could be parsed, in which case the state should be
+   * explored again once the search is resumed.
+   */
+  private SearchState[] step(SearchState state) {
+    // termination for branch, against the best solution found so far
+    if (state.getDepth() > minimumUnparseableComp.get()) {
+      boundPrunes.incrementAndGet();
+      arena.release(state.getNode());
+      return new SearchState[0];
+    }
+
+    // looks up the intermediate query in the memo table before calling the parser
+    ParseResult result = state.getResult();
+    if (result == null) {
+      if (!withinBudget()) {
+        return null;
+      }
+      result = visit(state);
+      if (result == null) {
+        arena.release(state.getNode());
+        return new SearchState[0];
+      }
+      // the state is explored again if the budget runs out during its look-ahead
+      state.setResult(result);
     }
+
     // termination condition: if the parsing doesn't throw exceptions, then the leaf is reached
-    if (depth < minimumUnparseableComp) {
-      minimumUnparseableComp = depth;
-      solution = parent;
+    if (result.isSuccess()) {
+      offerSolution(state.getNode(), state.getDepth(), state.getPath());
+      arena.release(state.getNode());
+      return new SearchState[0];
+    }
+    offerPartialSolution(state, result);
+
+    // generates new queries through deletion, insertion and replacement
+    ArrayList<SearchState> children = lookAhead(state, result);
+    if (children == null) {
+      return null;
+    }
+    // the node of the state stays alive as long as its children do
+    arena.release(state.getNode());
+    children.removeIf(child -> child == null);
+    return children.toArray(new SearchState[0]);
+  }
+
+  /**
+   * This method runs the depth-first search on a ForkJoinPool. Each task works through its own
+   * stack of states like loop does, and hands the state at the bottom of its stack (the
+   * shallowest, so the largest subtree) over to a new task whenever the pool runs short of
+   * queued work. Once a budget runs out, the states left on the stacks are gathered back into
+   * the pending stack in the order of the sequential search.
+   */
+  private void parallelLoop() {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    ConcurrentLinkedQueue<SearchState> leftovers = new ConcurrentLinkedQueue<>();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    try {
+      ArrayDeque<SearchState> stack = new ArrayDeque<>(pending);
+      pending.clear();
+      pool.execute(new BranchTask(pool, stack, leftovers, failure));
+      pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } finally {
+      pool.shutdown();
+    }
+
+    Throwable thrown = failure.get();
+    if (thrown instanceof RuntimeException) {
+      throw (RuntimeException) thrown;
+    }
+    if (thrown instanceof Error) {
+      throw (Error) thrown;
+    }
+
+    ArrayList<SearchState> states = new ArrayList<>(leftovers);
+    states.sort((a, b) -> MemoTable.comparePaths(a.getPath(), b.getPath()));
+    pending.addAll(states);
+  }
+
+  /**
+   * This class is a worker of the parallel depth-first search. Along with the node, each state
+   * carries its branch path (the index of the child taken at each level), so that solutions and
+   * memo visits at the same depth are resolved exactly as the sequential search would, whatever
+   * the thread count and however the work is split. Tasks are never joined: the search is over
+   * once the pool is quiescent. New tasks are submitted to the pool explicitly, as the caller
+   * waiting for quiescence may run a task itself, and a task forked outside of a worker would go
+   * to the common pool instead.
+   */
+  private class BranchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ForkJoinPool pool;
+    private final ArrayDeque<SearchState> stack;
+    private final ConcurrentLinkedQueue<SearchState> leftovers;
+    private final AtomicReference<Throwable> failure;
+
+    BranchTask(ForkJoinPool pool, ArrayDeque<SearchState> stack,
+        ConcurrentLinkedQueue<SearchState> leftovers, AtomicReference<Throwable> failure) {
+      this.pool = pool;
+      this.stack = stack;
+      this.leftovers = leftovers;
+      this.failure = failure;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        while (!stack.isEmpty() && failure.get() == null) {
+          if (isTruncated()) {
+            leftovers.addAll(stack);
+            return;
+          }
+          SearchState state = stack.pop();
+          SearchState[] children = step(state);
+          if (children == null) {
+            stack.push(state);
+            leftovers.addAll(stack);
+            return;
+          }
+          for (int i = children.length - 1; i >= 0; i--) {
+            stack.push(children[i]);
+          }
+
+          while (stack.size() > 1 && getSurplusQueuedTaskCount() < SPLIT_THRESHOLD) {
+            ArrayDeque<SearchState> split = new ArrayDeque<>();
+            split.push(stack.pollLast());
+            pool.execute(new BranchTask(pool, split, leftovers, failure));
+          }
+        }
+      } catch (RuntimeException | Error e) {
+        // the exception of a task that is never joined would be lost otherwise
+        failure.compareAndSet(null, e);
+      }
+    }
+  }
+
+  /**
+   * This method generates the children of a failing state and parses all of them before any is
+   * explored further. If one of them parses, it is a solution with a single more unparseable
+   * component, which nothing below its siblings can beat: the solution is recorded, which
+   * tightens the bound for the rest of the search, and no child is left to explore. This is what
+   * keeps the branching of replacement cheap, as most wrong candidates are dropped right there
+   * instead of being searched below.
+   *
+   * Otherwise, the children are returned with their parse outcomes set, and the children pruned
+   * by the memo table are null. The list is empty if a child parses. In the parallel search,
+   * each child gets its branch path.
+   *
+   * Returns null if a budget runs out, in which case the children are kept by the state, and
+   * the look-ahead goes on from the first unparsed child when the search is resumed.
+   */
+  private ArrayList<SearchState> lookAhead(SearchState state, ParseResult result) {
+    ArrayList<SearchState> children = state.getChildren();
+    state.setChildren(null);
+    if (children == null) {
+      children = expand(state, result);
+      int[] path = state.getPath();
+      if (path != null) {
+        for (int i = 0; i < children.size(); i++) {
+          children.get(i).setPath(childPath(path, i));
+        }
+      }
+    }
+
+    for (int i = 0; i < children.size(); i++) {
+      SearchState child = children.get(i);
+      // skips the children pruned or parsed before the search was checkpointed
+      if (child == null || child.getResult() != null) {
+        continue;
+      }
+      if (child.getDepth() > minimumUnparseableComp.get()) {
+        boundPrunes.incrementAndGet();
+        arena.release(child.getNode());
+        children.set(i, null);
+        continue;
+      }
+      if (!withinBudget()) {
+        state.setChildren(children);
+        return null;
+      }
+      ParseResult childResult = visit(child);
+      if (childResult == null) {
+        arena.release(child.getNode());
+        children.set(i, null);
+        continue;
+      }
+      if (childResult.isSuccess()) {
+        offerSolution(child.getNode(), child.getDepth(), child.getPath());
+        for (SearchState sibling : children) {
+          if (sibling != null) {
+            arena.release(sibling.getNode());
+          }
+        }
+        return new ArrayList<>();
+      }
+      child.setResult(childResult);
+    }
+    return children;
+  }
+
+  /**
+   * Returns the branch path of the index-th child of the node at the given path
+   */
+  private static int[] childPath(int[] path, int index) {
+    int[] childPath = Arrays.copyOf(path, path.length + 1);
+    childPath[path.length] = index;
+    return childPath;
+  }
+
+  /**
+   * This method records a solution if it has fewer unparseable components than the best one so
+   * far. In the parallel search, a solution with the same number of components also replaces the
+   * best one if its branch path is smaller, which keeps the result independent of the order in
+   * which the workers finish. The solution of the panic-mode pass is replaced by the first
+   * solution of the search, which always has fewer components (see panic).
+   */
+  private synchronized void offerSolution(int node, int depth, int[] path) {
+    int minimum = minimumUnparseableComp.get();
+    if (depth < minimum || (depth == minimum && (provisional || (path != null
+        && solutionPath != null && MemoTable.comparePaths(path, solutionPath) < 0)))) {
+      minimumUnparseableComp.set(depth);
+      arena.retain(node);
+      arena.release(solution);
+      solution = node;
+      solutionPath = path;
+      provisional = false;
+    }
+  }
+
+  /**
+   * This method records a failing node as the best partial solution if its error lies further
+   * into the original query than that of the best partial solution so far.
+   */
+  private void offerPartialSolution(SearchState state, ParseResult result) {
+    SqlParserPos pos = errorPosition(state, result);
+    long progress = ((long) pos.getLineNum() << 32) | state.getLocationTracker()
+        .getOriginalPosition(pos.getLineNum(), pos.getColumnNum());
+    synchronized (this) {
+      if (progress > partialProgress) {
+        partialProgress = progress;
+        arena.retain(state.getNode());
+        arena.release(partialSolution);
+        partialSolution = state.getNode();
+      }
+    }
+  }
+
+  /**
+   * This method returns the position of the error of a failed parse. When the parser reaches
+   * the end of the query, it reports the error just after the last token, which may be past the
+   * end of a line or on an empty line if whitespace follows. The error is then moved back onto
+   * the last character of the query, where the parser reports it when nothing follows the last
+   * token. In the token rewriting mode, that character is found from the edit list, without
+   * building the intermediate query.
+   */
+  private static SqlParserPos errorPosition(SearchState state, ParseResult result) {
+    SqlParserPos pos = result.getErrorPosition();
+    if (!result.isAtEndOfInput()) {
+      return pos;
+    }
+    int line;
+    int column;
+    if (state.getEdits() != null) {
+      int[] last = state.getEdits().lastPosition(false);
+      if (last == null) {
+        return pos;
+      }
+      line = last[0];
+      column = last[1];
+    }
+    else {
+      String query = state.getQuery();
+      int end = query.length() - 1;
+      while (end >= 0 && Character.isWhitespace(query.charAt(end))) {
+        end--;
+      }
+      if (end < 0) {
+        return pos;
+      }
+      int lineStart = query.lastIndexOf('\n', end) + 1;
+      line = 1;
+      for (int i = 0; i < lineStart; i++) {
+        if (query.charAt(i) == '\n') {
+          line++;
+        }
+      }
+      column = end - lineStart + 1;
+    }
+    if (line < pos.getLineNum() || (line == pos.getLineNum() && column < pos.getColumnNum())) {
+      return new SqlParserPos(line, column, line, column);
+    }
+    return pos;
+  }
+
+  /**
+   * This method is called before a node is explored. It returns true and counts the node if
+   * the run is still within its budgets, and false if the search should stop, in which case it
+   * records the budget that ran out.
+   */
+  private boolean withinBudget() {
+    if (truncation != null) {
+      return false;
+    }
+    SearchBudget.Limit limit = budget.exhausted(startNanos,
+        parseCalls.get() - startParseCalls, nodes.get() - startNodes);
+    if (limit != null) {
+      truncation = limit;
+      return false;
+    }
+    nodes.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * This is the best-first (A*) version of the search. Instead of going down the first child,
+   * all generated states are kept in a priority queue ordered by the number of unparseable
+   * components so far plus an estimate of the remaining errors (see SearchState). Since the
+   * estimate never overshoots, the first state taken from the queue whose query parses is a
+   * solution with the minimum number of unparseable components, and the search stops there.
+   * A child that parses is accepted as soon as it is generated: its total is that of its parent,
+   * which is already the smallest in the queue.
+   *
+   * The children of a state are put on the pending stack before they are parsed, so that the
+   * ones that are left when a budget runs out can be resumed from a checkpoint.
+   *
+   * The states that cannot beat the solution of the panic-mode pass are dropped, and the search
+   * stops once the queue holds no other state.
+   */
+  private void bestFirst() {
+    while (true) {
+      // parses the pending states and moves them to the queue
+      while (!pending.isEmpty()) {
+        SearchState state = pending.peek();
+        if (state.getDepth() > minimumUnparseableComp.get()) {
+          boundPrunes.incrementAndGet();
+          pending.pop();
+          arena.release(state.getNode());
+          continue;
+        }
+        if (!withinBudget()) {
+          return;
+        }
+        pending.pop();
+        ParseResult result = visit(state);
+        if (result == null) {
+          arena.release(state.getNode());
+          continue;
+        }
+        if (result.isSuccess()) {
+          offerSolution(state.getNode(), state.getDepth(), null);
+          arena.release(state.getNode());
+          discardPending();
+          return;
+        }
+        state.setResult(result);
+        state.setOrder(nextOrder++);
+        queue.add(state);
+      }
+
+      if (queue.isEmpty()) {
+        return;
+      }
+      SearchState state = queue.poll();
+      if (state.estimatedTotal() > minimumUnparseableComp.get()) {
+        boundPrunes.incrementAndGet();
+        arena.release(state.getNode());
+        discardPending();
+        return;
+      }
+
+      // the first parseable state is a minimal solution
+      if (state.getResult().isSuccess()) {
+        offerSolution(state.getNode(), state.getDepth(), null);
+        arena.release(state.getNode());
+        discardPending();
+        return;
+      }
+      offerPartialSolution(state, state.getResult());
+
+      ArrayList<SearchState> children = expand(state, state.getResult());
+      for (int i = children.size() - 1; i >= 0; i--) {
+        pending.push(children.get(i));
+      }
+      arena.release(state.getNode());
+    }
+  }
+
+  /**
+   * This method drops the states waiting to be explored, releasing their nodes
+   */
+  private void discardPending() {
+    for (SearchState state : pending) {
+      arena.release(state.getNode());
+    }
+    for (SearchState state : queue) {
+      arena.release(state.getNode());
     }
+    pending.clear();
+    queue.clear();
+  }
+
+  /**
+   * This method generates the children of a node whose query failed to parse: one new query
+   * for each way of handling the error, along with the node describing the recovery and the
+   * updated location tracker. The deletion always comes first, followed by the insertions and
+   * the replacements enabled by the recovery options, which share the memo table and the bound
+   * of the search with it.
+   */
+  private ArrayList<SearchState> expand(SearchState state, ParseResult result) {
+    ArrayList<SearchState> children = new ArrayList<>();
+    SqlParserPos pos = errorPosition(state, result);
+    String inputQuery = state.getQuery();
+    int parent = state.getNode();
+    int depth = state.getDepth();
+    LocationTracker locationTracker = state.getLocationTracker();
+
+    /* deletion: gets the new query, creates a node, and adds it to the children */
+
+    // gets the error location in the original query
+    int originalStartColumn =
+        locationTracker.getOriginalPosition(pos.getLineNum(), pos.getColumnNum());
+    int originalEndColumn =
+        locationTracker.getOriginalPosition(pos.getLineNum(), pos.getEndColumnNum());
+
+    // the insertions and replacements are only generated if their children are not already
+    // beyond the bound
+    boolean withinBound = depth + 1 <= minimumUnparseableComp.get();
+    int insertionBeam = withinBound ? recoveries.getInsertionBeam() : 0;
+    int replacementBeam = withinBound ? recoveries.getReplacementBeam() : 0;
+
+    if (state.getEdits() != null) {
+      SearchState child = deleteTokens(state, pos, originalStartColumn, originalEndColumn);
+      if (child != null) {
+        children.add(child);
+      }
+      if (insertionBeam > 0) {
+        children.addAll(insertTokens(state, result, pos, originalStartColumn,
+            originalEndColumn, insertionBeam));
+      }
+      if (replacementBeam > 0) {
+        children.addAll(replaceTokens(state, result, pos, originalStartColumn,
+            originalEndColumn, replacementBeam));
+      }
+      return children;
+    }
+
+    // the error is widened to the tokens it overlaps, as in the token rewriting mode
+    int line = pos.getLineNum();
+    int[] range = widenedRange(inputQuery, pos);
+    int startColumn = range[0];
+    int endColumn = range[1];
+    int widenedStartColumn = locationTracker.getOriginalPosition(line, startColumn);
+    int widenedEndColumn = locationTracker.getOriginalPosition(line, endColumn);
+
+    // the text written by an insertion or a replacement is not in the original query, and is
+    // not edited again, as in the token rewriting mode
+    for (int column = startColumn; column <= endColumn; column++) {
+      if (locationTracker.isInserted(line, column)) {
+        return children;
+      }
+    }
+
+    // gets the new query
+    String deletionQuery = deletion(inputQuery, line, startColumn, endColumn);
+
+    // updates the location tracker to reflect the deletion
+    LocationTracker deletedLt = locationTracker.delete(line, startColumn, endColumn);
+
+    // creates a node for this deletion
+    int deletionNode = arena.deletion(parent, line, widenedStartColumn, pos.getEndLineNum(),
+        widenedEndColumn);
+    children.add(new SearchState(deletionQuery, deletionNode, depth + 1, deletedLt));
+
+    // insertion: the best expected tokens are inserted before the error, or after it if the
+    // parser reached the end of the query
+    if (insertionBeam > 0) {
+      boolean atEnd = result.isAtEndOfInput();
+      int column = atEnd ? endColumn + 1 : startColumn;
+      for (String token : ReplacementLogic.rankInsertions(
+          expectedTokensFilter(result.getExpectedTokens()), insertionBeam)) {
+        int insertionNode = arena.insertion(parent, pos.getLineNum(), originalStartColumn,
+            pos.getEndLineNum(), originalEndColumn, token);
+        String insertedQuery = insertion(inputQuery, line, column, token);
+        // the length of the insertion in the query, with its padding
+        int written = insertedQuery.length() - inputQuery.length();
+        children.add(new SearchState(insertedQuery, insertionNode, depth + 1,
+            locationTracker.insert(line, column, written)));
+      }
+    }
+
+    if (replacementBeam == 0) {
+      return children;
+    }
+
+    // replacement: gets the new queries, creates nodes, and adds them to the children
+    ArrayList<ReplacedComponent> replacementQueries = replacement(inputQuery, line,
+        startColumn, endColumn, result.getExpectedTokens(), replacementBeam);
+
+    for (ReplacedComponent r: replacementQueries) {
+      int replacementNode = arena.replacement(parent, line, widenedStartColumn,
+          pos.getEndLineNum(), widenedEndColumn, r.getOriginal(), r.getReplacement());
+      // the length of the replacement in the query, with its padding
+      int written = r.getQuery().length() - inputQuery.length() + endColumn - startColumn + 1;
+      LocationTracker replacedLt = locationTracker.replace(line, startColumn, endColumn,
+          written);
+      children.add(new SearchState(r.getQuery(), replacementNode, depth + 1, replacedLt));
+    }
+
+    return children;
+  }
+
+  /**
+   * This method is the deletion of the token rewriting mode: the tokens overlapping the error
+   * are added to the edit list of the state. Since tokens are only ever edited as a whole, a
+   * token partially covered by the error is still entirely present, so the deleted range of the
+   * intermediate query is widened to its boundaries for the location tracker. Returns null if
+   * the tokens cannot be edited (see editedRange).
+   */
+  private SearchState deleteTokens(SearchState state, SqlParserPos pos, int originalStartColumn,
+      int originalEndColumn) {
+    int[] range = editedRange(state, pos, originalStartColumn, originalEndColumn);
+    if (range == null) {
+      return null;
+    }
+    int line = pos.getLineNum();
+    LocationTracker locationTracker = state.getLocationTracker();
+    int deletionNode = arena.deletion(state.getNode(), line,
+        locationTracker.getOriginalPosition(line, range[2]), pos.getEndLineNum(),
+        locationTracker.getOriginalPosition(line, range[3]));
+    return new SearchState(state.getEdits().delete(range[0], range[1]), deletionNode,
+        state.getDepth() + 1, state.getLocationTracker().delete(line, range[2], range[3]));
+  }
+
+  /**
+   * This method is the replacement of the token rewriting mode: the first token overlapping the
+   * error is replaced by each of the best expected tokens, and the other ones are deleted. The
+   * replaced range is widened to the token boundaries as for deleteTokens.
+   */
+  private ArrayList<SearchState> replaceTokens(SearchState state, ParseResult result,
+      SqlParserPos pos, int originalStartColumn, int originalEndColumn, int beamWidth) {
+    ArrayList<SearchState> children = new ArrayList<>();
+    TokenEdits edits = state.getEdits();
+    int[] range = editedRange(state, pos, originalStartColumn, originalEndColumn);
+    if (range == null || range[0] > range[1]) {
+      return children;
+    }
+
+    TokenizedQuery tokens = edits.getTokens();
+    int line = pos.getLineNum();
+    LocationTracker locationTracker = state.getLocationTracker();
+    int widenedStartColumn = locationTracker.getOriginalPosition(line, range[2]);
+    int widenedEndColumn = locationTracker.getOriginalPosition(line, range[3]);
+    String replaceFrom = tokens.getQuery().substring(tokens.getStart(range[0]),
+        tokens.getEnd(range[1]) + 1);
+    boolean spaceBefore = edits.isSpaceBefore(tokens.getStart(range[0]));
+    boolean spaceAfter = edits.isSpaceAfterToken(range[1]);
+    for (String replaceTo : ReplacementLogic.rank(replaceFrom,
+        expectedTokensFilter(result.getExpectedTokens()), beamWidth)) {
+      String text = padded(replaceTo, spaceBefore, spaceAfter);
+      TokenEdits replaced = edits.replace(range[0], text);
+      if (range[0] < range[1]) {
+        replaced = replaced.delete(range[0] + 1, range[1]);
+      }
+      int replacementNode = arena.replacement(state.getNode(), line, widenedStartColumn,
+          pos.getEndLineNum(), widenedEndColumn, replaceFrom, replaceTo);
+      children.add(new SearchState(replaced, replacementNode, state.getDepth() + 1,
+          locationTracker.replace(line, range[2], range[3], text.length())));
+    }
+    return children;
+  }
+
+  /**
+   * This method is the insertion of the token rewriting mode: each of the best expected tokens
+   * is inserted before the first token overlapping the error, or after the last one if the
+   * parser reached the end of the query.
+   */
+  private ArrayList<SearchState> insertTokens(SearchState state, ParseResult result,
+      SqlParserPos pos, int originalStartColumn, int originalEndColumn, int beamWidth) {
+    ArrayList<SearchState> children = new ArrayList<>();
+    TokenEdits edits = state.getEdits();
+    int[] range = editedRange(state, pos, originalStartColumn, originalEndColumn);
+    if (range == null || range[0] > range[1]) {
+      return children;
+    }
+
+    TokenizedQuery tokens = edits.getTokens();
+    int line = pos.getLineNum();
+    boolean atEnd = result.isAtEndOfInput();
+    int offset = atEnd ? tokens.getEnd(range[1]) + 1 : tokens.getStart(range[0]);
+    int column = atEnd ? range[3] + 1 : range[2];
+    boolean spaceBefore = edits.isSpaceBefore(offset);
+    boolean spaceAfter = edits.isSpaceAfter(offset);
+    for (String token : ReplacementLogic.rankInsertions(
+        expectedTokensFilter(result.getExpectedTokens()), beamWidth)) {
+      String text = padded(token, spaceBefore, spaceAfter);
+      int insertionNode = arena.insertion(state.getNode(), line, originalStartColumn,
+          pos.getEndLineNum(), originalEndColumn, token);
+      children.add(new SearchState(edits.insert(offset, text), insertionNode,
+          state.getDepth() + 1, state.getLocationTracker().insert(line, column, text.length())));
+    }
+    return children;
+  }
+
+  /**
+   * This helper method returns the columns of the error of the string mode in the intermediate
+   * query, as {startColumn, endColumn}, widened to the boundaries of the tokens it overlaps as
+   * in the token rewriting mode (see editedRange), so that both modes edit and report whole
+   * tokens. The columns are left as they are if the error covers a token spanning several
+   * lines, which the token rewriting mode does not edit.
+   */
+  private static int[] widenedRange(String query, SqlParserPos pos) {
+    int line = pos.getLineNum();
+    int startColumn = pos.getColumnNum();
+    int endColumn = pos.getEndColumnNum();
+    TokenizedQuery tokens = new TokenizedQuery(query);
+    int startOffset = tokens.offsetOf(line, startColumn);
+    int endOffset = tokens.offsetOf(line, endColumn);
+    int firstToken = tokens.firstTokenFrom(startOffset);
+    int lastToken = tokens.lastTokenUntil(endOffset);
+    for (int token = firstToken; token <= lastToken; token++) {
+      if (tokens.isMultiLine(token)) {
+        return new int[] {startColumn, endColumn};
+      }
+    }
+    if (firstToken <= lastToken) {
+      startColumn -= Math.max(0, startOffset - tokens.getStart(firstToken));
+      endColumn += Math.max(0, tokens.getEnd(lastToken) - endOffset);
+    }
+    return new int[] {startColumn, endColumn};
+  }
+
+  /**
+   * This helper method returns the tokens overlapping the error of the token rewriting mode, as
+   * {firstToken, lastToken, startColumn, endColumn} where the columns are those of the error in
+   * the intermediate query, widened to the token boundaries. Returns null if the error covers a
+   * token spanning several lines, which cannot be edited without shifting the lines, or a text
+   * that is not in the original query (a replaced token, or an inserted text), as its length in
+   * the intermediate query is not that of the tokens.
+   */
+  private static int[] editedRange(SearchState state, SqlParserPos pos, int originalStartColumn,
+      int originalEndColumn) {
+    TokenEdits edits = state.getEdits();
+    TokenizedQuery tokens = edits.getTokens();
+    int line = pos.getLineNum();
+    if (state.getLocationTracker().isInserted(line, pos.getColumnNum())
+        || state.getLocationTracker().isInserted(line, pos.getEndColumnNum())) {
+      return null;
+    }
+    int startOffset = tokens.offsetOf(line, originalStartColumn);
+    int endOffset = tokens.offsetOf(line, originalEndColumn);
+    int firstToken = tokens.firstTokenFrom(startOffset);
+    int lastToken = tokens.lastTokenUntil(endOffset);
+    for (int token = firstToken; token <= lastToken; token++) {
+      if (tokens.isMultiLine(token) || edits.isEdited(token)) {
+        return null;
+      }
+    }
+
+    int startColumn = pos.getColumnNum();
+    int endColumn = pos.getEndColumnNum();
+    if (firstToken <= lastToken) {
+      if (edits.hasInsertionIn(tokens.getStart(firstToken), tokens.getEnd(lastToken))) {
+        return null;
+      }
+      startColumn -= Math.max(0, startOffset - tokens.getStart(firstToken));
+      endColumn += Math.max(0, tokens.getEnd(lastToken) - endOffset);
+    }
+    return new int[] {firstToken, lastToken, startColumn, endColumn};
+  }
+
+  /**
+   * This method visits an intermediate query at the depth of the given state. It returns the
+   * parse outcome of the query, looked up in the memo table if the query has been seen before,
+   * or null if the query has already been explored at a smaller or equal depth and should be
+   * pruned. The branch path of the state is only set by the parallel search, and is null
+   * otherwise.
+   */
+  private ParseResult visit(SearchState state) {
+    Object key = state.getKey();
+    int[] path = state.getPath();
+    int depth = state.getDepth();
+    MemoTable.Entry entry = memo.get(key);
+    if (entry == null) {
+      ParseResult result = parse(state);
+      entry = memo.putIfAbsent(key, result, depth, path);
+      if (entry == null) {
+        return result;
+      }
+      // another worker recorded the query while it was being parsed
+    }
+    if (entry.visit(depth, path)) {
+      memoHits.incrementAndGet();
+      return entry.getResult();
+    }
+    memoPrunes.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * This method validates the query of the given state with the parser. The search only needs
+   * to know whether the query parses and where it fails, so the parsed query is never unparsed.
+   * In the token rewriting mode, the parser reads the edited query from a Reader. The queries
+   * already parsed by the panic-mode pass are not parsed again.
+   */
+  private ParseResult parse(SearchState state) {
+    ParseResult known = panicResults.get(state.getKey());
+    if (known != null) {
+      return known;
+    }
+    parseCalls.incrementAndGet();
+    if (state.getEdits() != null) {
+      return nothingLeft(state, parser.validate(state.getEdits().reader()));
+    }
+    return nothingLeft(state, parser.validate(state.getQuery()));
+  }
+
+  /**
+   * This helper method turns the failure of a query that holds nothing but whitespace and
+   * comments into a success. Once every token of a query is deleted, nothing unparseable is
+   * left, but the parser still fails at the end of the input, at a position that may lie in a
+   * comment or nowhere in the query (line 0 for an empty query). In the token rewriting mode,
+   * the tokens left are looked up in the edit list; only a query of the string mode is lexed.
+   */
+  private static ParseResult nothingLeft(SearchState state, ParseResult result) {
+    if (!result.isAtEndOfInput()) {
+      return result;
+    }
+    if (state.getEdits() != null) {
+      return (state.getEdits().lastPosition(true) == null) ? ParseResult.success() : result;
+    }
+    TokenizedQuery tokens = new TokenizedQuery(state.getQuery());
+    for (int token = 0; token < tokens.size(); token++) {
+      if (!tokens.isComment(token)) {
+        return result;
+      }
+    }
+    return ParseResult.success();
+  }
+
+  /**
+   * Returns true if the last run stopped because one of its budgets ran out, in which case the
+   * output solution may not be minimal, or may only be partial
+   */
+  public boolean isTruncated() {
+    return truncation != null;
+  }
+
+  /**
+   * Getters for the performance counters of the search
+   */
+  public int getNodesExplored() {
+    return nodes.get();
+  }
+
+  public int getParseCalls() {
+    return parseCalls.get();
+  }
+
+  public int getMemoHits() {
+    return memoHits.get();
+  }
+
+  public int getMemoPrunes() {
+    return memoPrunes.get();
+  }
+
+  /**
+   * Returns the number of states that were not explored, either because the memo table pruned
+   * them or because they could not beat the best solution found so far
+   */
+  public int getNodesPruned() {
+    return memoPrunes.get() + boundPrunes.get();
+  }
+
+  /**
+   * Returns the largest number of nodes of the search tree that were alive at once, which is
+   * what the memory of the tree grows with (see NodeArena)
+   */
+  public int getPeakNodes() {
+    return arena.getPeakLiveNodes();
+  }
+
+  /**
+   * Returns the number of nodes of the search tree that are still alive: the root, and the nodes
+   * leading to the solutions and to the states left by a truncated search
+   */
+  public int getLiveNodes() {
+    return arena.getLiveNodes();
+  }
+
+  /**
+   * Returns the outcome of the last search as the result of a single statement, with the given
+   * components and wall time (in nanoseconds)
+   */
+  StatementResult getResult(ArrayList<UnparseableComponent> components, long wallNanos) {
+    return new StatementResult(0, 1, components, getTruncationMessage(), parseCalls.get(),
+        nodes.get(), getNodesPruned(), memoHits.get(), wallNanos);
+  }
+
+  /**
+   * Returns the line reporting the work and the memory use of the last search
+   */
+  public String getStatistics() {
+    return String.format("Explored %1$s errors with %2$s parser calls (%3$s memo hits, "
+        + "%4$s memo prunes); at most %5$s search nodes were alive at once, taking %6$s KB",
+        nodes.get(), parseCalls.get(), memoHits.get(), memoPrunes.get(),
+        arena.getPeakLiveNodes(), (arena.getMemoryBytes() + 1023) / 1024);
   }
 
   /**
@@ -154,39 +1403,83 @@ public class QueryBreakdown {
     return sb.toString();
   }
 
+  /**
+   * This method implements the insertion mechanism: given a position, it generates a new query
+   * with the text inserted before the character at that position (or at the end of the line if
+   * the column is just past its last character). The text is padded so that it cannot join the
+   * neighbouring tokens (see padded).
+   */
+  static String insertion(String inputQuery, int line, int column, String text) {
+    StringBuilder sb = new StringBuilder(inputQuery);
+    int index = returnIndex(inputQuery, line, column, column)[0];
+    sb.insert(index, padded(inputQuery, index, index, text));
+    return sb.toString();
+  }
+
   /**
    * This method implements the replacement mechanism: given the position of the component, and
    * given the help of the ReplacementLogic class, it determines what to replace the component
-   * with and generates the new query based on it. It then returns a list of ReplacedComponents
+   * with and generates the new query based on it. The replacement is padded so that it cannot
+   * join the neighbouring tokens (see padded). It then returns a list of ReplacedComponents
    * containing the new query and the two components that we replace from/to.
    *
    * This is a design decision made due to the fact that we need to expose to the loop the word
    * being replaced and the word we're replacing with.
    *
-   * TODO: deal with instances where there are no replacement options
+   * The list is empty if there are no replacement options.
    */
   static ArrayList<ReplacedComponent> replacement(String inputQuery, int startLine, int startColumn,
       int endColumn, Collection<String> expectedTokens) {
-    // call ReplacementLogic
-    ArrayList<String> finalList = ReplacementLogic.replace(inputQuery,
-        expectedTokensFilter(expectedTokens));
+    return replacement(inputQuery, startLine, startColumn, endColumn, expectedTokens,
+        ReplacementLogic.DEFAULT_BEAM_WIDTH);
+  }
 
+  /**
+   * This method implements the replacement mechanism with at most beamWidth replacements, ranked
+   * by the ReplacementLogic class against the component being replaced
+   */
+  static ArrayList<ReplacedComponent> replacement(String inputQuery, int startLine, int startColumn,
+      int endColumn, Collection<String> expectedTokens, int beamWidth) {
     ArrayList<ReplacedComponent> result = new ArrayList<>();
 
     // get word to replace from
     int[] index = returnIndex(inputQuery, startLine, startColumn, endColumn);
     String replaceFrom = inputQuery.substring(index[0], index[1]);
 
+    // call ReplacementLogic
+    ArrayList<String> finalList = ReplacementLogic.rank(replaceFrom,
+        expectedTokensFilter(expectedTokens), beamWidth);
+
     // generate the new queries. We need to re-instantiate the StringBuilder each time
     for (String replaceTo: finalList) {
       // replace the token
       StringBuilder sb = new StringBuilder(inputQuery);
-      sb.replace(index[0], index[1], replaceTo);
+      sb.replace(index[0], index[1], padded(inputQuery, index[0], index[1], replaceTo));
       result.add(new ReplacedComponent(sb.toString(), replaceFrom, replaceTo));
     }
     return result;
   }
 
+  /**
+   * This helper method returns the text written in place of the characters of the query from
+   * start (inclusive) to end (exclusive), padded with a space on each side where the
+   * neighbouring character is not whitespace
+   */
+  static String padded(String inputQuery, int start, int end, String text) {
+    return padded(text,
+        start == 0 || Character.isWhitespace(inputQuery.charAt(start - 1)),
+        end >= inputQuery.length() || Character.isWhitespace(inputQuery.charAt(end)));
+  }
+
+  /**
+   * This helper method adds a space before the text unless spaceBefore is true, and after it
+   * unless spaceAfter is true, so that a keyword written next to a word (as BY in "ORDER;") is
+   * not read as part of it
+   */
+  static String padded(String text, boolean spaceBefore, boolean spaceAfter) {
+    return (spaceBefore ? "" : " ") + text + (spaceAfter ? "" : " ");
+  }
+
   /**
    * This method filters out EOF from the expected tokens as well as the quotations
    */
@@ -0,0 +1,75 @@
+package com.google.bigquery;
+
+import java.io.Serializable;
+
+/**
+ * This class holds the error recoveries that the search tries besides deletion, along with the
+ * beam width of each of them: the number of candidates (ranked by ReplacementLogic) that a
+ * single error may branch into. A beam width of 0 disables the recovery, so the default options
+ * only delete.
+ *
+ * The options also say whether the panic-mode pass runs before the search (see QueryBreakdown),
+ * which is disabled by default. The options are recorded in search checkpoints, which are only
+ * resumed with equal options.
+ */
+public class RecoveryOptions implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final RecoveryOptions DELETION_ONLY = new RecoveryOptions(0, 0);
+
+  private final int replacementBeam;
+  private final int insertionBeam;
+  private final boolean panicMode;
+
+  /**
+   * Constructor for the class. The beam widths are either 0 (disabled) or positive.
+   */
+  public RecoveryOptions(int replacementBeam, int insertionBeam) {
+    this(replacementBeam, insertionBeam, false);
+  }
+
+  /**
+   * Constructor for the class that can also enable the panic-mode pass
+   */
+  public RecoveryOptions(int replacementBeam, int insertionBeam, boolean panicMode) {
+    if (replacementBeam < 0 || insertionBeam < 0) {
+      throw new IllegalArgumentException("beam widths must not be negative");
+    }
+    this.replacementBeam = replacementBeam;
+    this.insertionBeam = insertionBeam;
+    this.panicMode = panicMode;
+  }
+
+  public int getReplacementBeam() {
+    return replacementBeam;
+  }
+
+  public int getInsertionBeam() {
+    return insertionBeam;
+  }
+
+  public boolean isPanicMode() {
+    return panicMode;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof RecoveryOptions)) {
+      return false;
+    }
+    RecoveryOptions options = (RecoveryOptions) other;
+    return replacementBeam == options.replacementBeam && insertionBeam == options.insertionBeam
+        && panicMode == options.panicMode;
+  }
+
+  @Override
+  public int hashCode() {
+    return (replacementBeam * 31 + insertionBeam) * 2 + (panicMode ? 1 : 0);
+  }
+
+  @Override
+  public String toString() {
+    return "replacement beam " + replacementBeam + ", insertion beam " + insertionBeam
+        + ", panic mode " + (panicMode ? "on" : "off");
+  }
+}
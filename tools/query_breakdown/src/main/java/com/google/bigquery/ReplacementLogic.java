@@ -1,11 +1,35 @@
 package com.google.bigquery;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * This class implements all the replacement logic.
+ *
+ * The candidates are the tokens that the parser expected at the error. Each one is scored by
+ * its similarity to the offending component (so that a misspelled keyword is replaced by the
+ * keyword) and by how likely it is to be the missing piece of a query in general (so that a
+ * comma or a closing parenthesis is tried before a rarely used keyword), and only the best ones
+ * are kept. The number of candidates kept is the beam width, which bounds the branching of the
+ * search at every error.
  */
 public class ReplacementLogic {
+  // the number of recommendations made by replace
+  static final int DEFAULT_BEAM_WIDTH = 3;
+
+  // the weight of the similarity in the score, the rest of it being the grammar likelihood
+  private static final double SIMILARITY_WEIGHT = 0.5;
+
+  /* the tokens that most often fix a query, from the most to the least likely. A token that is
+     not listed is considered less likely than all the listed ones */
+  private static final List<String> LIKELY_TOKENS = Arrays.asList(",", ")", "(", "AS", "FROM",
+      "BY", "ON", "AND", "=", ".", "WHERE", "SELECT", "JOIN", "THEN", "END", "IN", "OR", "IS",
+      "NOT", "NULL", "*", "WHEN", "ELSE", "ORDER", "GROUP", "HAVING", "LIMIT", "UNION", "ALL",
+      "DISTINCT", "OVER", "PARTITION", "<", ">", "<=", ">=", "<>", "+", "-", "/");
 
   /**
    * Given a component, provides a recommendation as to which component the input should be
@@ -15,17 +39,102 @@ public class ReplacementLogic {
    * with the recommendations: certain recommendations should be "better" than others
    */
   public static ArrayList<String> replace (String component, ArrayList<String> options) {
-    // simply returns the first n options
-    int n = 3;
+    return rank(component, options, DEFAULT_BEAM_WIDTH);
+  }
+
+  /**
+   * Returns the beamWidth best options to replace the component with, from the best to the
+   * worst. Options with the same score keep the order in which the parser listed them. Token
+   * classes such as <IDENTIFIER> have no single spelling, so they are never recommended, and
+   * neither is the component itself.
+   */
+  public static ArrayList<String> rank(String component, Collection<String> options,
+      int beamWidth) {
+    ArrayList<String> candidates = new ArrayList<>();
+    HashSet<String> seen = new HashSet<>();
+    for (String option : options) {
+      if (option.isEmpty() || (option.startsWith("<") && option.endsWith(">")
+          && option.length() > 2) || option.equalsIgnoreCase(component)
+          || !seen.add(option)) {
+        continue;
+      }
+      candidates.add(option);
+    }
 
-    if (options.size() <= n) {
-      return new ArrayList<>(options);
+    double[] scores = new double[candidates.size()];
+    Integer[] order = new Integer[candidates.size()];
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] = score(component, candidates.get(i));
+      order[i] = i;
     }
+    // a stable sort, so that ties are broken by the order of the parser
+    Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
 
     ArrayList<String> result = new ArrayList<>();
-    for (int i = 0; i < n; i++) {
-      result.add(options.get(i));
+    for (int i = 0; i < Math.min(beamWidth, order.length); i++) {
+      result.add(candidates.get(order[i]));
     }
     return result;
   }
+
+  /**
+   * Returns the beamWidth best tokens to insert at an error, from the best to the worst. Since
+   * nothing is replaced, they are only ranked by their grammar likelihood.
+   */
+  public static ArrayList<String> rankInsertions(Collection<String> options, int beamWidth) {
+    return rank("", options, beamWidth);
+  }
+
+  /**
+   * Returns the score of replacing the component with the given option, between 0 and 1
+   */
+  static double score(String component, String option) {
+    return SIMILARITY_WEIGHT * similarity(component, option)
+        + (1 - SIMILARITY_WEIGHT) * likelihood(option);
+  }
+
+  /**
+   * Returns the similarity of two components, ignoring the case: 1 minus their edit distance
+   * divided by the length of the longest one
+   */
+  static double similarity(String a, String b) {
+    int length = Math.max(a.length(), b.length());
+    if (length == 0) {
+      return 1;
+    }
+    return 1 - (double) editDistance(a.toUpperCase(Locale.ROOT), b.toUpperCase(Locale.ROOT))
+        / length;
+  }
+
+  /**
+   * Returns the grammar likelihood of a token, between 0 (unlisted) and 1 (the most likely)
+   */
+  static double likelihood(String option) {
+    int rank = LIKELY_TOKENS.indexOf(option.toUpperCase(Locale.ROOT));
+    if (rank < 0) {
+      return 0;
+    }
+    return 1 - (double) rank / LIKELY_TOKENS.size();
+  }
+
+  /**
+   * Returns the Levenshtein distance between two strings, keeping a single row of the table
+   */
+  private static int editDistance(String a, String b) {
+    int[] row = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      row[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      int diagonal = row[0];
+      row[0] = i;
+      for (int j = 1; j <= b.length(); j++) {
+        int above = row[j];
+        int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+        row[j] = Math.min(Math.min(row[j] + 1, row[j - 1] + 1), diagonal + cost);
+        diagonal = above;
+      }
+    }
+    return row[b.length()];
+  }
 }
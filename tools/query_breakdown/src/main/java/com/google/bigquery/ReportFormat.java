@@ -0,0 +1,24 @@
+package com.google.bigquery;
+
+import java.util.Locale;
+
+/**
+ * This enum lists the formats a report of the tool can be written in (see ReportWriter).
+ *
+ * JSON: one JSON object per statement, each on its own line (JSON Lines), so that a report can
+ *       be read while it is being written and a batch of any size is never held in memory
+ * CSV: one row per unparseable component (or a single row for a statement without any), after
+ *      a header row, with the counters of the statement repeated on each of its rows
+ */
+public enum ReportFormat {
+  JSON,
+  CSV;
+
+  /**
+   * Returns the format of a report written to the given file: CSV if its name ends with .csv,
+   * and JSON otherwise
+   */
+  public static ReportFormat forFile(String fileName) {
+    return fileName.toLowerCase(Locale.ROOT).endsWith(".csv") ? CSV : JSON;
+  }
+}
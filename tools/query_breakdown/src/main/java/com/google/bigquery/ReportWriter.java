@@ -0,0 +1,50 @@
+package com.google.bigquery;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This interface is implemented by the writers of the reports of the tool. A report holds a
+ * record for each statement broken down: where it comes from, its unparseable components (their
+ * locations in the input, how they were handled, and what they were replaced with), and the
+ * performance counters of its breakdown. Records are written as soon as they are given and
+ * flushed, so the report of a large batch is streamed to its file instead of being buffered.
+ *
+ * The writers are thread-safe: the records of statements broken down by several workers can be
+ * written to the same report.
+ */
+public interface ReportWriter extends Closeable {
+  /**
+   * Writes the record of a statement. The source names the input the statement comes from, and
+   * is left out of the record if it is null.
+   */
+  void write(String source, StatementResult result) throws IOException;
+
+  /**
+   * Returns a writer of the given format over the given stream, which it closes
+   */
+  static ReportWriter create(ReportFormat format, Writer out) throws IOException {
+    switch (format) {
+      case CSV:
+        return new CsvReportWriter(out);
+      default:
+        return new JsonReportWriter(out);
+    }
+  }
+
+  /**
+   * Returns a writer to the given file, in the format given by its name (see
+   * ReportFormat.forFile). The file is overwritten.
+   */
+  static ReportWriter open(File file) throws IOException {
+    return create(ReportFormat.forFile(file.getName()), new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,107 @@
+package com.google.bigquery;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class holds the budgets of a QueryBreakdown run: the wall-clock time, the number of calls
+ * to the parser and the number of explored nodes (intermediate queries) of the search tree. A
+ * limit of 0 means that the corresponding resource is unlimited.
+ *
+ * The budgets are checked cooperatively before each node is explored, so a run can go slightly
+ * over a limit (by the node being parsed, or by one node per worker in the parallel search), but
+ * it never runs indefinitely once a limit is set. A budget may also be tied to a cancellation
+ * flag, which stops the run the same way once another thread sets it.
+ */
+public class SearchBudget {
+  public static final SearchBudget UNLIMITED = new SearchBudget(0, 0, 0);
+
+  // indicates which budget ran out
+  enum Limit {
+    TIME("time limit"),
+    PARSE_CALLS("parser call limit"),
+    NODES("error limit"),
+    CANCELLED("cancellation");
+
+    private final String description;
+
+    Limit(String description) {
+      this.description = description;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+  }
+
+  private final long timeLimitMillis;
+  private final int parseCallLimit;
+  private final int nodeLimit;
+
+  // the flag cancelling the run, or null if it cannot be cancelled
+  private final AtomicBoolean cancelled;
+
+  /**
+   * Constructor for the class. Each limit is either 0 (unlimited) or positive.
+   */
+  public SearchBudget(long timeLimitMillis, int parseCallLimit, int nodeLimit) {
+    this(timeLimitMillis, parseCallLimit, nodeLimit, null);
+  }
+
+  private SearchBudget(long timeLimitMillis, int parseCallLimit, int nodeLimit,
+      AtomicBoolean cancelled) {
+    if (timeLimitMillis < 0 || parseCallLimit < 0 || nodeLimit < 0) {
+      throw new IllegalArgumentException("budgets must not be negative");
+    }
+    this.timeLimitMillis = timeLimitMillis;
+    this.parseCallLimit = parseCallLimit;
+    this.nodeLimit = nodeLimit;
+    this.cancelled = cancelled;
+  }
+
+  /**
+   * Returns a budget with the same limits that also runs out as soon as the given flag is set
+   */
+  public SearchBudget withCancellation(AtomicBoolean cancelled) {
+    return new SearchBudget(timeLimitMillis, parseCallLimit, nodeLimit, cancelled);
+  }
+
+  /**
+   * Returns the limit that has been reached by a run started at startNanos (as given by
+   * System.nanoTime) after the given number of parser calls and explored nodes, or null if the
+   * run is still within all of its budgets.
+   */
+  Limit exhausted(long startNanos, int parseCalls, int nodes) {
+    if (cancelled != null && cancelled.get()) {
+      return Limit.CANCELLED;
+    }
+    if (nodeLimit > 0 && nodes >= nodeLimit) {
+      return Limit.NODES;
+    }
+    if (parseCallLimit > 0 && parseCalls >= parseCallLimit) {
+      return Limit.PARSE_CALLS;
+    }
+    if (timeLimitMillis > 0 && System.nanoTime() - startNanos >= timeLimitMillis * 1_000_000) {
+      return Limit.TIME;
+    }
+    return null;
+  }
+
+  /**
+   * getters for fields
+   */
+  public long getTimeLimitMillis() {
+    return timeLimitMillis;
+  }
+
+  public int getParseCallLimit() {
+    return parseCallLimit;
+  }
+
+  public int getNodeLimit() {
+    return nodeLimit;
+  }
+
+  public boolean isCancelled() {
+    return cancelled != null && cancelled.get();
+  }
+}
@@ -0,0 +1,216 @@
+package com.google.bigquery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class holds everything a truncated search needs to go on: the states waiting to be
+ * explored, the memo table, the node arena, the best solution and partial solution found so
+ * far, what the panic-mode pass left for the search (whether the solution is its own, and the
+ * outcomes of its parses) and the performance counters. It is taken by
+ * QueryBreakdown.checkpoint once a budget runs out, and given to QueryBreakdown.resume, possibly
+ * in another process after being written to a file, to continue the search where it stopped.
+ * A search resumed from a checkpoint finds the same solution as one that was never interrupted.
+ *
+ * The pending states are in the order the search takes them: the top of the stack first for the
+ * depth-first search, and the states not yet in the queue followed by the queue for the
+ * best-first search.
+ *
+ * The checkpoint also records what the search was run on: a digest of the original query, and
+ * the options that change the tree of the search (token rewriting, the recovery options and the
+ * configuration of the parser). QueryBreakdown.resume rejects a checkpoint taken for another
+ * query or with other options, whose states would not belong to the search it continues.
+ */
+public class SearchCheckpoint implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final SearchStrategy strategy;
+  private final boolean parallel;
+  private final byte[] queryDigest;
+  private final boolean tokenRewriting;
+  private final RecoveryOptions recoveries;
+  private final String parserConfiguration;
+  private final NodeArena arena;
+  private final int solution;
+  private final int[] solutionPath;
+  private final boolean provisional;
+  private final int minimumUnparseableComp;
+  private final int partialSolution;
+  private final long partialProgress;
+  private final MemoTable<Object> memo;
+  private final HashMap<Object, ParseResult> panicResults;
+  private final ArrayList<SearchState> pending;
+  private final long nextOrder;
+  private final int nodes;
+  private final int parseCalls;
+  private final int memoHits;
+  private final int memoPrunes;
+  private final int boundPrunes;
+
+  SearchCheckpoint(SearchStrategy strategy, boolean parallel, byte[] queryDigest,
+      boolean tokenRewriting, RecoveryOptions recoveries, String parserConfiguration,
+      NodeArena arena, int solution, int[] solutionPath, boolean provisional,
+      int minimumUnparseableComp, int partialSolution, long partialProgress,
+      MemoTable<Object> memo, HashMap<Object, ParseResult> panicResults,
+      ArrayList<SearchState> pending, long nextOrder, int nodes, int parseCalls, int memoHits,
+      int memoPrunes, int boundPrunes) {
+    this.strategy = strategy;
+    this.parallel = parallel;
+    this.queryDigest = queryDigest;
+    this.tokenRewriting = tokenRewriting;
+    this.recoveries = recoveries;
+    this.parserConfiguration = parserConfiguration;
+    this.arena = arena;
+    this.solution = solution;
+    this.solutionPath = solutionPath;
+    this.provisional = provisional;
+    this.minimumUnparseableComp = minimumUnparseableComp;
+    this.partialSolution = partialSolution;
+    this.partialProgress = partialProgress;
+    this.memo = memo;
+    this.panicResults = panicResults;
+    this.pending = pending;
+    this.nextOrder = nextOrder;
+    this.nodes = nodes;
+    this.parseCalls = parseCalls;
+    this.memoHits = memoHits;
+    this.memoPrunes = memoPrunes;
+    this.boundPrunes = boundPrunes;
+  }
+
+  /**
+   * Writes the checkpoint to the given stream, which is left open
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    ObjectOutputStream objects = new ObjectOutputStream(out);
+    objects.writeObject(this);
+    objects.flush();
+  }
+
+  /**
+   * Reads a checkpoint written by writeTo from the given stream
+   */
+  public static SearchCheckpoint readFrom(InputStream in) throws IOException {
+    try {
+      Object checkpoint = new ObjectInputStream(in).readObject();
+      if (!(checkpoint instanceof SearchCheckpoint)) {
+        throw new IOException("not a search checkpoint");
+      }
+      return (SearchCheckpoint) checkpoint;
+    } catch (ClassNotFoundException e) {
+      throw new IOException("not a search checkpoint", e);
+    }
+  }
+
+  /**
+   * Returns the SHA-256 digest of the given original query, which a checkpoint records
+   */
+  static byte[] digest(String query) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * getters for fields
+   */
+  public SearchStrategy getStrategy() {
+    return strategy;
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  byte[] getQueryDigest() {
+    return queryDigest;
+  }
+
+  public boolean isTokenRewriting() {
+    return tokenRewriting;
+  }
+
+  public RecoveryOptions getRecoveries() {
+    return recoveries;
+  }
+
+  public String getParserConfiguration() {
+    return parserConfiguration;
+  }
+
+  NodeArena getArena() {
+    return arena;
+  }
+
+  int getSolution() {
+    return solution;
+  }
+
+  int[] getSolutionPath() {
+    return solutionPath;
+  }
+
+  boolean isProvisional() {
+    return provisional;
+  }
+
+  int getMinimumUnparseableComp() {
+    return minimumUnparseableComp;
+  }
+
+  int getPartialSolution() {
+    return partialSolution;
+  }
+
+  long getPartialProgress() {
+    return partialProgress;
+  }
+
+  MemoTable<Object> getMemo() {
+    return memo;
+  }
+
+  HashMap<Object, ParseResult> getPanicResults() {
+    return panicResults;
+  }
+
+  ArrayList<SearchState> getPending() {
+    return pending;
+  }
+
+  long getNextOrder() {
+    return nextOrder;
+  }
+
+  public int getNodesExplored() {
+    return nodes;
+  }
+
+  public int getParseCalls() {
+    return parseCalls;
+  }
+
+  int getMemoHits() {
+    return memoHits;
+  }
+
+  int getMemoPrunes() {
+    return memoPrunes;
+  }
+
+  int getBoundPrunes() {
+    return boundPrunes;
+  }
+}
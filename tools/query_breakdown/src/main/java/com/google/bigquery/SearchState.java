@@ -0,0 +1,146 @@
+package com.google.bigquery;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import org.apache.calcite.sql.parser.SqlParserPos;
+
+/**
+ * This class represents a state of the search: an intermediate query together with the node that
+ * produced it (an index into the NodeArena of the search, of which the state holds a reference),
+ * its depth (the number of unparseable components so far) and the location tracker that maps
+ * its positions back to the original query. The parse outcome is filled in once the query has
+ * been parsed.
+ *
+ * In the token rewriting mode, the intermediate query is held as an edit list over the lexed
+ * original query instead of a string (see TokenEdits), and getQuery returns null.
+ *
+ * The states waiting to be explored are all the search keeps besides the memo table, so they are
+ * serializable, which lets a long search be checkpointed and resumed (see SearchCheckpoint).
+ */
+public class SearchState implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /* order used by the best-first search: the smallest estimated total of unparseable components
+     first, then the state whose error lies furthest into the query (more of it parses), and
+     finally the state that was generated first so that the search is deterministic */
+  static final Comparator<SearchState> BEST_FIRST_ORDER =
+      Comparator.comparingInt(SearchState::estimatedTotal)
+          .thenComparing(SearchState::errorProgress, Comparator.reverseOrder())
+          .thenComparingLong(SearchState::getOrder);
+
+  private final String query;
+  private final TokenEdits edits;
+  private final int node;
+  private final int depth;
+  private final LocationTracker locationTracker;
+  private ParseResult result;
+  private long order;
+
+  // the branch path of the state in the parallel search (see MemoTable), null otherwise
+  private int[] path;
+
+  // the children of a state whose look-ahead was interrupted by a budget, which the search
+  // completes before exploring any of them once it is resumed
+  private ArrayList<SearchState> children;
+
+  public SearchState(String query, int node, int depth, LocationTracker locationTracker) {
+    this(query, null, node, depth, locationTracker);
+  }
+
+  public SearchState(TokenEdits edits, int node, int depth, LocationTracker locationTracker) {
+    this(null, edits, node, depth, locationTracker);
+  }
+
+  private SearchState(String query, TokenEdits edits, int node, int depth,
+      LocationTracker locationTracker) {
+    this.query = query;
+    this.edits = edits;
+    this.node = node;
+    this.depth = depth;
+    this.locationTracker = locationTracker;
+  }
+
+  /**
+   * Returns the estimated number of unparseable components of the best solution through this
+   * state. A query that still fails to parse needs at least one more recovery, so the estimate
+   * never overshoots and the first successful state taken from the queue is a minimal solution.
+   */
+  int estimatedTotal() {
+    return depth + (result.isSuccess() ? 0 : 1);
+  }
+
+  /**
+   * Returns the position of the error as a single comparable number (line first, then column).
+   * Successful states are treated as having progressed through the whole query.
+   */
+  long errorProgress() {
+    if (result.isSuccess()) {
+      return Long.MAX_VALUE;
+    }
+    SqlParserPos pos = result.getErrorPosition();
+    return ((long) pos.getLineNum() << 32) | pos.getColumnNum();
+  }
+
+  /**
+   * getters and setters for fields
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  public TokenEdits getEdits() {
+    return edits;
+  }
+
+  /**
+   * Returns the intermediate query in the form used as the key of the memo table
+   */
+  Object getKey() {
+    return (edits != null) ? edits : query;
+  }
+
+  public int getNode() {
+    return node;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public LocationTracker getLocationTracker() {
+    return locationTracker;
+  }
+
+  public ParseResult getResult() {
+    return result;
+  }
+
+  public void setResult(ParseResult result) {
+    this.result = result;
+  }
+
+  public long getOrder() {
+    return order;
+  }
+
+  public void setOrder(long order) {
+    this.order = order;
+  }
+
+  public int[] getPath() {
+    return path;
+  }
+
+  public void setPath(int[] path) {
+    this.path = path;
+  }
+
+  public ArrayList<SearchState> getChildren() {
+    return children;
+  }
+
+  public void setChildren(ArrayList<SearchState> children) {
+    this.children = children;
+  }
+}
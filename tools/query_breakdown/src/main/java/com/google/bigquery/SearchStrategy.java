@@ -0,0 +1,39 @@
+package com.google.bigquery;
+
+/**
+ * This enum lists the ways QueryBreakdown can traverse the tree of possible error recoveries.
+ * All of them produce a solution with the minimum number of unparseable components; they differ
+ * in how many nodes (and therefore parser calls) they need to find it.
+ *
+ * DEPTH_FIRST: the original recursive search, which prunes branches deeper than the best
+ *              solution found so far
+ * BEST_FIRST: an A* search that always expands the most promising node first, ordered by the
+ *             number of unparseable components so far plus an estimate of the remaining errors
+ */
+public enum SearchStrategy {
+  DEPTH_FIRST("dfs"),
+  BEST_FIRST("best-first");
+
+  private final String name;
+
+  SearchStrategy(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the strategy with the given command line name. Throws an IllegalArgumentException if
+   * there is no such strategy.
+   */
+  public static SearchStrategy fromName(String name) {
+    for (SearchStrategy strategy : values()) {
+      if (strategy.name.equals(name)) {
+        return strategy;
+      }
+    }
+    throw new IllegalArgumentException("unknown search strategy: " + name);
+  }
+}
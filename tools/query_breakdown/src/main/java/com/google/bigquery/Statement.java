@@ -0,0 +1,79 @@
+package com.google.bigquery;
+
+/**
+ * This class represents a single statement of an input file, as yielded by the StatementSplitter.
+ * Along with the text of the statement (without its terminating semicolon), it keeps where the
+ * statement starts in the file, so that positions inside the statement can be mapped back to
+ * positions in the file.
+ */
+public class Statement {
+  private final String text;
+  private final int index;
+  private final long startOffset;
+  private final int startLine;
+  private final int startColumn;
+
+  // computed on first use, since most statements of a large file are never broken down
+  private LocationTracker locationTracker;
+
+  /**
+   * Constructor for the class. The start line and column are 1-indexed, and the start offset is
+   * the number of characters before the statement in the file.
+   */
+  public Statement(String text, int index, long startOffset, int startLine, int startColumn) {
+    this.text = text;
+    this.index = index;
+    this.startOffset = startOffset;
+    this.startLine = startLine;
+    this.startColumn = startColumn;
+  }
+
+  /**
+   * Returns the line in the file of the given (1-indexed) line of the statement
+   */
+  public int toFileLine(int line) {
+    return startLine + line - 1;
+  }
+
+  /**
+   * Returns the column in the file of the given (1-indexed) position of the statement. Only the
+   * first line of the statement is shifted, as the other lines start at the start of a line.
+   */
+  public int toFileColumn(int line, int column) {
+    return (line == 1) ? startColumn + column - 1 : column;
+  }
+
+  /**
+   * Returns the location tracker of the statement text, which is built the first time it is
+   * requested
+   */
+  public synchronized LocationTracker getLocationTracker() {
+    if (locationTracker == null) {
+      locationTracker = LocationTracker.fromQuery(text);
+    }
+    return locationTracker;
+  }
+
+  /**
+   * getters for fields
+   */
+  public String getText() {
+    return text;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public long getStartOffset() {
+    return startOffset;
+  }
+
+  public int getStartLine() {
+    return startLine;
+  }
+
+  public int getStartColumn() {
+    return startColumn;
+  }
+}
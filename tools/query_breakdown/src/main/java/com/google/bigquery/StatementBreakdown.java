@@ -0,0 +1,253 @@
+package com.google.bigquery;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * This class breaks down a multi-statement input one statement at a time. Each statement is
+ * first parsed on its own, and the error recovery search only runs on the statements that fail,
+ * so the cost of a script scales with the number of broken statements instead of the file size
+ * times the search depth. The statements are handled in parallel by a pool of workers, and the
+ * unparseable components are mapped back to positions in the file.
+ *
+ * Results are delivered in the order of the statements, whatever the number of workers. Only a
+ * bounded number of statements is in flight at any time, so a large input can be streamed from
+ * a StatementSplitter.
+ */
+public class StatementBreakdown {
+  // number of statements submitted per worker before waiting for the oldest result
+  private static final int STATEMENTS_IN_FLIGHT_PER_WORKER = 4;
+
+  private final ThreadLocal<Parser> parsers;
+  private final SearchStrategy strategy;
+  private final boolean tokenRewriting;
+  private final RecoveryOptions recoveries;
+  private final SearchBudget budget;
+  private final int parallelism;
+
+  /**
+   * Constructor for the class. The supplier gives the parser of each worker, which may be a
+   * shared thread-safe one (see CalciteParser.of), and the budget applies to the search of each
+   * statement separately.
+   */
+  public StatementBreakdown(Supplier<Parser> parserSupplier, SearchStrategy strategy,
+      boolean tokenRewriting, SearchBudget budget, int parallelism) {
+    this(parserSupplier, strategy, tokenRewriting, RecoveryOptions.DELETION_ONLY, budget,
+        parallelism);
+  }
+
+  /**
+   * Constructor for the class that also sets the recoveries tried by the search of each
+   * statement
+   */
+  public StatementBreakdown(Supplier<Parser> parserSupplier, SearchStrategy strategy,
+      boolean tokenRewriting, RecoveryOptions recoveries, SearchBudget budget, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+    }
+    this.parsers = ThreadLocal.withInitial(parserSupplier);
+    this.strategy = strategy;
+    this.tokenRewriting = tokenRewriting;
+    this.recoveries = recoveries;
+    this.budget = budget;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Breaks down the given statements and passes the result of each one to the consumer, in the
+   * order of the statements
+   */
+  public void run(Iterator<Statement> statements, Consumer<StatementResult> consumer) {
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    ArrayDeque<Future<StatementResult>> inFlight = new ArrayDeque<>();
+    try {
+      while (statements.hasNext()) {
+        Statement statement = statements.next();
+        inFlight.add(pool.submit(() -> breakdown(statement)));
+        if (inFlight.size() >= parallelism * STATEMENTS_IN_FLIGHT_PER_WORKER) {
+          consumer.accept(await(inFlight.poll()));
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        consumer.accept(await(inFlight.poll()));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Breaks down the given statements and returns their results in order
+   */
+  public ArrayList<StatementResult> run(Iterator<Statement> statements) {
+    ArrayList<StatementResult> results = new ArrayList<>();
+    run(statements, results::add);
+    return results;
+  }
+
+  /**
+   * Parses a statement on its own, and runs the search on it if the parse fails
+   */
+  StatementResult breakdown(Statement statement) {
+    return breakdown(statement, budget);
+  }
+
+  /**
+   * Breaks down a statement as breakdown does, with the search under the given budget instead
+   * of the budget of the object
+   */
+  StatementResult breakdown(Statement statement, SearchBudget budget) {
+    return analyze(statement, budget).toFilePosition(statement);
+  }
+
+  /**
+   * Breaks down a statement as breakdown does, but leaves its components in positions of the
+   * statement text. Such a result only depends on the text, so it holds for any statement with
+   * the same text (see IncrementalBreakdown).
+   */
+  StatementResult analyze(Statement statement, SearchBudget budget) {
+    long startNanos = System.nanoTime();
+    Parser parser = parsers.get();
+    if (parser.validate(statement.getText()).isSuccess()) {
+      return new StatementResult(statement.getIndex(), statement.getStartLine(),
+          new ArrayList<>(), null, 1, 0, 0, 0, System.nanoTime() - startNanos);
+    }
+
+    QueryBreakdown qb = new QueryBreakdown(parser, strategy, 1, tokenRewriting, recoveries);
+    ArrayList<UnparseableComponent> components = qb.search(statement.getText(), budget,
+        statement.getLocationTracker());
+    // the parse of the whole statement is counted along with those of the search
+    return new StatementResult(statement.getIndex(), statement.getStartLine(), components,
+        qb.getTruncationMessage(), qb.getParseCalls() + 1, qb.getNodesExplored(),
+        qb.getNodesPruned(), qb.getMemoHits(), System.nanoTime() - startNanos);
+  }
+
+  private static StatementResult await(Future<StatementResult> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while breaking down the statements", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * This class holds the outcome of the breakdown of a single statement: its unparseable
+   * components in file positions (empty if the statement parses), the truncation message of its
+   * search if a budget ran out, and the performance counters of its breakdown, which are what
+   * the reports (see ReportWriter) give for each statement.
+   */
+  public static class StatementResult {
+    private final int statementIndex;
+    private final int startLine;
+    private final ArrayList<UnparseableComponent> components;
+    private final String truncationMessage;
+    private final int parseCalls;
+    private final int nodesExplored;
+    private final int nodesPruned;
+    private final int memoHits;
+    private final long wallNanos;
+
+    public StatementResult(int statementIndex, int startLine,
+        ArrayList<UnparseableComponent> components, String truncationMessage) {
+      this(statementIndex, startLine, components, truncationMessage, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Constructor for the class with the performance counters of the breakdown. The wall time
+     * is in nanoseconds.
+     */
+    public StatementResult(int statementIndex, int startLine,
+        ArrayList<UnparseableComponent> components, String truncationMessage, int parseCalls,
+        int nodesExplored, int nodesPruned, int memoHits, long wallNanos) {
+      this.statementIndex = statementIndex;
+      this.startLine = startLine;
+      this.components = components;
+      this.truncationMessage = truncationMessage;
+      this.parseCalls = parseCalls;
+      this.nodesExplored = nodesExplored;
+      this.nodesPruned = nodesPruned;
+      this.memoHits = memoHits;
+      this.wallNanos = wallNanos;
+    }
+
+    public boolean isParseable() {
+      return components.isEmpty() && truncationMessage == null;
+    }
+
+    public int getStatementIndex() {
+      return statementIndex;
+    }
+
+    public int getStartLine() {
+      return startLine;
+    }
+
+    public ArrayList<UnparseableComponent> getComponents() {
+      return components;
+    }
+
+    public String getTruncationMessage() {
+      return truncationMessage;
+    }
+
+    public int getParseCalls() {
+      return parseCalls;
+    }
+
+    public int getNodesExplored() {
+      return nodesExplored;
+    }
+
+    public int getNodesPruned() {
+      return nodesPruned;
+    }
+
+    public int getMemoHits() {
+      return memoHits;
+    }
+
+    public long getWallNanos() {
+      return wallNanos;
+    }
+
+    /**
+     * Returns the result of a statement broken down by StatementBreakdown.analyze for the given
+     * statement, with its components moved from the statement to the file
+     */
+    StatementResult toFilePosition(Statement statement) {
+      return placedAt(statement, parseCalls, nodesExplored, nodesPruned, memoHits, wallNanos);
+    }
+
+    /**
+     * Returns the result of a statement broken down by StatementBreakdown.analyze for another
+     * statement with the same text, in file positions. Nothing was parsed or explored for the
+     * statement, which took the given wall time.
+     */
+    StatementResult reusedAt(Statement statement, long wallNanos) {
+      return placedAt(statement, 0, 0, 0, 0, wallNanos);
+    }
+
+    private StatementResult placedAt(Statement statement, int parseCalls, int nodesExplored,
+        int nodesPruned, int memoHits, long wallNanos) {
+      ArrayList<UnparseableComponent> fileComponents = new ArrayList<>(components.size());
+      for (UnparseableComponent component : components) {
+        fileComponents.add(component.toFilePosition(statement));
+      }
+      return new StatementResult(statement.getIndex(), statement.getStartLine(), fileComponents,
+          truncationMessage, parseCalls, nodesExplored, nodesPruned, memoHits, wallNanos);
+    }
+  }
+}
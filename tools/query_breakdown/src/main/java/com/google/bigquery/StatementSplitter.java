@@ -0,0 +1,267 @@
+package com.google.bigquery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class splits an input into its statements, one at a time, while reading the input in
+ * large chunks. It is lexer-aware: a semicolon only ends a statement outside of quoted strings
+ * and identifiers ('...', "...", `...`, with doubled quotes and backslash escapes) and outside
+ * of comments (-- and # until the end of the line, and block comments), so that statements
+ * containing them are not cut in two.
+ *
+ * Only the statement being read is held in memory, so a large SQL dump streams through without
+ * being loaded as a whole. Leading whitespace is skipped, and statements holding nothing but
+ * whitespace and comments are not yielded.
+ */
+public class StatementSplitter implements Iterator<Statement>, Closeable {
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  // lexical states of the splitter
+  private enum State {
+    CODE,
+    QUOTED,
+    LINE_COMMENT,
+    BLOCK_COMMENT
+  }
+
+  private final Reader reader;
+  private final char[] buffer;
+  private int bufferSize;
+  private int bufferPosition;
+  private boolean endOfInput;
+
+  // position of the next character in the input
+  private long offset;
+  private int line;
+  private int column;
+
+  private int statementIndex;
+  private Statement next;
+
+  /**
+   * Constructor for the class. The reader is closed by close.
+   */
+  public StatementSplitter(Reader reader) {
+    this.reader = reader;
+    this.buffer = new char[CHUNK_SIZE];
+    this.line = 1;
+    this.column = 1;
+  }
+
+  /**
+   * Splits a string into its statements
+   */
+  public static ArrayList<Statement> split(String input) {
+    ArrayList<Statement> statements = new ArrayList<>();
+    StatementSplitter splitter = new StatementSplitter(new StringReader(input));
+    while (splitter.hasNext()) {
+      statements.add(splitter.next());
+    }
+    return statements;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      try {
+        next = readStatement();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return next != null;
+  }
+
+  @Override
+  public Statement next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Statement statement = next;
+    next = null;
+    return statement;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  /**
+   * Reads the next statement, or returns null at the end of the input
+   */
+  private Statement readStatement() throws IOException {
+    while (true) {
+      // skips the whitespace and the empty statements before the statement
+      int c = peek();
+      while (c != -1 && (Character.isWhitespace(c) || c == ';')) {
+        advance();
+        c = peek();
+      }
+      if (c == -1) {
+        return null;
+      }
+
+      long startOffset = offset;
+      int startLine = line;
+      int startColumn = column;
+      StringBuilder sb = new StringBuilder();
+      boolean hasCode = false;
+      State state = State.CODE;
+      char quote = 0;
+
+      while ((c = peek()) != -1) {
+        if (state == State.CODE) {
+          if (c == ';') {
+            advance();
+            break;
+          }
+          if (c == '\'' || c == '"' || c == '`') {
+            state = State.QUOTED;
+            quote = (char) c;
+            hasCode = true;
+          }
+          else if (c == '#') {
+            state = State.LINE_COMMENT;
+          }
+          else if (c == '-' && peekSecond() == '-') {
+            state = State.LINE_COMMENT;
+          }
+          else if (c == '/' && peekSecond() == '*') {
+            state = State.BLOCK_COMMENT;
+            sb.append((char) advance());
+          }
+          else if (!Character.isWhitespace(c)) {
+            hasCode = true;
+          }
+          sb.append((char) advance());
+        }
+        else if (state == State.QUOTED) {
+          sb.append((char) advance());
+          if (c == '\\' && peek() != -1) {
+            // the escaped character never closes the quote
+            sb.append((char) advance());
+          }
+          else if (c == quote) {
+            // a doubled quote reopens the quote right away
+            state = State.CODE;
+          }
+        }
+        else if (state == State.LINE_COMMENT) {
+          if (c == '\n') {
+            state = State.CODE;
+          }
+          sb.append((char) advance());
+        }
+        else {
+          if (c == '*' && peekSecond() == '/') {
+            sb.append((char) advance());
+            state = State.CODE;
+          }
+          sb.append((char) advance());
+        }
+      }
+
+      if (hasCode) {
+        return new Statement(trimEnd(sb), statementIndex++, startOffset, startLine, startColumn);
+      }
+    }
+  }
+
+  /**
+   * Removes the trailing whitespace of a statement
+   */
+  private static String trimEnd(StringBuilder sb) {
+    int end = sb.length();
+    while (end > 0 && Character.isWhitespace(sb.charAt(end - 1))) {
+      end--;
+    }
+    return sb.substring(0, end);
+  }
+
+  /**
+   * Returns the next character without consuming it, or -1 at the end of the input
+   */
+  private int peek() throws IOException {
+    if (bufferPosition == bufferSize && !fill()) {
+      return -1;
+    }
+    return buffer[bufferPosition];
+  }
+
+  /**
+   * Returns the character after the next one without consuming anything, or -1
+   */
+  private int peekSecond() throws IOException {
+    if (bufferPosition + 1 >= bufferSize) {
+      // keeps the unread character at the start of the buffer while reading the next chunk
+      int remaining = bufferSize - bufferPosition;
+      System.arraycopy(buffer, bufferPosition, buffer, 0, remaining);
+      bufferSize = remaining;
+      bufferPosition = 0;
+      if (!endOfInput) {
+        int read = reader.read(buffer, bufferSize, buffer.length - bufferSize);
+        while (read == 0) {
+          read = reader.read(buffer, bufferSize, buffer.length - bufferSize);
+        }
+        if (read == -1) {
+          endOfInput = true;
+        }
+        else {
+          bufferSize += read;
+        }
+      }
+      if (bufferPosition + 1 >= bufferSize) {
+        return -1;
+      }
+    }
+    return buffer[bufferPosition + 1];
+  }
+
+  /**
+   * Consumes the next character and returns it, updating the position in the input
+   */
+  private int advance() throws IOException {
+    int c = peek();
+    if (c == -1) {
+      return -1;
+    }
+    bufferPosition++;
+    offset++;
+    if (c == '\n') {
+      line++;
+      column = 1;
+    }
+    else {
+      column++;
+    }
+    return c;
+  }
+
+  /**
+   * Reads the next chunk of the input into the buffer. Returns false at the end of the input.
+   */
+  private boolean fill() throws IOException {
+    if (endOfInput) {
+      return false;
+    }
+    int read = reader.read(buffer, 0, buffer.length);
+    while (read == 0) {
+      read = reader.read(buffer, 0, buffer.length);
+    }
+    if (read == -1) {
+      endOfInput = true;
+      return false;
+    }
+    bufferSize = read;
+    bufferPosition = 0;
+    return true;
+  }
+}
@@ -0,0 +1,418 @@
+package com.google.bigquery;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class represents an intermediate query of the token rewriting mode as a compact edit list
+ * over a TokenizedQuery: the sorted indices of the edited tokens, and for each of them the text
+ * replacing it (null if the token is deleted), along with the sorted offsets of the original
+ * query where a text is inserted. The intermediate query is never built as a string; instead,
+ * reader() streams the original query with the edits applied to the parser.
+ *
+ * Edit lists are immutable, so a child node shares the tokenized query with its parent and only
+ * holds a few ints per recovery on its path. They are compared by their edits, which makes them
+ * usable as keys of the memo table.
+ */
+public class TokenEdits implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final TokenizedQuery tokens;
+  private final int[] editedTokens;
+  private final String[] replacements;
+  private final int[] insertionOffsets;
+  private final String[] insertions;
+
+  /**
+   * Constructor for the class, representing the unedited query
+   */
+  public TokenEdits(TokenizedQuery tokens) {
+    this(tokens, new int[0], new String[0], new int[0], new String[0]);
+  }
+
+  private TokenEdits(TokenizedQuery tokens, int[] editedTokens, String[] replacements,
+      int[] insertionOffsets, String[] insertions) {
+    this.tokens = tokens;
+    this.editedTokens = editedTokens;
+    this.replacements = replacements;
+    this.insertionOffsets = insertionOffsets;
+    this.insertions = insertions;
+  }
+
+  /**
+   * Returns a new edit list where the tokens from firstToken to lastToken (inclusive) are
+   * deleted in addition to the current edits
+   */
+  public TokenEdits delete(int firstToken, int lastToken) {
+    TokenEdits edits = this;
+    for (int token = firstToken; token <= lastToken; token++) {
+      edits = edits.edit(token, null);
+    }
+    return edits;
+  }
+
+  /**
+   * Returns a new edit list where the given token is replaced by the given text in addition to
+   * the current edits
+   */
+  public TokenEdits replace(int token, String replacement) {
+    return edit(token, replacement);
+  }
+
+  /**
+   * Returns a new edit list where the given text is inserted at the given offset of the original
+   * query (before the token starting there, or after the token ending just before it), in
+   * addition to the current edits. A text inserted at the same offset as an earlier one comes
+   * after it.
+   */
+  public TokenEdits insert(int offset, String text) {
+    int insertion = 0;
+    while (insertion < insertionOffsets.length && insertionOffsets[insertion] <= offset) {
+      insertion++;
+    }
+    int[] newOffsets = new int[insertionOffsets.length + 1];
+    String[] newInsertions = new String[insertions.length + 1];
+    System.arraycopy(insertionOffsets, 0, newOffsets, 0, insertion);
+    System.arraycopy(insertions, 0, newInsertions, 0, insertion);
+    newOffsets[insertion] = offset;
+    newInsertions[insertion] = text;
+    System.arraycopy(insertionOffsets, insertion, newOffsets, insertion + 1,
+        insertionOffsets.length - insertion);
+    System.arraycopy(insertions, insertion, newInsertions, insertion + 1,
+        insertions.length - insertion);
+    return new TokenEdits(tokens, editedTokens, replacements, newOffsets, newInsertions);
+  }
+
+  private TokenEdits edit(int token, String replacement) {
+    int index = Arrays.binarySearch(editedTokens, token);
+    if (index >= 0) {
+      // the token has already been replaced: the new edit overrides the previous one
+      String[] newReplacements = replacements.clone();
+      newReplacements[index] = replacement;
+      return new TokenEdits(tokens, editedTokens, newReplacements, insertionOffsets,
+          insertions);
+    }
+    int insertion = -index - 1;
+    int[] newTokens = new int[editedTokens.length + 1];
+    String[] newReplacements = new String[replacements.length + 1];
+    System.arraycopy(editedTokens, 0, newTokens, 0, insertion);
+    System.arraycopy(replacements, 0, newReplacements, 0, insertion);
+    newTokens[insertion] = token;
+    newReplacements[insertion] = replacement;
+    System.arraycopy(editedTokens, insertion, newTokens, insertion + 1,
+        editedTokens.length - insertion);
+    System.arraycopy(replacements, insertion, newReplacements, insertion + 1,
+        replacements.length - insertion);
+    return new TokenEdits(tokens, newTokens, newReplacements, insertionOffsets, insertions);
+  }
+
+  /**
+   * Returns true if the given token is deleted or replaced
+   */
+  public boolean isEdited(int token) {
+    return Arrays.binarySearch(editedTokens, token) >= 0;
+  }
+
+  /**
+   * Returns true if a text is inserted at an offset after startOffset and up to endOffset
+   * (inclusive) of the original query
+   */
+  public boolean hasInsertionIn(int startOffset, int endOffset) {
+    for (int offset : insertionOffsets) {
+      if (offset > startOffset && offset <= endOffset) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the character of the edited query just before the given offset of the
+   * original query is whitespace, or if there is none. The texts inserted at the offset come
+   * before it, and the deleted tokens ending just before it are passed over.
+   */
+  public boolean isSpaceBefore(int offset) {
+    String query = tokens.getQuery();
+    while (true) {
+      for (int i = insertions.length - 1; i >= 0; i--) {
+        if (insertionOffsets[i] == offset && !insertions[i].isEmpty()) {
+          return Character.isWhitespace(insertions[i].charAt(insertions[i].length() - 1));
+        }
+      }
+      if (offset == 0) {
+        return true;
+      }
+      int token = tokens.lastTokenUntil(offset - 1);
+      int index = (token < 0 || tokens.getEnd(token) != offset - 1)
+          ? -1 : Arrays.binarySearch(editedTokens, token);
+      if (index < 0) {
+        return Character.isWhitespace(query.charAt(offset - 1));
+      }
+      String replacement = replacements[index];
+      if (replacement != null && !replacement.isEmpty()) {
+        return Character.isWhitespace(replacement.charAt(replacement.length() - 1));
+      }
+      offset = tokens.getStart(token);
+    }
+  }
+
+  /**
+   * Returns true if the character of the edited query just after a text inserted at the given
+   * offset of the original query is whitespace, or if there is none. The texts already inserted
+   * at the offset come before the new one, and the deleted tokens following it are passed over.
+   */
+  public boolean isSpaceAfter(int offset) {
+    return isSpaceFrom(offset, false);
+  }
+
+  /**
+   * Returns true if the character of the edited query just after the given token is whitespace,
+   * or if there is none. The texts inserted just after the token come first, and the deleted
+   * tokens following it are passed over.
+   */
+  public boolean isSpaceAfterToken(int token) {
+    return isSpaceFrom(tokens.getEnd(token) + 1, true);
+  }
+
+  /**
+   * This helper method returns true if the character of the edited query at the given offset of
+   * the original query is whitespace, or if there is none. The texts inserted at the offset are
+   * only read if withInsertions is true; the ones inserted after a deleted token always are.
+   */
+  private boolean isSpaceFrom(int offset, boolean withInsertions) {
+    String query = tokens.getQuery();
+    while (true) {
+      if (withInsertions) {
+        for (int i = 0; i < insertions.length; i++) {
+          if (insertionOffsets[i] == offset && !insertions[i].isEmpty()) {
+            return Character.isWhitespace(insertions[i].charAt(0));
+          }
+        }
+      }
+      if (offset >= query.length()) {
+        return true;
+      }
+      int token = tokens.lastTokenUntil(offset);
+      int index = (token < 0 || tokens.getStart(token) != offset)
+          ? -1 : Arrays.binarySearch(editedTokens, token);
+      if (index < 0) {
+        return Character.isWhitespace(query.charAt(offset));
+      }
+      String replacement = replacements[index];
+      if (replacement != null && !replacement.isEmpty()) {
+        return Character.isWhitespace(replacement.charAt(0));
+      }
+      offset = tokens.getEnd(token) + 1;
+      withInsertions = true;
+    }
+  }
+
+  /**
+   * Returns the (1-indexed) line and column in the edited query of its last character that is
+   * not whitespace, as {line, column}, or null if the edited query only holds whitespace. If
+   * skipComments is true, comments are passed over as whitespace. The edited query is not
+   * built: the tokens and the insertions are walked back from the end of the query until one
+   * is left, and since a token spanning several lines is never edited and the replacements and
+   * insertions are single tokens, the lines of the edited query are those of the original
+   * query, and only the edits before the character on its line move its column.
+   */
+  public int[] lastPosition(boolean skipComments) {
+    int token = tokens.size() - 1;
+    int insertion = insertions.length - 1;
+    while (token >= 0 || insertion >= 0) {
+      // an insertion at the start of a token comes before it, and one after its start after it
+      if (insertion >= 0
+          && (token < 0 || insertionOffsets[insertion] > tokens.getStart(token))) {
+        int last = lastVisible(insertions[insertion]);
+        if (last >= 0) {
+          return position(insertionOffsets[insertion], insertion, last);
+        }
+        insertion--;
+        continue;
+      }
+
+      int index = Arrays.binarySearch(editedTokens, token);
+      if (index >= 0) {
+        int last = (replacements[index] == null) ? -1 : lastVisible(replacements[index]);
+        if (last >= 0) {
+          return position(tokens.getStart(token), insertions.length, last);
+        }
+      }
+      else if (!skipComments || !tokens.isComment(token)) {
+        return position(tokens.getEnd(token), insertions.length, 0);
+      }
+      token--;
+    }
+    return null;
+  }
+
+  /**
+   * This helper method returns the index of the last character of the given text that is not
+   * whitespace, or -1 if there is none
+   */
+  private static int lastVisible(String text) {
+    int last = text.length() - 1;
+    while (last >= 0 && Character.isWhitespace(text.charAt(last))) {
+      last--;
+    }
+    return last;
+  }
+
+  /**
+   * This helper method returns the line and the column in the edited query of the character
+   * the given number of characters after the given offset of the original query, moved by the
+   * edited tokens ending before the offset on its line and by the first insertionLimit texts
+   * inserted on its line up to the offset
+   */
+  private int[] position(int offset, int insertionLimit, int shift) {
+    int line = tokens.lineOf(offset);
+    int lineStart = tokens.getLineStart(line);
+    int column = offset - lineStart + 1 + shift;
+    for (int i = 0; i < editedTokens.length; i++) {
+      int start = tokens.getStart(editedTokens[i]);
+      int end = tokens.getEnd(editedTokens[i]);
+      if (start >= lineStart && end < offset) {
+        column += ((replacements[i] == null) ? 0 : replacements[i].length()) - (end - start + 1);
+      }
+    }
+    for (int i = 0; i < insertionLimit; i++) {
+      if (insertionOffsets[i] >= lineStart && insertionOffsets[i] <= offset) {
+        column += insertions[i].length();
+      }
+    }
+    return new int[] {line, column};
+  }
+
+  /**
+   * Returns a Reader streaming the edited query. The characters are copied in chunks straight
+   * from the original query and the replacements, without building the edited query.
+   */
+  public Reader reader() {
+    return new EditedQueryReader();
+  }
+
+  public TokenizedQuery getTokens() {
+    return tokens;
+  }
+
+  public int size() {
+    return editedTokens.length + insertions.length;
+  }
+
+  /**
+   * Builds the edited query as a string. This is only meant for debugging and tests, as the
+   * search itself reads the edited query through reader().
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    char[] buffer = new char[256];
+    try (Reader reader = reader()) {
+      int read;
+      while ((read = reader.read(buffer, 0, buffer.length)) != -1) {
+        sb.append(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TokenEdits)) {
+      return false;
+    }
+    TokenEdits other = (TokenEdits) o;
+    return tokens == other.tokens && Arrays.equals(editedTokens, other.editedTokens)
+        && Arrays.equals(replacements, other.replacements)
+        && Arrays.equals(insertionOffsets, other.insertionOffsets)
+        && Arrays.equals(insertions, other.insertions);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 31 * Arrays.hashCode(editedTokens) + Arrays.hashCode(replacements);
+    return 31 * (31 * hash + Arrays.hashCode(insertionOffsets)) + Arrays.hashCode(insertions);
+  }
+
+  /**
+   * This class streams the edited query: it copies the original query up to the next edited
+   * token, then the replacement of that token (if any), and continues after the token. The texts
+   * inserted at an offset are copied when the original query reaches it, before the token there.
+   */
+  private class EditedQueryReader extends Reader {
+    // the offset of the next character to copy from the original query
+    private int offset;
+    // the index of the next edit in editedTokens, and of the next insertion in insertions
+    private int nextEdit;
+    private int nextInsertion;
+    // the replacement currently being copied, and the position in it
+    private String pending;
+    private int pendingPosition;
+
+    @Override
+    public int read(char[] buffer, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      String query = tokens.getQuery();
+      int copied = 0;
+      while (copied < len) {
+        if (pending != null) {
+          int count = Math.min(len - copied, pending.length() - pendingPosition);
+          pending.getChars(pendingPosition, pendingPosition + count, buffer, off + copied);
+          copied += count;
+          pendingPosition += count;
+          if (pendingPosition == pending.length()) {
+            pending = null;
+          }
+          continue;
+        }
+
+        if (nextInsertion < insertions.length && insertionOffsets[nextInsertion] <= offset) {
+          pending = insertions[nextInsertion++];
+          pendingPosition = 0;
+          if (pending.isEmpty()) {
+            pending = null;
+          }
+          continue;
+        }
+
+        int limit = (nextEdit < editedTokens.length)
+            ? tokens.getStart(editedTokens[nextEdit]) : query.length();
+        if (nextInsertion < insertions.length) {
+          limit = Math.min(limit, insertionOffsets[nextInsertion]);
+        }
+        if (offset < limit) {
+          int count = Math.min(len - copied, limit - offset);
+          query.getChars(offset, offset + count, buffer, off + copied);
+          copied += count;
+          offset += count;
+          continue;
+        }
+        if (nextEdit == editedTokens.length) {
+          break;
+        }
+
+        // skips the edited token, and queues its replacement
+        pending = replacements[nextEdit];
+        pendingPosition = 0;
+        offset = tokens.getEnd(editedTokens[nextEdit]) + 1;
+        nextEdit++;
+        if (pending != null && pending.isEmpty()) {
+          pending = null;
+        }
+      }
+      return (copied == 0) ? -1 : copied;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
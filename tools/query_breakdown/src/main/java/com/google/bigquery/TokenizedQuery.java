@@ -0,0 +1,216 @@
+package com.google.bigquery;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class holds a query lexed once into an array of tokens, which the token rewriting mode
+ * of QueryBreakdown edits instead of rebuilding the query string at every node (see TokenEdits).
+ * Each token is stored as the offsets of its first and last character in the query, so the
+ * whole array costs two ints per token. Whitespace is not a token: it is always kept.
+ *
+ * The lexer only needs to find the boundaries of the tokens (identifiers, numbers, quoted
+ * strings and identifiers, comments, operators and punctuation); the edited query is still
+ * lexed and parsed by the parser itself.
+ */
+public class TokenizedQuery implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  // the two-character operators, which would otherwise be split into two tokens
+  private static final String[] OPERATORS = {"<=", ">=", "<>", "!=", "||", "::", "=>", "->"};
+
+  private final String query;
+
+  // the offset of the first and the last character of each token, in increasing order
+  private final int[] starts;
+  private final int[] ends;
+
+  // the offset of the first character of each line
+  private final int[] lineStarts;
+
+  /**
+   * Constructor for the class, which lexes the given query
+   */
+  public TokenizedQuery(String query) {
+    this.query = query;
+    int[] tokenStarts = new int[16];
+    int[] tokenEnds = new int[16];
+    int[] lines = new int[16];
+    int size = 0;
+    int lineCount = 1;
+
+    int i = 0;
+    while (i < query.length()) {
+      char c = query.charAt(i);
+      if (c == '\n') {
+        if (lineCount == lines.length) {
+          lines = Arrays.copyOf(lines, lineCount * 2);
+        }
+        lines[lineCount++] = i + 1;
+        i++;
+        continue;
+      }
+      if (Character.isWhitespace(c)) {
+        i++;
+        continue;
+      }
+
+      int end = tokenEnd(query, i);
+      if (size == tokenStarts.length) {
+        tokenStarts = Arrays.copyOf(tokenStarts, size * 2);
+        tokenEnds = Arrays.copyOf(tokenEnds, size * 2);
+      }
+      tokenStarts[size] = i;
+      tokenEnds[size++] = end;
+      // a token spanning several lines still moves the line offsets
+      for (int j = i; j <= end; j++) {
+        if (query.charAt(j) == '\n') {
+          if (lineCount == lines.length) {
+            lines = Arrays.copyOf(lines, lineCount * 2);
+          }
+          lines[lineCount++] = j + 1;
+        }
+      }
+      i = end + 1;
+    }
+
+    this.starts = Arrays.copyOf(tokenStarts, size);
+    this.ends = Arrays.copyOf(tokenEnds, size);
+    this.lineStarts = Arrays.copyOf(lines, lineCount);
+  }
+
+  /**
+   * Returns the offset of the last character of the token starting at the given offset
+   */
+  private static int tokenEnd(String query, int start) {
+    char c = query.charAt(start);
+    int length = query.length();
+
+    // comments
+    if (query.startsWith("--", start)) {
+      int newLine = query.indexOf('\n', start);
+      return (newLine == -1) ? length - 1 : newLine - 1;
+    }
+    if (query.startsWith("/*", start)) {
+      int close = query.indexOf("*/", start + 2);
+      return (close == -1) ? length - 1 : close + 1;
+    }
+
+    // quoted strings and identifiers, where a doubled quote is an escaped quote
+    if (c == '\'' || c == '"' || c == '`') {
+      int i = start + 1;
+      while (i < length) {
+        if (query.charAt(i) == c) {
+          if (i + 1 < length && query.charAt(i + 1) == c) {
+            i += 2;
+            continue;
+          }
+          return i;
+        }
+        i++;
+      }
+      return length - 1;
+    }
+
+    // identifiers, keywords and numbers
+    if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+      boolean number = Character.isDigit(c);
+      int i = start + 1;
+      while (i < length) {
+        char next = query.charAt(i);
+        if (Character.isLetterOrDigit(next) || next == '_' || next == '$'
+            || (number && next == '.')) {
+          i++;
+        }
+        else {
+          break;
+        }
+      }
+      return i - 1;
+    }
+
+    // operators and punctuation
+    for (String operator : OPERATORS) {
+      if (query.startsWith(operator, start)) {
+        return start + operator.length() - 1;
+      }
+    }
+    return start;
+  }
+
+  /**
+   * Returns the offset in the query of the given (1-indexed) line and column
+   */
+  public int offsetOf(int line, int column) {
+    return lineStarts[line - 1] + column - 1;
+  }
+
+  /**
+   * Returns the (1-indexed) line holding the given offset of the query
+   */
+  public int lineOf(int offset) {
+    int index = Arrays.binarySearch(lineStarts, offset);
+    return ((index >= 0) ? index : -index - 2) + 1;
+  }
+
+  /**
+   * Returns the offset in the query of the first character of the given (1-indexed) line
+   */
+  public int getLineStart(int line) {
+    return lineStarts[line - 1];
+  }
+
+  /**
+   * Returns the index of the first token ending at or after the given offset
+   */
+  public int firstTokenFrom(int offset) {
+    int index = Arrays.binarySearch(ends, offset);
+    return (index >= 0) ? index : -index - 1;
+  }
+
+  /**
+   * Returns the index of the last token starting at or before the given offset, or -1
+   */
+  public int lastTokenUntil(int offset) {
+    int index = Arrays.binarySearch(starts, offset);
+    return (index >= 0) ? index : -index - 2;
+  }
+
+  /**
+   * Returns true if the given token spans several lines (a block comment or a quoted string)
+   */
+  public boolean isMultiLine(int token) {
+    int newLine = query.indexOf('\n', starts[token]);
+    return newLine != -1 && newLine <= ends[token];
+  }
+
+  /**
+   * getters for the query and its tokens
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  public int size() {
+    return starts.length;
+  }
+
+  public int getStart(int token) {
+    return starts[token];
+  }
+
+  public int getEnd(int token) {
+    return ends[token];
+  }
+
+  public String getToken(int token) {
+    return query.substring(starts[token], ends[token] + 1);
+  }
+
+  /**
+   * Returns true if the given token is a comment
+   */
+  public boolean isComment(int token) {
+    return query.startsWith("--", starts[token]) || query.startsWith("/*", starts[token]);
+  }
+}
@@ -0,0 +1,87 @@
+package com.google.bigquery;
+
+/**
+ * This class represents one unparseable component of a solution, in the form that is output:
+ * its location in the input and how it was handled. Unlike a node of the NodeArena, it is
+ * detached from the search tree, so it can be kept after the search and moved to other
+ * coordinates (for example from a statement to the file containing it).
+ */
+public class UnparseableComponent {
+  private final int startLine;
+  private final int startColumn;
+  private final int endLine;
+  private final int endColumn;
+  private final String errorHandlingType;
+  private final String replaceFrom;
+  private final String replaceTo;
+
+  public UnparseableComponent(int startLine, int startColumn, int endLine, int endColumn,
+      String errorHandlingType, String replaceFrom, String replaceTo) {
+    this.startLine = startLine;
+    this.startColumn = startColumn;
+    this.endLine = endLine;
+    this.endColumn = endColumn;
+    this.errorHandlingType = errorHandlingType;
+    this.replaceFrom = replaceFrom;
+    this.replaceTo = replaceTo;
+  }
+
+  /**
+   * Returns the same component with its location moved from the given statement to the file
+   * containing it
+   */
+  public UnparseableComponent toFilePosition(Statement statement) {
+    return new UnparseableComponent(statement.toFileLine(startLine),
+        statement.toFileColumn(startLine, startColumn), statement.toFileLine(endLine),
+        statement.toFileColumn(endLine, endColumn), errorHandlingType, replaceFrom, replaceTo);
+  }
+
+  /**
+   * Returns the line describing the component in the output of the tool. A replaced component
+   * also says what it was replaced with, and an insertion what was inserted at the component.
+   */
+  @Override
+  public String toString() {
+    String line = String.format("Unparseable portion: Start Line %1$s, End Line %2$s, "
+        + "Start Column %3$s, End Column %4$s, %5$s", startLine, endLine, startColumn,
+        endColumn, errorHandlingType);
+    if (errorHandlingType.equals(NodeArena.ErrorHandlingType.REPLACEMENT.toString())) {
+      line += String.format(": replaced %1$s with %2$s", replaceFrom, replaceTo);
+    }
+    else if (errorHandlingType.equals(NodeArena.ErrorHandlingType.INSERTION.toString())) {
+      line += String.format(": inserted %1$s", replaceTo);
+    }
+    return line;
+  }
+
+  /**
+   * getters for fields
+   */
+  public int getStartLine() {
+    return startLine;
+  }
+
+  public int getStartColumn() {
+    return startColumn;
+  }
+
+  public int getEndLine() {
+    return endLine;
+  }
+
+  public int getEndColumn() {
+    return endColumn;
+  }
+
+  public String getErrorHandlingType() {
+    return errorHandlingType;
+  }
+
+  public String getReplaceFrom() {
+    return replaceFrom;
+  }
+
+  public String getReplaceTo() {
+    return replaceTo;
+  }
+}
@@ -0,0 +1,102 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class BatchBreakdownTest {
+  /**
+   * Creates a crawl of three files: a.sql and sub/b.sql, with an error each, and sub/c.txt
+   */
+  private static Path crawl() throws IOException {
+    Path root = Files.createTempDirectory("crawl");
+    Files.createDirectory(root.resolve("sub"));
+    // deleted in the reverse order, after the files
+    root.toFile().deleteOnExit();
+    root.resolve("sub").toFile().deleteOnExit();
+    write(root.resolve("a.sql"), "SELECT a FROM A;\nBLAH SELECT b FROM B;\n");
+    write(root.resolve("sub/b.sql"), "SELECT c FROM C GROUP BLAH BY c\n");
+    write(root.resolve("sub/c.txt"), "x");
+    return root;
+  }
+
+  private static void write(Path file, String text) throws IOException {
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    file.toFile().deleteOnExit();
+  }
+
+  @Test
+  public void batchBreakdownExpandsDirectoriesAndGlobs() throws IOException {
+    Path root = crawl();
+    assertEquals(Arrays.asList(root.resolve("a.sql"), root.resolve("sub/b.sql"),
+        root.resolve("sub/c.txt")), BatchBreakdown.expand(Collections.singletonList(
+        root.toString())));
+    assertEquals(Arrays.asList(root.resolve("a.sql"), root.resolve("sub/b.sql")),
+        BatchBreakdown.expand(Collections.singletonList(root + "/**.sql")));
+    assertEquals(Collections.singletonList(root.resolve("sub/c.txt")),
+        BatchBreakdown.expand(Collections.singletonList(root + "/*/*.txt")));
+    // a file given twice is only broken down once
+    assertEquals(3, BatchBreakdown.expand(Arrays.asList(root + "/**.sql", root.toString()))
+        .size());
+  }
+
+  @Test(expected = NoSuchFileException.class)
+  public void batchBreakdownMissingInput() throws IOException {
+    BatchBreakdown.expand(Collections.singletonList(crawl().resolve("missing.sql").toString()));
+  }
+
+  @Test
+  public void batchBreakdownReportsEveryStatement() throws IOException {
+    Path root = crawl();
+    ByteArrayOutputStream progress = new ByteArrayOutputStream();
+    BatchBreakdown batch = new BatchBreakdown(CalciteParser::new, SearchStrategy.DEPTH_FIRST,
+        false, RecoveryOptions.DELETION_ONLY, SearchBudget.UNLIMITED, 0, 2,
+        new PrintStream(progress));
+
+    // the records of a file are written together, in the order of its statements
+    TreeMap<String, ArrayList<StatementResult>> records = new TreeMap<>();
+    batch.run(BatchBreakdown.expand(Collections.singletonList(root.toString())),
+        new ReportWriter() {
+          @Override
+          public void write(String source, StatementResult result) {
+            records.computeIfAbsent(source, s -> new ArrayList<>()).add(result);
+          }
+
+          @Override
+          public void close() {}
+        });
+
+    assertEquals(3, records.size());
+    ArrayList<StatementResult> a = records.get(root.resolve("a.sql").toString());
+    assertEquals(2, a.size());
+    assertTrue(a.get(0).isParseable());
+    assertEquals("Unparseable portion: Start Line 2, End Line 2, "
+        + "Start Column 1, End Column 4, DELETION", a.get(1).getComponents().get(0).toString());
+    assertEquals("Unparseable portion: Start Line 1, End Line 1, "
+        + "Start Column 23, End Column 26, DELETION", records.get(root.resolve("sub/b.sql")
+        .toString()).get(0).getComponents().get(0).toString());
+    // nothing in c.txt parses, so all of it is unparseable
+    assertEquals("Unparseable portion: Start Line 1, End Line 1, "
+        + "Start Column 1, End Column 1, DELETION", records.get(root.resolve("sub/c.txt")
+        .toString()).get(0).getComponents().get(0).toString());
+
+    assertEquals(3, batch.getFilesDone());
+    assertEquals(0, batch.getFilesFailed());
+    assertEquals(4, batch.getStatementsDone());
+    assertEquals(3, batch.getStatementsUnparseable());
+    assertTrue(progress.toString().contains("Broke down 3 files (4 statements, "
+        + "3 unparseable, 0 truncated)"));
+  }
+}
@@ -0,0 +1,114 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class BreakdownServerTest {
+  /**
+   * Serves the given request lines, and returns the response lines with their wall times masked
+   */
+  private static String[] serve(BreakdownServer server, BufferedReader requests)
+      throws IOException {
+    StringWriter out = new StringWriter();
+    server.serve(requests, out);
+    return out.toString().replaceAll("\"wallTimeMillis\":[0-9.]+", "\"wallTimeMillis\":X")
+        .split("\n");
+  }
+
+  @Test
+  public void breakdownServerAnswersEveryRequest() throws IOException {
+    String[] responses = serve(new BreakdownServer(CalciteParser::new,
+        SearchStrategy.DEPTH_FIRST, false, RecoveryOptions.DELETION_ONLY,
+        SearchBudget.UNLIMITED, 2), new BufferedReader(new StringReader(
+        "{\"id\":1,\"method\":\"breakdown\",\"document\":\"a.sql\",\"version\":2,"
+            + "\"text\":\"SELECT a FROM A;\\nBLAH SELECT b FROM B\"}\n"
+            + "\n"
+            + "{\"id\":2,\"method\":\"breakdown\",\"document\":\"a.sql\",\"version\":1,"
+            + "\"text\":\"SELECT a FROM A\"}\n"
+            + "{\"id\":\"x\",\"method\":\"frob\"}\n"
+            + "not json\n"
+            + "{\"id\":3,\"method\":\"shutdown\"}\n"
+            + "{\"id\":4,\"method\":\"breakdown\",\"document\":\"b.sql\","
+            + "\"text\":\"SELECT\"}\n")));
+
+    // the breakdown is answered by a worker, and the shutdown once the workers are done
+    Arrays.sort(responses, 0, responses.length - 1);
+    assertArrayEquals(new String[] {
+        "{\"id\":\"x\",\"status\":\"error\",\"error\":\"unknown method: frob\"}",
+        "{\"id\":1,\"document\":\"a.sql\",\"version\":2,\"status\":\"done\",\"statements\":["
+            + "{\"statement\":0,\"startLine\":1,\"parseable\":true,\"truncation\":null,"
+            + "\"parseCalls\":1,\"nodesExplored\":0,\"nodesPruned\":0,\"memoHits\":0,"
+            + "\"wallTimeMillis\":X,\"components\":[]},"
+            + "{\"statement\":1,\"startLine\":2,\"parseable\":false,\"truncation\":null,"
+            + "\"parseCalls\":3,\"nodesExplored\":2,\"nodesPruned\":0,\"memoHits\":0,"
+            + "\"wallTimeMillis\":X,\"components\":[{\"startLine\":2,\"startColumn\":1,"
+            + "\"endLine\":2,\"endColumn\":4,\"recovery\":\"DELETION\"}]}]}",
+        // an older version than the latest one is not broken down
+        "{\"id\":2,\"document\":\"a.sql\",\"version\":1,\"status\":\"cancelled\"}",
+        "{\"id\":null,\"status\":\"error\",\"error\":\"expected an object at offset 0\"}",
+        "{\"id\":3,\"status\":\"done\"}"}, responses);
+  }
+
+  @Test
+  public void breakdownServerCancelsStaleRequest() throws IOException {
+    // the first version waits in the parser until the second one is being parsed, which is
+    // only once it has cancelled the first one
+    CountDownLatch firstStarted = new CountDownLatch(1);
+    CountDownLatch secondStarted = new CountDownLatch(1);
+    Parser calcite = new CalciteParser();
+    Parser parser = query -> {
+      if (query.contains("stale")) {
+        firstStarted.countDown();
+        secondStarted.await(10, TimeUnit.SECONDS);
+      }
+      else if (query.contains("fresh")) {
+        secondStarted.countDown();
+      }
+      synchronized (calcite) {
+        return calcite.parseQuery(query);
+      }
+    };
+
+    Iterator<String> requests = Arrays.asList(
+        "{\"id\":1,\"method\":\"breakdown\",\"document\":\"a.sql\",\"version\":1,"
+            + "\"text\":\"SELECT a FROM stale GROUP BLAH BY a\"}",
+        "{\"id\":2,\"method\":\"breakdown\",\"document\":\"a.sql\",\"version\":2,"
+            + "\"text\":\"SELECT a FROM fresh\"}").iterator();
+    BreakdownServer server = new BreakdownServer(() -> parser, SearchStrategy.DEPTH_FIRST,
+        false, RecoveryOptions.DELETION_ONLY, SearchBudget.UNLIMITED, 2);
+    String[] responses = serve(server, new BufferedReader(new StringReader("")) {
+      @Override
+      public String readLine() throws IOException {
+        if (!requests.hasNext()) {
+          return null;
+        }
+        String line = requests.next();
+        if (line.contains("fresh")) {
+          try {
+            firstStarted.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+        return line;
+      }
+    });
+
+    Arrays.sort(responses);
+    assertArrayEquals(new String[] {
+        "{\"id\":1,\"document\":\"a.sql\",\"version\":1,\"status\":\"cancelled\"}",
+        "{\"id\":2,\"document\":\"a.sql\",\"version\":2,\"status\":\"done\",\"statements\":["
+            + "{\"statement\":0,\"startLine\":1,\"parseable\":true,\"truncation\":null,"
+            + "\"parseCalls\":1,\"nodesExplored\":0,\"nodesPruned\":0,\"memoHits\":0,"
+            + "\"wallTimeMillis\":X,\"components\":[]}]}"}, responses);
+  }
+}
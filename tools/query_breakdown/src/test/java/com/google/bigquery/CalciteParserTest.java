@@ -2,7 +2,9 @@ package com.google.bigquery;
 
 import static org.junit.Assert.*;
 
+import org.apache.calcite.avatica.util.Quoting;
 import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.validate.SqlConformanceEnum;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -84,4 +86,83 @@ public class CalciteParserTest {
       assertEquals(4, e.getPos().getEndColumnNum());
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void validateSuccess() {
+    assertTrue(parser.validate("SELECT a FROM A; SELECT b FROM B").isSuccess());
+  }
+
+  @Test
+  public void validateFailurePosition() {
+    ParseResult result = parser.validate("SELECT a FROM A;\nSELECT b FROM B GROUP BLAH BY b");
+    assertFalse(result.isSuccess());
+    assertEquals(2, result.getErrorPosition().getLineNum());
+    assertEquals(23, result.getErrorPosition().getColumnNum());
+    assertEquals(26, result.getErrorPosition().getEndColumnNum());
+    assertFalse(result.getExpectedTokens().isEmpty());
+  }
+
+  @Test
+  public void validateReusesParser() throws SqlParseException {
+    // the reused parser must not keep any state from the previous query
+    assertFalse(parser.validate("BLAH SELECT a FROM A").isSuccess());
+    assertTrue(parser.validate("SELECT \"a\" FROM A").isSuccess());
+    assertFalse(parser.validate("SELECT `a` FROM A").isSuccess());
+    assertTrue(parser.validate("SELECT a\tFROM A").isSuccess());
+    ParseResult result = parser.validate("SELECT a\tFROM A BLAH BLAH");
+    try {
+      parser.parseQuery("SELECT a\tFROM A BLAH BLAH");
+      fail();
+    } catch (SqlParseException e) {
+      assertEquals(e.getPos(), result.getErrorPosition());
+    }
+  }
+
+  @Test
+  public void dialectBackTickQuoting() {
+    String query = "SELECT `a b` FROM `project.dataset.A`";
+    assertFalse(parser.validate(query).isSuccess());
+    assertTrue(CalciteParser.of(ParserDialect.CORE, Quoting.BACK_TICK,
+        SqlConformanceEnum.DEFAULT).validate(query).isSuccess());
+  }
+
+  @Test
+  public void dialectBabel() {
+    String query = "SELECT a::INTEGER FROM A";
+    assertFalse(parser.validate(query).isSuccess());
+    assertTrue(CalciteParser.of(ParserDialect.BABEL).validate(query).isSuccess());
+  }
+
+  @Test
+  public void dialectPooledPerConfiguration() {
+    CalciteParser babel = CalciteParser.of(ParserDialect.BABEL);
+    assertSame(babel, CalciteParser.of(ParserDialect.BABEL, Quoting.DOUBLE_QUOTE,
+        SqlConformanceEnum.BABEL));
+    assertNotSame(babel, CalciteParser.of(ParserDialect.BABEL, Quoting.BACK_TICK,
+        SqlConformanceEnum.BABEL));
+    assertNotSame(babel, CalciteParser.of(ParserDialect.CORE));
+  }
+
+  @Test
+  public void dialectFromName() {
+    assertEquals(ParserDialect.DEFAULT_DIALECT, ParserDialect.fromName("defaultdialect"));
+    assertEquals(Quoting.BACK_TICK, ParserDialect.fromName("bigquery").getDefaultQuoting());
+    try {
+      ParserDialect.fromName("oracle");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("unknown dialect: oracle", e.getMessage());
+    }
+  }
+
+  @Test
+  public void dialectNotOnClasspath() {
+    // the classifier dialects are not dependencies of the tool
+    try {
+      CalciteParser.of(ParserDialect.POSTGRESQL);
+      fail();
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("calcite-postgresql.jar"));
+    }
+  }
+}
@@ -3,6 +3,7 @@ package com.google.bigquery;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import org.apache.calcite.sql.parser.SqlParseException;
 import org.junit.Test;
@@ -64,9 +65,9 @@ public class ErrorRecoveryTest {
     } catch (Exception e) {
       Collection<String> test = ((SqlParseException) e).getExpectedTokenNames();
       ArrayList<String> expected = new ArrayList<>();
-      expected.add("!=");
-      expected.add("%");
+      expected.add(",");
       expected.add("(");
+      expected.add("AS");
       assertEquals(expected,
           ReplacementLogic.replace("", QueryBreakdown.expectedTokensFilter(test)));
     }
@@ -81,9 +82,9 @@ public class ErrorRecoveryTest {
     } catch (Exception e) {
       Collection<String> test = ((SqlParseException) e).getExpectedTokenNames();
       ArrayList<ReplacedComponent> expected = new ArrayList<>();
-      expected.add(new ReplacedComponent("SELECT a != b", "WHERE", "!="));
-      expected.add(new ReplacedComponent("SELECT a % b", "WHERE", "%"));
+      expected.add(new ReplacedComponent("SELECT a , b", "WHERE", ","));
       expected.add(new ReplacedComponent("SELECT a ( b", "WHERE", "("));
+      expected.add(new ReplacedComponent("SELECT a AS b", "WHERE", "AS"));
       ArrayList<ReplacedComponent> actual =  QueryBreakdown.replacement(query,
           ((SqlParseException) e).getPos().getLineNum(),
           ((SqlParseException) e).getPos().getColumnNum(),
@@ -93,6 +94,49 @@ public class ErrorRecoveryTest {
     }
   }
 
+  @Test
+  public void replacementRanksSimilarTokenFirst() {
+    ArrayList<String> options = new ArrayList<>();
+    options.add("AS");
+    options.add(",");
+    options.add("FROM");
+    options.add("WHERE");
+    ArrayList<String> expected = new ArrayList<>();
+    expected.add("FROM");
+    assertEquals(expected, ReplacementLogic.rank("FORM", options, 1));
+  }
+
+  @Test
+  public void replacementSkipsTokenClasses() {
+    ArrayList<String> options = new ArrayList<>();
+    options.add("<IDENTIFIER>");
+    options.add("BY");
+    options.add("AS");
+    ArrayList<String> expected = new ArrayList<>();
+    expected.add("AS");
+    expected.add("BY");
+    assertEquals(expected, ReplacementLogic.rank("x", options, 5));
+  }
+
+  @Test
+  public void replacementPadded() {
+    ArrayList<ReplacedComponent> expected = new ArrayList<>();
+    expected.add(new ReplacedComponent("SELECT d FROM v ORDER BY", ";", "BY"));
+    assertEquals(expected, QueryBreakdown.replacement("SELECT d FROM v ORDER;", 1, 22, 22,
+        new ArrayList<>(Arrays.asList("\"BY\"")), 1));
+    assertEquals("SELECT a ( b", QueryBreakdown.replacement("SELECT a WHERE b", 1, 10, 14,
+        new ArrayList<>(Arrays.asList("\"(\"")), 1).get(0).getQuery());
+  }
+
+  @Test
+  public void insertionPadded() {
+    assertEquals("SELECT d FROM v ORDER BY ;",
+        QueryBreakdown.insertion("SELECT d FROM v ORDER;", 1, 22, "BY"));
+    assertEquals("SELECT a FROM t WHERE (a = 1 )",
+        QueryBreakdown.insertion("SELECT a FROM t WHERE (a = 1", 1, 29, ")"));
+    assertEquals("SELECT a , b", QueryBreakdown.insertion("SELECT a b", 1, 10, ","));
+  }
+
   // incomplete test
   @Test
   public void replacementSingleLineTwoErrors() {
@@ -0,0 +1,98 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class IncrementalBreakdownTest {
+  private static final String DOCUMENT = "SELECT a FROM A;\n"
+      + "BLAH SELECT b FROM B;\n"
+      + "SELECT c FROM C GROUP BLAH BY c";
+
+  private static StatementBreakdown statements() {
+    return new StatementBreakdown(CalciteParser::new, SearchStrategy.DEPTH_FIRST, false,
+        SearchBudget.UNLIMITED, 1);
+  }
+
+  private static void assertSameComponents(ArrayList<StatementResult> expected,
+      ArrayList<StatementResult> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getStatementIndex(), actual.get(i).getStatementIndex());
+      assertEquals(expected.get(i).getStartLine(), actual.get(i).getStartLine());
+      assertEquals(expected.get(i).getComponents().toString(),
+          actual.get(i).getComponents().toString());
+    }
+  }
+
+  @Test
+  public void incrementalBreakdownShiftsUntouchedStatements() {
+    IncrementalBreakdown incremental = new IncrementalBreakdown(statements(), 16);
+    incremental.run(DOCUMENT, SearchBudget.UNLIMITED);
+    assertEquals(0, incremental.getHits());
+    assertEquals(3, incremental.getMisses());
+
+    // a new statement moves the others down, and the last one is indented
+    String edited = "SELECT z FROM Z;\n" + DOCUMENT.replace(";\nSELECT c", ";\n  SELECT c");
+    ArrayList<StatementResult> results = incremental.run(edited, SearchBudget.UNLIMITED);
+    assertEquals(3, incremental.getHits());
+    assertEquals(4, incremental.getMisses());
+    assertSameComponents(statements().run(StatementSplitter.split(edited).iterator()), results);
+    assertEquals("Unparseable portion: Start Line 3, End Line 3, "
+        + "Start Column 1, End Column 4, DELETION",
+        results.get(2).getComponents().get(0).toString());
+    assertEquals("Unparseable portion: Start Line 4, End Line 4, "
+        + "Start Column 25, End Column 28, DELETION",
+        results.get(3).getComponents().get(0).toString());
+    // nothing was parsed for the reused statements
+    assertEquals(0, results.get(3).getParseCalls());
+    assertEquals(0, results.get(3).getNodesExplored());
+  }
+
+  @Test
+  public void incrementalBreakdownOnlyRedoesEditedStatement() {
+    IncrementalBreakdown incremental = new IncrementalBreakdown(statements(), 16);
+    incremental.run(DOCUMENT, SearchBudget.UNLIMITED);
+    String edited = DOCUMENT.replace("BLAH SELECT b", "SELECT b BLAH");
+    ArrayList<StatementResult> results = incremental.run(edited, SearchBudget.UNLIMITED);
+    assertEquals(2, incremental.getHits());
+    assertEquals(4, incremental.getMisses());
+    assertSameComponents(statements().run(StatementSplitter.split(edited).iterator()), results);
+    assertTrue(results.get(1).getParseCalls() > 0);
+  }
+
+  @Test
+  public void incrementalBreakdownDropsLeastRecentlyUsed() {
+    IncrementalBreakdown incremental = new IncrementalBreakdown(statements(), 2);
+    incremental.run(DOCUMENT, SearchBudget.UNLIMITED);
+    assertEquals(2, incremental.getCachedStatements());
+    // the first statement was dropped, and the last two are still cached
+    incremental.run("SELECT c FROM C GROUP BLAH BY c", SearchBudget.UNLIMITED);
+    assertEquals(1, incremental.getHits());
+    // caching the first statement again drops the second one, the least recently used
+    incremental.run("SELECT a FROM A", SearchBudget.UNLIMITED);
+    assertEquals(1, incremental.getHits());
+    incremental.run("SELECT c FROM C GROUP BLAH BY c", SearchBudget.UNLIMITED);
+    incremental.run("BLAH SELECT b FROM B", SearchBudget.UNLIMITED);
+    assertEquals(2, incremental.getHits());
+    assertEquals(5, incremental.getMisses());
+  }
+
+  @Test
+  public void incrementalBreakdownDoesNotCacheCancelledStatement() {
+    IncrementalBreakdown incremental = new IncrementalBreakdown(statements(), 16);
+    SearchBudget cancelled = SearchBudget.UNLIMITED.withCancellation(new AtomicBoolean(true));
+    StatementResult result = incremental.run("SELECT a FROM A GROUP BLAH BY a", cancelled)
+        .get(0);
+    assertEquals("The search was truncated by the cancellation after exploring 0 errors, "
+        + "before the query could be parsed", result.getTruncationMessage());
+    assertEquals(0, incremental.getCachedStatements());
+
+    // a statement that parses is never truncated, so it is cached
+    incremental.run("SELECT a FROM A", cancelled);
+    assertEquals(1, incremental.getCachedStatements());
+  }
+}
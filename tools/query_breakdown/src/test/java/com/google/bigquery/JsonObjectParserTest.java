@@ -0,0 +1,35 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+
+public class JsonObjectParserTest {
+  @Test
+  public void jsonObjectParserValues() {
+    Map<String, Object> object = JsonObjectParser.parse(" {\"id\": 12, \"text\": "
+        + "\"a\\\"b\\\\c\\n\\u0041\", \"ratio\": -1.5e2, \"flags\": [true, false, null], "
+        + "\"nested\": {}} ");
+    assertEquals(12L, object.get("id"));
+    assertEquals("a\"b\\c\nA", object.get("text"));
+    assertEquals(-150.0, object.get("ratio"));
+    assertEquals(Arrays.asList(true, false, null), object.get("flags"));
+    assertEquals(Collections.emptyMap(), object.get("nested"));
+  }
+
+  @Test
+  public void jsonObjectParserMalformed() {
+    for (String text : new String[] {"[1]", "{\"a\":1", "{\"a\" 1}", "{\"a\":1} x",
+        "{\"a\":tru}", "{\"a\":\"\\x\"}"}) {
+      try {
+        JsonObjectParser.parse(text);
+        fail("parsed " + text);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+}
@@ -33,4 +33,63 @@ public class LocationTrackerTest {
         ir.getLocationTracker().delete(3, 1, 5);
     assertEquals(6, locationTracker.getOriginalPosition(3, 1));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void locationTrackerDeletionKeepsParent() {
+    InputReader ir = new InputReader();
+    String query = "SELECT a\n" + "FROM A\n" + "WHERE A = 3; SELECT b FROM B";
+    ir.readFromString(query);
+    LocationTracker parent = ir.getLocationTracker().delete(3, 1, 5);
+    LocationTracker child = parent.delete(3, 1, 2);
+    assertEquals(6, parent.getOriginalPosition(3, 1));
+    assertEquals(8, child.getOriginalPosition(3, 1));
+    assertEquals(3, child.getOriginalPosition(2, 3));
+  }
+
+  @Test
+  public void locationTrackerMultipleDeletionsTest() {
+    InputReader ir = new InputReader();
+    String query = "0123456789abcdefghij";
+    ir.readFromString(query);
+    // deletes "345", then "9ab" (now at columns 7 to 9), then "12" and "cd" of what remains
+    LocationTracker locationTracker = ir.getLocationTracker().delete(1, 4, 6)
+        .delete(1, 7, 9).delete(1, 2, 3).delete(1, 5, 6);
+    String remaining = "0678efghij";
+    for (int i = 0; i < remaining.length(); i++) {
+      assertEquals(query.indexOf(remaining.charAt(i)) + 1,
+          locationTracker.getOriginalPosition(1, i + 1));
+    }
+  }
+
+  @Test
+  public void locationTrackerReplacementTest() {
+    InputReader ir = new InputReader();
+    ir.readFromString("0123456789");
+    // replaces "234" with "X", then "1" with "YYY", which gives "0YYYX56789"
+    LocationTracker shorter = ir.getLocationTracker().replace(1, 3, 5, 1);
+    LocationTracker longer = shorter.replace(1, 2, 2, 3);
+    assertEquals(3, shorter.getOriginalPosition(1, 3));
+    assertEquals(6, shorter.getOriginalPosition(1, 4));
+    assertEquals(2, longer.getOriginalPosition(1, 2));
+    assertEquals(2, longer.getOriginalPosition(1, 4));
+    assertEquals(3, longer.getOriginalPosition(1, 5));
+    assertEquals(6, longer.getOriginalPosition(1, 6));
+  }
+
+  @Test
+  public void locationTrackerInsertionTest() {
+    InputReader ir = new InputReader();
+    ir.readFromString("abc");
+    // inserts "XY" before "b", which gives "aXYbc", and then " Z" at the end of the line
+    LocationTracker locationTracker = ir.getLocationTracker().insert(1, 2, 2).insert(1, 6, 2);
+    assertEquals(1, locationTracker.getOriginalPosition(1, 1));
+    assertEquals(2, locationTracker.getOriginalPosition(1, 2));
+    assertEquals(2, locationTracker.getOriginalPosition(1, 3));
+    assertEquals(2, locationTracker.getOriginalPosition(1, 4));
+    assertEquals(3, locationTracker.getOriginalPosition(1, 5));
+    assertEquals(3, locationTracker.getOriginalPosition(1, 7));
+    assertTrue(locationTracker.isInserted(1, 3));
+    assertFalse(locationTracker.isInserted(1, 4));
+    assertTrue(locationTracker.isInserted(1, 6));
+  }
+}
@@ -0,0 +1,43 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MemoTableTest {
+  @Test
+  public void memoTableUnvisitedQuery() {
+    MemoTable<String> memo = new MemoTable<>();
+    assertNull(memo.get("SELECT a FROM A"));
+  }
+
+  @Test
+  public void memoTablePrunesDeeperVisit() {
+    MemoTable<String> memo = new MemoTable<>();
+    memo.put("SELECT a FROM A", ParseResult.success(), 2);
+    assertFalse(memo.get("SELECT a FROM A").visit(2));
+    assertFalse(memo.get("SELECT a FROM A").visit(3));
+    assertEquals(2, memo.get("SELECT a FROM A").getBestDepth());
+  }
+
+  @Test
+  public void memoTableRevisitsShallowerVisit() {
+    MemoTable<String> memo = new MemoTable<>();
+    memo.put("SELECT a FROM A", ParseResult.success(), 2);
+    assertTrue(memo.get("SELECT a FROM A").visit(1));
+    assertEquals(1, memo.get("SELECT a FROM A").getBestDepth());
+    assertTrue(memo.get("SELECT a FROM A").getResult().isSuccess());
+  }
+
+  @Test
+  public void memoTableRevisitsSmallerPathAtSameDepth() {
+    MemoTable<String> memo = new MemoTable<>();
+    assertNull(memo.putIfAbsent("SELECT a FROM A", ParseResult.success(), 2, new int[] {1, 0}));
+    MemoTable.Entry entry =
+        memo.putIfAbsent("SELECT a FROM A", ParseResult.success(), 2, new int[] {0, 1});
+    assertNotNull(entry);
+    assertTrue(entry.visit(2, new int[] {0, 1}));
+    assertFalse(entry.visit(2, new int[] {0, 1}));
+    assertFalse(entry.visit(2, new int[] {1, 0}));
+  }
+}
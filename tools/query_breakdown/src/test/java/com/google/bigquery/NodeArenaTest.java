@@ -0,0 +1,52 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import org.junit.Test;
+
+public class NodeArenaTest {
+  @Test
+  public void nodeArenaComponentsFromNodeToRoot() {
+    NodeArena arena = new NodeArena();
+    int deletion = arena.deletion(NodeArena.ROOT, 1, 1, 1, 4);
+    int replacement = arena.replacement(deletion, 2, 8, 2, 11, "WITH", "BY");
+    ArrayList<UnparseableComponent> components = arena.components(replacement);
+    assertEquals(2, components.size());
+    assertEquals("Unparseable portion: Start Line 2, End Line 2, Start Column 8, "
+        + "End Column 11, REPLACEMENT: replaced WITH with BY", components.get(0).toString());
+    assertEquals("Unparseable portion: Start Line 1, End Line 1, Start Column 1, "
+        + "End Column 4, DELETION", components.get(1).toString());
+    assertTrue(arena.components(NodeArena.ROOT).isEmpty());
+  }
+
+  @Test
+  public void nodeArenaReleasesDeadBranch() {
+    NodeArena arena = new NodeArena();
+    int parent = arena.deletion(NodeArena.ROOT, 1, 1, 1, 4);
+    int child = arena.insertion(parent, 1, 6, 1, 6, ")");
+    // the state of the parent is done, and its child keeps it alive
+    arena.release(parent);
+    assertEquals(3, arena.getLiveNodes());
+    arena.release(child);
+    assertEquals(1, arena.getLiveNodes());
+    assertEquals(3, arena.getPeakLiveNodes());
+
+    // the released slots are reused
+    int reused = arena.deletion(NodeArena.ROOT, 1, 1, 1, 4);
+    assertTrue(reused == parent || reused == child);
+  }
+
+  @Test
+  public void nodeArenaRetainedNodeKeepsAncestors() {
+    NodeArena arena = new NodeArena();
+    int parent = arena.deletion(NodeArena.ROOT, 1, 1, 1, 4);
+    int child = arena.deletion(parent, 1, 6, 1, 9);
+    arena.retain(child);
+    arena.release(parent);
+    arena.release(child);
+    assertEquals(3, arena.getLiveNodes());
+    assertEquals(parent, arena.getParent(child));
+    assertEquals(2, arena.components(child).size());
+  }
+}
@@ -2,10 +2,13 @@ package com.google.bigquery;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import org.junit.Test;
 
 public class QueryBreakdownTest {
@@ -75,4 +78,388 @@ public class QueryBreakdownTest {
             + "Start Column 1, End Column 4, DELETION\n",
         outContent.toString());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void QueryBreakdownParseCallsMultiDeletion() throws IOException {
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
+    InputReader ir = new InputReader();
+    String absPath = new File("").getAbsolutePath();
+    String query = ir.readInput(absPath + "/src/test/java/com/google/bigquery"
+        + "/InputTestFiles/multipleDeletion.txt");
+    qb.run(query, "", 0, ir.getLocationTracker());
+    // one parse per recovered error plus the final successful parse
+    assertEquals(4, qb.getParseCalls());
+    assertEquals(0, qb.getMemoPrunes());
+  }
+
+  @Test
+  public void QueryBreakdownRunBestFirstMultiDeletion() throws IOException {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.BEST_FIRST);
+    InputReader ir = new InputReader();
+    String absPath = new File("").getAbsolutePath();
+    String query = ir.readInput(absPath + "/src/test/java/com/google/bigquery"
+        + "/InputTestFiles/multipleDeletion.txt");
+    qb.run(query, "", 0, ir.getLocationTracker());
+    assertEquals(
+        "Unparseable portion: Start Line 2, End Line 2, "
+            + "Start Column 28, End Column 31, DELETION\n"
+            + "Unparseable portion: Start Line 2, End Line 2, "
+            + "Start Column 1, End Column 4, DELETION\n"
+            + "Unparseable portion: Start Line 1, End Line 1, "
+            + "Start Column 1, End Column 4, DELETION\n",
+        outContent.toString());
+    assertEquals(4, qb.getParseCalls());
+  }
+
+  @Test
+  public void QueryBreakdownRunParallelMultiDeletion() throws IOException {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 4);
+    InputReader ir = new InputReader();
+    String absPath = new File("").getAbsolutePath();
+    String query = ir.readInput(absPath + "/src/test/java/com/google/bigquery"
+        + "/InputTestFiles/multipleDeletion.txt");
+    qb.run(query, "", 0, ir.getLocationTracker());
+    assertEquals(
+        "Unparseable portion: Start Line 2, End Line 2, "
+            + "Start Column 28, End Column 31, DELETION\n"
+            + "Unparseable portion: Start Line 2, End Line 2, "
+            + "Start Column 1, End Column 4, DELETION\n"
+            + "Unparseable portion: Start Line 1, End Line 1, "
+            + "Start Column 1, End Column 4, DELETION\n",
+        outContent.toString());
+  }
+
+  @Test
+  public void QueryBreakdownRunErrorLimitTruncates() throws IOException {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
+    InputReader ir = new InputReader();
+    String absPath = new File("").getAbsolutePath();
+    String query = ir.readInput(absPath + "/src/test/java/com/google/bigquery"
+        + "/InputTestFiles/multipleDeletion.txt");
+    qb.run(query, "", 2, ir.getLocationTracker());
+    assertTrue(qb.isTruncated());
+    assertEquals(2, qb.getNodesExplored());
+    // the first error has been deleted, and the search stopped at the second one
+    assertEquals("Unparseable portion: Start Line 1, End Line 1, "
+        + "Start Column 1, End Column 4, DELETION\n"
+        + "The search was truncated by the error limit after exploring 2 errors, "
+        + "before the query could be parsed\n", outContent.toString());
+  }
+
+  @Test
+  public void QueryBreakdownRunParseLimitKeepsSolution() throws IOException {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
+    InputReader ir = new InputReader();
+    String absPath = new File("").getAbsolutePath();
+    String query = ir.readInput(absPath + "/src/test/java/com/google/bigquery"
+        + "/InputTestFiles/multipleDeletion.txt");
+    qb.run(query, "", new SearchBudget(0, 4, 0), ir.getLocationTracker());
+    assertFalse(qb.isTruncated());
+    assertEquals(4, qb.getParseCalls());
+  }
+
+  @Test
+  public void QueryBreakdownRunTokenRewritingMultiDeletion() throws IOException {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb =
+        new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1, true);
+    InputReader ir = new InputReader();
+    String absPath = new File("").getAbsolutePath();
+    String query = ir.readInput(absPath + "/src/test/java/com/google/bigquery"
+        + "/InputTestFiles/multipleDeletion.txt");
+    qb.run(query, "", 0, ir.getLocationTracker());
+    assertEquals(
+        "Unparseable portion: Start Line 2, End Line 2, "
+            + "Start Column 28, End Column 31, DELETION\n"
+            + "Unparseable portion: Start Line 2, End Line 2, "
+            + "Start Column 1, End Column 4, DELETION\n"
+            + "Unparseable portion: Start Line 1, End Line 1, "
+            + "Start Column 1, End Column 4, DELETION\n",
+        outContent.toString());
+    assertEquals(4, qb.getParseCalls());
+  }
+
+  @Test
+  public void QueryBreakdownRunTokenRewritingMatchesStringMode() {
+    String query = "SELECT c FROM u WHERE;\nSELECT d FROM v ORDER;";
+    String[] outputs = new String[2];
+    for (int mode = 0; mode < 2; mode++) {
+      ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(outContent));
+      QueryBreakdown qb =
+          new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1, mode == 1);
+      qb.run(query, "", 0, LocationTracker.fromQuery(query));
+      outputs[mode] = outContent.toString();
+    }
+    assertTrue(outputs[0].startsWith("Unparseable portion: Start Line 2, End Line 2, "
+        + "Start Column 17, End Column 21, DELETION\n"));
+    assertEquals(outputs[0], outputs[1]);
+  }
+
+  @Test
+  public void QueryBreakdownRunReportHasSource() throws IOException {
+    File report = File.createTempFile("report", ".json");
+    report.deleteOnExit();
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
+    String query = "SELECT a FROM A BLAH";
+    qb.run(query, "input.sql", report.getPath(), SearchBudget.UNLIMITED,
+        LocationTracker.fromQuery(query));
+    String record = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+    assertTrue(record.startsWith("{\"source\":\"input.sql\",\"statement\":0,"));
+  }
+
+  @Test
+  public void QueryBreakdownRunReplacement() {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+        false, new RecoveryOptions(3, 0));
+    InputReader ir = new InputReader();
+    String query = "SELECT a FROM A GROUP WITH a";
+    ir.readFromString(query);
+    qb.run(query, "", 0, ir.getLocationTracker());
+    // a single replacement instead of five deletions
+    assertEquals("Unparseable portion: Start Line 1, End Line 1, "
+        + "Start Column 23, End Column 26, REPLACEMENT: replaced WITH with BY\n",
+        outContent.toString());
+    assertEquals(3, qb.getParseCalls());
+  }
+
+  @Test
+  public void QueryBreakdownRunReplacementAfterWord() {
+    // BY written in place of the semicolon must not join ORDER into the alias ORDERBY
+    String query = "SELECT d FROM v ORDER;";
+    for (boolean tokenRewriting : new boolean[] {false, true}) {
+      ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(outContent));
+      QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+          tokenRewriting, new RecoveryOptions(3, 0));
+      qb.run(query, "", 0, LocationTracker.fromQuery(query));
+      assertEquals("Unparseable portion: Start Line 1, End Line 1, "
+          + "Start Column 17, End Column 21, DELETION\n"
+          + "Unparseable portion: Start Line 1, End Line 1, "
+          + "Start Column 22, End Column 22, DELETION\n",
+          outContent.toString());
+    }
+  }
+
+  @Test
+  public void QueryBreakdownRunInsertionAfterWord() {
+    // BY and NOT inserted before the semicolon must not join ORDER and WHERE into aliases
+    String query = "SELECT c FROM u WHERE;\nSELECT d FROM v ORDER;";
+    for (boolean tokenRewriting : new boolean[] {false, true}) {
+      ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(outContent));
+      QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+          tokenRewriting, new RecoveryOptions(0, 3));
+      qb.run(query, "", 0, LocationTracker.fromQuery(query));
+      assertEquals("Unparseable portion: Start Line 2, End Line 2, "
+          + "Start Column 17, End Column 21, DELETION\n"
+          + "Unparseable portion: Start Line 2, End Line 2, "
+          + "Start Column 22, End Column 22, DELETION\n"
+          + "Unparseable portion: Start Line 1, End Line 1, "
+          + "Start Column 22, End Column 22, INSERTION: inserted NULL\n",
+          outContent.toString());
+    }
+  }
+
+  @Test
+  public void QueryBreakdownRunTokenRewritingReplacement() {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+        true, new RecoveryOptions(3, 0));
+    InputReader ir = new InputReader();
+    String query = "SELECT a\nFROM A GROUP WITH a";
+    ir.readFromString(query);
+    qb.run(query, "", 0, ir.getLocationTracker());
+    assertEquals("Unparseable portion: Start Line 2, End Line 2, "
+        + "Start Column 14, End Column 17, REPLACEMENT: replaced WITH with BY\n",
+        outContent.toString());
+  }
+
+  @Test
+  public void QueryBreakdownRunInsertion() {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+        false, new RecoveryOptions(0, 3));
+    InputReader ir = new InputReader();
+    String query = "SELECT a FROM t WHERE (a = 1 AND b = 2";
+    ir.readFromString(query);
+    qb.run(query, "", 0, ir.getLocationTracker());
+    // the missing parenthesis is inserted instead of deleting most of the query
+    assertEquals("Unparseable portion: Start Line 1, End Line 1, "
+        + "Start Column 38, End Column 38, INSERTION: inserted )\n", outContent.toString());
+    assertEquals(4, qb.getParseCalls());
+  }
+
+  @Test
+  public void QueryBreakdownRunTokenRewritingInsertion() {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+        true, new RecoveryOptions(0, 3));
+    InputReader ir = new InputReader();
+    String query = "SELECT a\nFROM t WHERE (a = 1 AND b = 2\n";
+    ir.readFromString(query);
+    qb.run(query, "", 0, ir.getLocationTracker());
+    assertEquals("Unparseable portion: Start Line 2, End Line 2, "
+        + "Start Column 29, End Column 29, INSERTION: inserted )\n", outContent.toString());
+  }
+
+  @Test
+  public void QueryBreakdownRunPanicModeSingleError() {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+        false, new RecoveryOptions(0, 0, true));
+    InputReader ir = new InputReader();
+    String query = "SELECT a FROM t WHERE a = 1 )";
+    ir.readFromString(query);
+    qb.run(query, "", 0, ir.getLocationTracker());
+    assertEquals("Unparseable portion: Start Line 1, End Line 1, "
+        + "Start Column 29, End Column 29, DELETION\n", outContent.toString());
+    // nothing can beat a single component, so the search reuses the first parse of the pass
+    // and stops there
+    assertEquals(2, qb.getParseCalls());
+  }
+
+  @Test
+  public void QueryBreakdownRunPanicModeSearchImproves() {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+        true, new RecoveryOptions(0, 0, true));
+    InputReader ir = new InputReader();
+    String query = "SELECT a FROM t WHERE a = = 1";
+    ir.readFromString(query);
+    qb.run(query, "", 0, ir.getLocationTracker());
+    // the pass skips "= 1", and the search finds that deleting the second "=" is enough
+    assertEquals("Unparseable portion: Start Line 1, End Line 1, "
+        + "Start Column 25, End Column 25, DELETION\n", outContent.toString());
+    assertEquals(3, qb.getParseCalls());
+  }
+
+  @Test
+  public void QueryBreakdownRunNothingParseable() {
+    // once its only token is deleted, the query holds nothing but a comment, which is left alone
+    for (boolean tokenRewriting : new boolean[] {false, true}) {
+      ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(outContent));
+      QueryBreakdown qb = new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1,
+          tokenRewriting);
+      InputReader ir = new InputReader();
+      String query = "-- comment\nBLAH";
+      ir.readFromString(query);
+      qb.run(query, "", 0, ir.getLocationTracker());
+      assertEquals("Unparseable portion: Start Line 2, End Line 2, "
+          + "Start Column 1, End Column 4, DELETION\n", outContent.toString());
+    }
+  }
+
+  @Test
+  public void QueryBreakdownResumeFromCheckpoint() throws IOException {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(outContent));
+    InputReader ir = new InputReader();
+    String absPath = new File("").getAbsolutePath();
+    String query = ir.readInput(absPath + "/src/test/java/com/google/bigquery"
+        + "/InputTestFiles/multipleDeletion.txt");
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
+    qb.run(query, "", 2, ir.getLocationTracker());
+    assertTrue(qb.isTruncated());
+
+    // the checkpoint goes through serialization, as it would through a file
+    ByteArrayOutputStream checkpointBytes = new ByteArrayOutputStream();
+    qb.checkpoint().writeTo(checkpointBytes);
+    SearchCheckpoint checkpoint =
+        SearchCheckpoint.readFrom(new ByteArrayInputStream(checkpointBytes.toByteArray()));
+
+    outContent.reset();
+    QueryBreakdown resumed = new QueryBreakdown(new CalciteParser());
+    resumed.run(checkpoint, query, "", SearchBudget.UNLIMITED);
+    assertEquals("Unparseable portion: Start Line 2, End Line 2, "
+        + "Start Column 28, End Column 31, DELETION\n"
+        + "Unparseable portion: Start Line 2, End Line 2, "
+        + "Start Column 1, End Column 4, DELETION\n"
+        + "Unparseable portion: Start Line 1, End Line 1, "
+        + "Start Column 1, End Column 4, DELETION\n", outContent.toString());
+    assertFalse(resumed.isTruncated());
+    assertNull(resumed.checkpoint());
+    // the parser calls are those of a search that was never interrupted
+    assertEquals(4, resumed.getParseCalls());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void QueryBreakdownResumeOtherStrategy() {
+    InputReader ir = new InputReader();
+    String query = "SELECT a FROM A GROUP WITH a";
+    ir.readFromString(query);
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
+    qb.search(query, new SearchBudget(0, 0, 1), ir.getLocationTracker());
+    new QueryBreakdown(new CalciteParser(), SearchStrategy.BEST_FIRST)
+        .resume(qb.checkpoint(), query, SearchBudget.UNLIMITED);
+  }
+
+  @Test
+  public void QueryBreakdownResumeOtherQueryOrOptions() {
+    InputReader ir = new InputReader();
+    String query = "SELECT a FROM A GROUP WITH a";
+    ir.readFromString(query);
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
+    qb.search(query, new SearchBudget(0, 0, 1), ir.getLocationTracker());
+    SearchCheckpoint checkpoint = qb.checkpoint();
+
+    String[] messages = new String[4];
+    QueryBreakdown[] resumed = {new QueryBreakdown(new CalciteParser()),
+        new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1, true),
+        new QueryBreakdown(new CalciteParser(), SearchStrategy.DEPTH_FIRST, 1, false,
+            new RecoveryOptions(3, 0)),
+        new QueryBreakdown(CalciteParser.of(ParserDialect.BABEL))};
+    for (int i = 0; i < resumed.length; i++) {
+      try {
+        resumed[i].resume(checkpoint, (i == 0) ? "SELECT b FROM B" : query,
+            SearchBudget.UNLIMITED);
+        fail();
+      } catch (IllegalArgumentException e) {
+        messages[i] = e.getMessage();
+      }
+    }
+    assertArrayEquals(new String[] {"the checkpoint was taken for another query",
+        "the checkpoint was taken without token rewriting",
+        "the checkpoint was taken with other recovery options: replacement beam 0, "
+            + "insertion beam 0, panic mode off",
+        "the checkpoint was taken with another parser: core dialect, DOUBLE_QUOTE quoting, "
+            + "DEFAULT conformance"}, messages);
+  }
+
+  @Test
+  public void QueryBreakdownDeepSearchOnSmallStack() throws InterruptedException {
+    StringBuilder sb = new StringBuilder("SELECT a FROM t");
+    for (int i = 0; i < 1000; i++) {
+      sb.append(" )");
+    }
+    String query = sb.toString();
+    InputReader ir = new InputReader();
+    ir.readFromString(query);
+    int[] components = new int[1];
+    // a thousand nested recoveries would overflow this stack if the search recursed
+    Thread thread = new Thread(null, () -> components[0] = new QueryBreakdown(new CalciteParser())
+        .search(query, SearchBudget.UNLIMITED, ir.getLocationTracker()).size(), "search",
+        256 * 1024);
+    thread.start();
+    thread.join();
+    assertEquals(1000, components[0]);
+  }
+}
@@ -0,0 +1,85 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import com.google.bigquery.StatementBreakdown.StatementResult;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ReportWriterTest {
+  private static final StatementResult BROKEN = new StatementResult(1, 2, new ArrayList<>(
+      Arrays.asList(new UnparseableComponent(2, 23, 2, 26, "REPLACEMENT", "WITH", "BY"),
+          new UnparseableComponent(2, 1, 2, 4, "DELETION", null, null))),
+      null, 5, 4, 1, 2, 1250000);
+  private static final StatementResult PARSEABLE =
+      new StatementResult(0, 1, new ArrayList<>(), null, 1, 0, 0, 0, 500000);
+
+  @Test
+  public void jsonReportOneLinePerStatement() throws IOException {
+    StringWriter out = new StringWriter();
+    try (ReportWriter report = ReportWriter.create(ReportFormat.JSON, out)) {
+      report.write("a.sql", PARSEABLE);
+      report.write(null, BROKEN);
+    }
+    assertEquals("{\"source\":\"a.sql\",\"statement\":0,\"startLine\":1,\"parseable\":true,"
+        + "\"truncation\":null,\"parseCalls\":1,\"nodesExplored\":0,\"nodesPruned\":0,"
+        + "\"memoHits\":0,\"wallTimeMillis\":0.500,\"components\":[]}\n"
+        + "{\"statement\":1,\"startLine\":2,\"parseable\":false,\"truncation\":null,"
+        + "\"parseCalls\":5,\"nodesExplored\":4,\"nodesPruned\":1,\"memoHits\":2,"
+        + "\"wallTimeMillis\":1.250,\"components\":[{\"startLine\":2,\"startColumn\":23,"
+        + "\"endLine\":2,\"endColumn\":26,\"recovery\":\"REPLACEMENT\",\"replaced\":\"WITH\","
+        + "\"replacement\":\"BY\"},{\"startLine\":2,\"startColumn\":1,\"endLine\":2,"
+        + "\"endColumn\":4,\"recovery\":\"DELETION\"}]}\n", out.toString());
+  }
+
+  @Test
+  public void jsonReportEscapesStrings() {
+    StringBuilder sb = new StringBuilder();
+    JsonReportWriter.appendString(sb, "dir\\\"a\".sql\n\u0001");
+    assertEquals("\"dir\\\\\\\"a\\\".sql\\n\\u0001\"", sb.toString());
+  }
+
+  @Test
+  public void csvReportOneRowPerComponent() throws IOException {
+    StringWriter out = new StringWriter();
+    try (ReportWriter report = ReportWriter.create(ReportFormat.CSV, out)) {
+      report.write("a.sql", PARSEABLE);
+      report.write("dir, \"b\".sql", BROKEN);
+    }
+    assertEquals(CsvReportWriter.HEADER + "\n"
+        + "a.sql,0,1,true,,1,0,0,0,0.500,,,,,,,\n"
+        + "\"dir, \"\"b\"\".sql\",1,2,false,,5,4,1,2,1.250,2,23,2,26,REPLACEMENT,WITH,BY\n"
+        + "\"dir, \"\"b\"\".sql\",1,2,false,,5,4,1,2,1.250,2,1,2,4,DELETION,,\n",
+        out.toString());
+  }
+
+  @Test
+  public void reportFormatFromFileName() {
+    assertEquals(ReportFormat.CSV, ReportFormat.forFile("report.CSV"));
+    assertEquals(ReportFormat.JSON, ReportFormat.forFile("report.json"));
+    assertEquals(ReportFormat.JSON, ReportFormat.forFile("report"));
+  }
+
+  @Test
+  public void queryBreakdownWritesReportToOutputFile() throws IOException {
+    File file = File.createTempFile("report", ".json");
+    file.deleteOnExit();
+    QueryBreakdown qb = new QueryBreakdown(new CalciteParser());
+    InputReader ir = new InputReader();
+    String query = "SELECT a FROM A GROUP BLAH BY a";
+    ir.readFromString(query);
+    qb.run(query, file.getPath(), 0, ir.getLocationTracker());
+    String report = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertEquals("{\"statement\":0,\"startLine\":1,\"parseable\":false,\"truncation\":null,"
+        + "\"parseCalls\":2,\"nodesExplored\":2,\"nodesPruned\":0,\"memoHits\":0,"
+        + "\"wallTimeMillis\":X,\"components\":[{\"startLine\":1,\"startColumn\":23,"
+        + "\"endLine\":1,\"endColumn\":26,\"recovery\":\"DELETION\"}]}\n",
+        report.replaceAll("\"wallTimeMillis\":[0-9.]+", "\"wallTimeMillis\":X"));
+  }
+}
@@ -0,0 +1,51 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import org.junit.Test;
+
+public class StatementBreakdownTest {
+  private static final String SCRIPT = "SELECT a FROM A;\n"
+      + "BLAH SELECT b FROM B;\n"
+      + "SELECT c\nFROM C WHERE c = ';x;' BLAH;\n"
+      + "  SELECT d FROM D GROUP BLAH BY d\n";
+
+  @Test
+  public void statementBreakdownFilePositions() {
+    StatementBreakdown sb = new StatementBreakdown(CalciteParser::new,
+        SearchStrategy.DEPTH_FIRST, false, SearchBudget.UNLIMITED, 3);
+    ArrayList<StatementBreakdown.StatementResult> results =
+        sb.run(StatementSplitter.split(SCRIPT).iterator());
+
+    assertEquals(4, results.size());
+    assertTrue(results.get(0).isParseable());
+    assertEquals("Unparseable portion: Start Line 2, End Line 2, "
+        + "Start Column 1, End Column 4, DELETION",
+        results.get(1).getComponents().get(0).toString());
+    assertEquals("Unparseable portion: Start Line 4, End Line 4, "
+        + "Start Column 24, End Column 27, DELETION",
+        results.get(2).getComponents().get(0).toString());
+    assertEquals("Unparseable portion: Start Line 5, End Line 5, "
+        + "Start Column 25, End Column 28, DELETION",
+        results.get(3).getComponents().get(0).toString());
+  }
+
+  @Test
+  public void statementBreakdownOrderIndependentOfWorkers() {
+    String script = SCRIPT + SCRIPT + SCRIPT;
+    ArrayList<StatementBreakdown.StatementResult> sequential = new StatementBreakdown(
+        CalciteParser::new, SearchStrategy.DEPTH_FIRST, false, SearchBudget.UNLIMITED, 1)
+        .run(StatementSplitter.split(script).iterator());
+    ArrayList<StatementBreakdown.StatementResult> parallel = new StatementBreakdown(
+        CalciteParser::new, SearchStrategy.DEPTH_FIRST, false, SearchBudget.UNLIMITED, 4)
+        .run(StatementSplitter.split(script).iterator());
+
+    assertEquals(sequential.size(), parallel.size());
+    for (int i = 0; i < sequential.size(); i++) {
+      assertEquals(i, parallel.get(i).getStatementIndex());
+      assertEquals(sequential.get(i).getComponents().toString(),
+          parallel.get(i).getComponents().toString());
+    }
+  }
+}
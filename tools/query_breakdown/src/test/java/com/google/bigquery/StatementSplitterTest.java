@@ -0,0 +1,66 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import org.junit.Test;
+
+public class StatementSplitterTest {
+  @Test
+  public void statementSplitterMultipleStatements() {
+    ArrayList<Statement> statements =
+        StatementSplitter.split("SELECT a FROM A;\n\nSELECT b\nFROM B;  ");
+    assertEquals(2, statements.size());
+    assertEquals("SELECT a FROM A", statements.get(0).getText());
+    assertEquals("SELECT b\nFROM B", statements.get(1).getText());
+    assertEquals(3, statements.get(1).getStartLine());
+    assertEquals(1, statements.get(1).getStartColumn());
+    assertEquals(18, statements.get(1).getStartOffset());
+  }
+
+  @Test
+  public void statementSplitterSemicolonInStrings() {
+    ArrayList<Statement> statements = StatementSplitter.split(
+        "SELECT 'a;b', \"c;\", `d;e`, 'it''s;', 'x\\';' FROM A; SELECT 1");
+    assertEquals(2, statements.size());
+    assertEquals("SELECT 'a;b', \"c;\", `d;e`, 'it''s;', 'x\\';' FROM A",
+        statements.get(0).getText());
+    assertEquals("SELECT 1", statements.get(1).getText());
+    assertEquals(1, statements.get(1).getStartLine());
+    assertEquals(53, statements.get(1).getStartColumn());
+  }
+
+  @Test
+  public void statementSplitterSemicolonInComments() {
+    ArrayList<Statement> statements = StatementSplitter.split(
+        "SELECT a -- a; comment\nFROM A /* ; */; # only; a comment\n;SELECT b FROM B");
+    assertEquals(2, statements.size());
+    assertEquals("SELECT a -- a; comment\nFROM A /* ; */", statements.get(0).getText());
+    assertEquals("SELECT b FROM B", statements.get(1).getText());
+    assertEquals(3, statements.get(1).getStartLine());
+    assertEquals(2, statements.get(1).getStartColumn());
+  }
+
+  @Test
+  public void statementSplitterPositionMapping() {
+    Statement statement = StatementSplitter.split("SELECT 1;  SELECT b\nFROM B").get(1);
+    assertEquals(1, statement.toFileLine(1));
+    assertEquals(12, statement.toFileColumn(1, 1));
+    assertEquals(2, statement.toFileLine(2));
+    assertEquals(3, statement.toFileColumn(2, 3));
+  }
+
+  @Test
+  public void statementSplitterReadsFile() throws IOException {
+    InputReader ir = new InputReader();
+    String absPath = new File("").getAbsolutePath();
+    try (StatementSplitter splitter = ir.readStatements(absPath
+        + "/src/test/java/com/google/bigquery/InputTestFiles/multipleLineQuery.txt")) {
+      assertEquals("SELECT a\nFROM A\nWHERE A = 3", splitter.next().getText());
+      assertEquals("SELECT b FROM B", splitter.next().getText());
+      assertFalse(splitter.hasNext());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.google.bigquery;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TokenEditsTest {
+  @Test
+  public void tokenizedQueryTokens() {
+    TokenizedQuery tokens = new TokenizedQuery("SELECT a.b, 'x y' FROM A WHERE c <= 1.5");
+    assertEquals(12, tokens.size());
+    assertEquals("'x y'", tokens.getToken(5));
+    assertEquals("<=", tokens.getToken(10));
+    assertEquals("1.5", tokens.getToken(11));
+  }
+
+  @Test
+  public void tokenizedQueryOffsets() {
+    TokenizedQuery tokens = new TokenizedQuery("SELECT a\nFROM A");
+    assertEquals(9, tokens.offsetOf(2, 1));
+    assertEquals(2, tokens.firstTokenFrom(tokens.offsetOf(2, 1)));
+    assertEquals(2, tokens.lastTokenUntil(tokens.offsetOf(2, 4)));
+  }
+
+  @Test
+  public void tokenEditsLastPosition() {
+    TokenizedQuery tokens = new TokenizedQuery("SELECT a,\n  b FROM A -- c\n");
+    assertArrayEquals(new int[] {2, 15}, new TokenEdits(tokens).lastPosition(false));
+    // the edits before the last character on its line move its column
+    assertArrayEquals(new int[] {2, 12}, new TokenEdits(tokens).delete(4, 4).replace(5, "BB")
+        .lastPosition(false));
+    assertArrayEquals(new int[] {2, 10}, new TokenEdits(tokens).delete(5, 6).insert(18, " X")
+        .lastPosition(false));
+    assertArrayEquals(new int[] {1, 8}, new TokenEdits(tokens).delete(2, 6).lastPosition(false));
+    assertNull(new TokenEdits(tokens).delete(0, 6).lastPosition(false));
+    // comments can be passed over as whitespace
+    assertArrayEquals(new int[] {2, 10}, new TokenEdits(tokens).lastPosition(true));
+    assertNull(new TokenEdits(tokens).delete(0, 5).lastPosition(true));
+  }
+
+  @Test
+  public void tokenEditsNeighbours() {
+    TokenEdits edits = new TokenEdits(new TokenizedQuery("SELECT d FROM v ORDER;"));
+    assertFalse(edits.isSpaceBefore(21));
+    assertTrue(edits.isSpaceBefore(16));
+    assertTrue(edits.isSpaceBefore(0));
+    // the deleted tokens are passed over, and the replacements and insertions are read
+    assertTrue(edits.delete(4, 4).isSpaceBefore(21));
+    assertTrue(edits.replace(4, "BY ").isSpaceBefore(21));
+    assertFalse(edits.insert(21, " X").isSpaceBefore(21));
+    assertFalse(edits.isSpaceAfterToken(4));
+    assertTrue(edits.isSpaceAfterToken(5));
+    assertTrue(edits.delete(5, 5).isSpaceAfterToken(4));
+    assertTrue(edits.insert(21, " )").isSpaceAfterToken(4));
+    assertFalse(edits.isSpaceAfter(21));
+    assertTrue(edits.isSpaceAfter(22));
+    assertTrue(edits.replace(5, " ;").isSpaceAfter(21));
+  }
+
+  @Test
+  public void tokenEditsDeletion() {
+    TokenEdits edits = new TokenEdits(new TokenizedQuery("BLAH SELECT a\nFROM A BLAH"));
+    TokenEdits deleted = edits.delete(0, 0).delete(5, 5);
+    assertEquals(" SELECT a\nFROM A ", deleted.toString());
+    // the original edit list is left unchanged
+    assertEquals("BLAH SELECT a\nFROM A BLAH", edits.toString());
+  }
+
+  @Test
+  public void tokenEditsReplacement() {
+    TokenEdits edits = new TokenEdits(new TokenizedQuery("SELECT a FRM A"))
+        .replace(2, "FROM");
+    assertEquals("SELECT a FROM A", edits.toString());
+  }
+
+  @Test
+  public void tokenEditsEquality() {
+    TokenizedQuery tokens = new TokenizedQuery("SELECT a FROM A");
+    assertEquals(new TokenEdits(tokens).delete(1, 1).delete(3, 3),
+        new TokenEdits(tokens).delete(3, 3).delete(1, 1));
+    assertNotEquals(new TokenEdits(tokens).delete(1, 1), new TokenEdits(tokens).delete(3, 3));
+  }
+
+  @Test
+  public void tokenEditsInsertion() {
+    TokenizedQuery tokens = new TokenizedQuery("SELECT f(a b FROM A");
+    // inserts before "b", then twice after "A" at the end of the query, and deletes "b"
+    TokenEdits edits = new TokenEdits(tokens).insert(11, ", ").insert(19, " )")
+        .insert(19, " ;").delete(4, 4);
+    assertEquals("SELECT f(a ,  FROM A ) ;", edits.toString());
+    assertNotEquals(new TokenEdits(tokens).insert(11, ", "),
+        new TokenEdits(tokens).insert(9, ", "));
+  }
+}